@@ -0,0 +1,34 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot.bench;
+
+/**
+ * A single benchmark run by the BenchmarkRunner.
+ *
+ * setup() is called once before the warmup iterations and tearDown() once after
+ * the measurement iterations. run() is called repeatedly and must perform the
+ * given number of operations. The value it returns should depend on the results
+ * of the operations so that the JIT compiler cannot remove them.
+ */
+public abstract class Benchmark
+{
+  private String name;
+
+  public Benchmark(String name)
+  {
+    this.name=name;
+  }
+
+  public String getName() { return name; }
+
+  public void setup() throws Exception {}
+
+  public abstract long run(int operationCount) throws Exception;
+
+  public void tearDown() throws Exception {}
+
+}
@@ -0,0 +1,218 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot.bench;
+
+import java.util.Vector;
+import java.util.regex.Pattern;
+
+import netplot.HeadlessPlotFrame;
+import netplot.UO;
+
+/**
+ * Responsible for running the netplot benchmarks and reporting the throughput
+ * of each.
+ *
+ * Each benchmark is run for a number of warmup iterations (so that the code is
+ * JIT compiled) and then a number of measurement iterations of a fixed time.
+ * The operations are run in batches, the size of which is set so that a batch
+ * takes long enough for the timer resolution not to matter. The mean and
+ * standard deviation of the operations per second over the measurement
+ * iterations are reported.
+ *
+ * The benchmarks run in headless mode so no display is required. Run with
+ * ant bench (or ant -Dbench.args="-f LineProcessor" bench to select benchmarks).
+ */
+public class BenchmarkRunner
+{
+  public static final int     DEFAULT_WARMUP_ITERATIONS=3;
+  public static final int     DEFAULT_ITERATIONS=5;
+  public static final int     DEFAULT_ITERATION_MILLIS=1000;
+  private static final long   MIN_BATCH_NANOS=10000000L;
+  private int                 warmupIterations=BenchmarkRunner.DEFAULT_WARMUP_ITERATIONS;
+  private int                 iterations=BenchmarkRunner.DEFAULT_ITERATIONS;
+  private int                 iterationMillis=BenchmarkRunner.DEFAULT_ITERATION_MILLIS;
+  //Written with the benchmark results so that the JIT compiler cannot remove the operations
+  public static volatile long Sink;
+
+  /**
+   * @return All the benchmarks.
+   */
+  public static Vector<Benchmark> GetBenchmarks()
+  {
+    Vector<Benchmark> benchmarks = new Vector<Benchmark>();
+    benchmarks.addAll( IngestBenchmarks.Create() );
+    benchmarks.addAll( PlotPanelBenchmarks.Create() );
+    benchmarks.addAll( SocketBenchmarks.Create() );
+    return benchmarks;
+  }
+
+  public void setWarmupIterations(int warmupIterations) { this.warmupIterations=warmupIterations; }
+  public void setIterations(int iterations) { this.iterations=iterations; }
+  public void setIterationMillis(int iterationMillis) { this.iterationMillis=iterationMillis; }
+
+  /**
+   * Run a benchmark and print the result.
+   */
+  public void run(Benchmark benchmark) throws Exception
+  {
+    benchmark.setup();
+    try
+    {
+      int batchSize = calibrate(benchmark);
+      for( int i=0 ; i<warmupIterations ; i++ )
+      {
+        runIteration(benchmark, batchSize);
+      }
+      double opsPerSecond[] = new double[iterations];
+      for( int i=0 ; i<iterations ; i++ )
+      {
+        opsPerSecond[i] = runIteration(benchmark, batchSize);
+      }
+      double mean=0;
+      for( double value : opsPerSecond )
+      {
+        mean+=value;
+      }
+      mean=mean/iterations;
+      double variance=0;
+      for( double value : opsPerSecond )
+      {
+        variance+=(value-mean)*(value-mean);
+      }
+      double stdDev = iterations > 1 ? Math.sqrt(variance/(iterations-1)) : 0;
+      System.out.println( String.format("%-45s %15.1f +- %12.1f ops/s %12.1f ns/op", benchmark.getName(), mean, stdDev, 1E9/mean) );
+    }
+    finally
+    {
+      benchmark.tearDown();
+    }
+  }
+
+  /**
+   * @return The number of operations to run between reading the timer.
+   */
+  private int calibrate(Benchmark benchmark) throws Exception
+  {
+    int batchSize=1;
+    while( batchSize < (1<<30) )
+    {
+      long startNanos = System.nanoTime();
+      BenchmarkRunner.Sink += benchmark.run(batchSize);
+      if( System.nanoTime()-startNanos >= BenchmarkRunner.MIN_BATCH_NANOS )
+      {
+        break;
+      }
+      batchSize=batchSize*2;
+    }
+    return batchSize;
+  }
+
+  /**
+   * Run batches of operations for the iteration time.
+   *
+   * @return The operations per second.
+   */
+  private double runIteration(Benchmark benchmark, int batchSize) throws Exception
+  {
+    long operationCount=0;
+    long startNanos = System.nanoTime();
+    long endNanos = startNanos+iterationMillis*1000000L;
+    long nowNanos;
+    do
+    {
+      BenchmarkRunner.Sink += benchmark.run(batchSize);
+      operationCount+=batchSize;
+      nowNanos=System.nanoTime();
+    } while( nowNanos < endNanos );
+    return operationCount*1E9/(nowNanos-startNanos);
+  }
+
+  public static void Usage()
+  {
+    System.out.println("netplot benchmark usage");
+    System.out.println("-w : Followed by the number of warmup iterations (default="+BenchmarkRunner.DEFAULT_WARMUP_ITERATIONS+").");
+    System.out.println("-i : Followed by the number of measurement iterations (default="+BenchmarkRunner.DEFAULT_ITERATIONS+").");
+    System.out.println("-t : Followed by the time of each iteration in milliseconds (default="+BenchmarkRunner.DEFAULT_ITERATION_MILLIS+").");
+    System.out.println("-f : Followed by a regular expression. Only benchmarks with names containing a match are run.");
+    System.out.println("-l : List the benchmarks.");
+    System.out.println("-h : This help text.");
+  }
+
+  public static void main(String args[])
+  {
+    BenchmarkRunner benchmarkRunner = new BenchmarkRunner();
+    Pattern filter=null;
+    boolean list=false;
+    try
+    {
+      for( int i=0 ; i<args.length ; i++ )
+      {
+        if( args[i].equals("-w") && i+1 < args.length )
+        {
+          benchmarkRunner.setWarmupIterations( Integer.parseInt(args[++i]) );
+        }
+        else if( args[i].equals("-i") && i+1 < args.length )
+        {
+          benchmarkRunner.setIterations( Math.max(1, Integer.parseInt(args[++i])) );
+        }
+        else if( args[i].equals("-t") && i+1 < args.length )
+        {
+          benchmarkRunner.setIterationMillis( Math.max(1, Integer.parseInt(args[++i])) );
+        }
+        else if( args[i].equals("-f") && i+1 < args.length )
+        {
+          filter = Pattern.compile(args[++i]);
+        }
+        else if( args[i].equals("-l") )
+        {
+          list=true;
+        }
+        else
+        {
+          BenchmarkRunner.Usage();
+          System.exit( args[i].equals("-h") ? 0 : -1 );
+        }
+      }
+    }
+    catch(NumberFormatException e)
+    {
+      BenchmarkRunner.Usage();
+      System.exit(-1);
+    }
+
+    //The charts are held without a window, as when the server runs with -headless
+    System.setProperty("java.awt.headless", "true");
+    UO.EnableDebug(false);
+    UO.InitHeadless(HeadlessPlotFrame.DEFAULT_WIDTH, HeadlessPlotFrame.DEFAULT_HEIGHT);
+    UO.SetEnableStatusMessages(false);
+
+    int errorCount=0;
+    for( Benchmark benchmark : BenchmarkRunner.GetBenchmarks() )
+    {
+      if( filter != null && !filter.matcher(benchmark.getName()).find() )
+      {
+        continue;
+      }
+      if( list )
+      {
+        System.out.println(benchmark.getName());
+        continue;
+      }
+      try
+      {
+        benchmarkRunner.run(benchmark);
+      }
+      catch(Exception e)
+      {
+        System.out.println(benchmark.getName()+": "+e);
+        errorCount++;
+      }
+    }
+    System.exit( errorCount == 0 ? 0 : -1 );
+  }
+
+}
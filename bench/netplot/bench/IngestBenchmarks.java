@@ -0,0 +1,218 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot.bench;
+
+import java.util.Vector;
+
+import netplot.KeyWords;
+import netplot.LineProcessor;
+import netplot.TimeStampParser;
+import netplot.ValueParser;
+
+/**
+ * Benchmarks of the parsing of the lines of text received from clients.
+ *
+ * The LineProcessor benchmarks process a line for each operation, holding the
+ * values as they are when received from a socket, and add the values held to
+ * the plot at the end of each batch. The lines are created before the benchmark
+ * is run. The x values and time stamps increase so that points are always added
+ * after the last point. The plot is cleared each time the lines are reused.
+ */
+public class IngestBenchmarks
+{
+  public static final int   LINE_COUNT=8192;
+
+  public static Vector<Benchmark> Create()
+  {
+    Vector<Benchmark> benchmarks = new Vector<Benchmark>();
+
+    benchmarks.add( new ValueParserBenchmark("ValueParser.parse 1 value", 1) );
+    benchmarks.add( new ValueParserBenchmark("ValueParser.parse 8 values", 8) );
+
+    benchmarks.add( new Benchmark("TimeStampParser.parse date") {
+      private TimeStampParser timeStampParser = new TimeStampParser(new ValueParser());
+      private String lines[] = IngestBenchmarks.CreateDateLines(1);
+      private int lineIndex;
+      public long run(int operationCount) throws Exception
+      {
+        long result=0;
+        for( int i=0 ; i<operationCount ; i++ )
+        {
+          timeStampParser.parse(lines[lineIndex]);
+          lineIndex=(lineIndex+1)%lines.length;
+          result+=timeStampParser.getEpochMillis();
+        }
+        return result;
+      }
+    });
+
+    benchmarks.add( new Benchmark("TimeStampParser.parse epoch") {
+      private TimeStampParser timeStampParser = new TimeStampParser(new ValueParser());
+      private String lines[] = IngestBenchmarks.CreateEpochLines(1);
+      private int lineIndex;
+      public long run(int operationCount) throws Exception
+      {
+        long result=0;
+        for( int i=0 ; i<operationCount ; i++ )
+        {
+          timeStampParser.parse(lines[lineIndex]);
+          lineIndex=(lineIndex+1)%lines.length;
+          result+=timeStampParser.getEpochMillis();
+        }
+        return result;
+      }
+    });
+
+    String valueLines[] = new String[IngestBenchmarks.LINE_COUNT];
+    String valueLines4[] = new String[IngestBenchmarks.LINE_COUNT];
+    String xyLines[] = new String[IngestBenchmarks.LINE_COUNT];
+    for( int i=0 ; i<IngestBenchmarks.LINE_COUNT ; i++ )
+    {
+      valueLines[i] = ""+IngestBenchmarks.GetValue(i);
+      valueLines4[i] = IngestBenchmarks.GetValue(i)+","+IngestBenchmarks.GetValue(i+1)+","+IngestBenchmarks.GetValue(i+2)+","+IngestBenchmarks.GetValue(i+3);
+      xyLines[i] = "0:"+i+":"+IngestBenchmarks.GetValue(i);
+    }
+    benchmarks.add( new LineProcessorBenchmark("LineProcessor time values", KeyWords.TIME, 1, valueLines) );
+    benchmarks.add( new LineProcessorBenchmark("LineProcessor time values x4 plots", KeyWords.TIME, 4, valueLines4) );
+    benchmarks.add( new LineProcessorBenchmark("LineProcessor time date stamp", KeyWords.TIME, 1, IngestBenchmarks.CreateDateLines(1)) );
+    benchmarks.add( new LineProcessorBenchmark("LineProcessor time epoch stamp", KeyWords.TIME, 1, IngestBenchmarks.CreateEpochLines(1)) );
+    benchmarks.add( new LineProcessorBenchmark("LineProcessor xy", KeyWords.XY, 1, xyLines) );
+    benchmarks.add( new LineProcessorBenchmark("LineProcessor bar", KeyWords.BAR, 1, valueLines) );
+    benchmarks.add( new LineProcessorBenchmark("LineProcessor dial", KeyWords.DIAL, 1, valueLines) );
+    return benchmarks;
+  }
+
+  /**
+   * @return A value to plot that changes with i.
+   */
+  static double GetValue(int i)
+  {
+    return Math.round(Math.sin(i/100.0)*1000)/100.0;
+  }
+
+  /**
+   * @return Lines with time stamps in the YEAR;MONTH;DAY;HOUR;MINUTE;SECOND;MILLISECOND format, 1 ms apart.
+   */
+  static String[] CreateDateLines(int plotCount)
+  {
+    String lines[] = new String[IngestBenchmarks.LINE_COUNT];
+    for( int i=0 ; i<lines.length ; i++ )
+    {
+      lines[i] = (i%plotCount)+":2016;1;2;3;"+(i/60000)+";"+((i/1000)%60)+";"+(i%1000)+":"+IngestBenchmarks.GetValue(i);
+    }
+    return lines;
+  }
+
+  /**
+   * @return Lines with time stamps in the @epoch milliseconds format, 1 ms apart.
+   */
+  static String[] CreateEpochLines(int plotCount)
+  {
+    String lines[] = new String[IngestBenchmarks.LINE_COUNT];
+    long startMillis=1451703600000L;
+    for( int i=0 ; i<lines.length ; i++ )
+    {
+      lines[i] = (i%plotCount)+":"+TimeStampParser.EPOCH_PREFIX+(startMillis+i)+":"+IngestBenchmarks.GetValue(i);
+    }
+    return lines;
+  }
+
+  /**
+   * Parse a line holding a number of comma separated values.
+   */
+  static class ValueParserBenchmark extends Benchmark
+  {
+    private ValueParser valueParser = new ValueParser();
+    private String      lines[] = new String[IngestBenchmarks.LINE_COUNT];
+    private int         lineIndex;
+
+    public ValueParserBenchmark(String name, int valueCount)
+    {
+      super(name);
+      for( int i=0 ; i<lines.length ; i++ )
+      {
+        StringBuffer line = new StringBuffer();
+        for( int v=0 ; v<valueCount ; v++ )
+        {
+          if( v > 0 )
+          {
+            line.append(',');
+          }
+          line.append( IngestBenchmarks.GetValue(i+v) );
+        }
+        lines[i]=line.toString();
+      }
+    }
+
+    public long run(int operationCount)
+    {
+      long result=0;
+      for( int i=0 ; i<operationCount ; i++ )
+      {
+        int valueCount = valueParser.parse(lines[lineIndex]);
+        lineIndex=(lineIndex+1)%lines.length;
+        result+=valueCount+(long)valueParser.getValues()[0];
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Process lines of plot values with a LineProcessor, as a connection from a client does.
+   */
+  static class LineProcessorBenchmark extends Benchmark
+  {
+    private String        graphType;
+    private int           plotCount;
+    private String        lines[];
+    private int           lineIndex;
+    private LineProcessor lineProcessor;
+
+    public LineProcessorBenchmark(String name, String graphType, int plotCount, String lines[])
+    {
+      super(name);
+      this.graphType=graphType;
+      this.plotCount=plotCount;
+      this.lines=lines;
+    }
+
+    public void setup() throws Exception
+    {
+      lineProcessor = new LineProcessor(0, 1);
+      lineProcessor.processLine(KeyWords.SET_PREFIX+KeyWords.GRAPH+"="+graphType);
+      lineProcessor.processLine(KeyWords.SET_PREFIX+KeyWords.Y_AXIS_NAME+"=Y");
+      lineProcessor.processLine(KeyWords.INIT);
+      for( int i=0 ; i<plotCount ; i++ )
+      {
+        lineProcessor.processLine(KeyWords.SET_PREFIX+KeyWords.MIN_SCALE_VALUE+"=-10");
+        lineProcessor.processLine(KeyWords.SET_PREFIX+KeyWords.MAX_SCALE_VALUE+"=10");
+        lineProcessor.processLine(KeyWords.SET_PREFIX+KeyWords.TICK_COUNT+"=5");
+        lineProcessor.processLine(KeyWords.ADD_PLOT);
+      }
+    }
+
+    public long run(int operationCount) throws Exception
+    {
+      for( int i=0 ; i<operationCount ; i++ )
+      {
+        if( lineIndex == lines.length )
+        {
+          //Start again at the first x value/time stamp
+          lineIndex=0;
+          for( int plotIndex=0 ; plotIndex<plotCount ; plotIndex++ )
+          {
+            lineProcessor.processLine(KeyWords.CLEAR+" "+plotIndex);
+          }
+        }
+        lineProcessor.processLine(lines[lineIndex++]);
+      }
+      lineProcessor.flush();
+      return lineIndex;
+    }
+  }
+
+}
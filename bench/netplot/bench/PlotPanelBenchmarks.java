@@ -0,0 +1,299 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot.bench;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Vector;
+
+import javax.swing.SwingUtilities;
+
+import org.jfree.chart.ChartPanel;
+
+import netplot.BarPlotPanel;
+import netplot.DecimatedXYDataset;
+import netplot.DialPlotPanel;
+import netplot.GenericPlotPanel;
+import netplot.KeyWords;
+import netplot.PlotPanelInterface;
+import netplot.TimeSeriesBufferDataset;
+import netplot.TimeSeriesPlotPanel;
+import netplot.UO;
+import netplot.XYPlotPanel;
+
+/**
+ * Benchmarks of adding values to each type of chart, without parsing lines of text.
+ * Each operation adds one value to a plot. The bulk benchmarks add the values
+ * in blocks of BLOCK_SIZE values, as is done for the values received in a block
+ * of data from a socket. Time and xy plots are cleared every MAX_POINTS values.
+ * The values added in each run are added to the chart datasets on the EDT
+ * before the run completes, as they are before a chart is redrawn.
+ */
+public class PlotPanelBenchmarks
+{
+  public static final int   BLOCK_SIZE=1024;
+  public static final int   MAX_POINTS=65536;
+  public static final int   CAPTURE_POINTS=1000000;
+
+  public static Vector<Benchmark> Create()
+  {
+    Vector<Benchmark> benchmarks = new Vector<Benchmark>();
+
+    benchmarks.add( new PlotPanelBenchmark("TimeSeriesPlotPanel.addTimePlotValue", KeyWords.TIME) {
+      public long add(int operationCount) throws Exception
+      {
+        for( int i=0 ; i<operationCount ; i++ )
+        {
+          plotPanel.addTimePlotValue(0, startMillis+pointCount, IngestBenchmarks.GetValue(pointCount));
+          pointCount++;
+        }
+        return pointCount;
+      }
+    });
+
+    benchmarks.add( new PlotPanelBenchmark("TimeSeriesPlotPanel.addTimePlotValues", KeyWords.TIME) {
+      public long add(int operationCount) throws Exception
+      {
+        while( operationCount > 0 )
+        {
+          int length = Math.min(operationCount, PlotPanelBenchmarks.BLOCK_SIZE);
+          for( int i=0 ; i<length ; i++ )
+          {
+            times[i]=startMillis+pointCount;
+            yValues[i]=IngestBenchmarks.GetValue(pointCount);
+            pointCount++;
+          }
+          plotPanel.addTimePlotValues(0, times, yValues, 0, length);
+          operationCount-=length;
+        }
+        return pointCount;
+      }
+    });
+
+    benchmarks.add( new PlotPanelBenchmark("XYPlotPanel.addPlotValue", KeyWords.XY) {
+      public long add(int operationCount) throws Exception
+      {
+        for( int i=0 ; i<operationCount ; i++ )
+        {
+          plotPanel.addPlotValue(0, pointCount, IngestBenchmarks.GetValue(pointCount));
+          pointCount++;
+        }
+        return pointCount;
+      }
+    });
+
+    benchmarks.add( new PlotPanelBenchmark("XYPlotPanel.addPlotValues", KeyWords.XY) {
+      public long add(int operationCount) throws Exception
+      {
+        while( operationCount > 0 )
+        {
+          int length = Math.min(operationCount, PlotPanelBenchmarks.BLOCK_SIZE);
+          for( int i=0 ; i<length ; i++ )
+          {
+            xValues[i]=pointCount;
+            yValues[i]=IngestBenchmarks.GetValue(pointCount);
+            pointCount++;
+          }
+          plotPanel.addPlotValues(0, xValues, yValues, 0, length);
+          operationCount-=length;
+        }
+        return pointCount;
+      }
+    });
+
+    benchmarks.add( new PlotPanelBenchmark("BarPlotPanel.addPlotValue", KeyWords.BAR) {
+      public long add(int operationCount) throws Exception
+      {
+        for( int i=0 ; i<operationCount ; i++ )
+        {
+          plotPanel.addPlotValue(0, IngestBenchmarks.GetValue(pointCount));
+          pointCount++;
+        }
+        return pointCount;
+      }
+    });
+
+    benchmarks.add( new PlotPanelBenchmark("DialPlotPanel.addPlotValue", KeyWords.DIAL) {
+      public long add(int operationCount) throws Exception
+      {
+        for( int i=0 ; i<operationCount ; i++ )
+        {
+          plotPanel.addPlotValue(0, IngestBenchmarks.GetValue(pointCount));
+          pointCount++;
+        }
+        return pointCount;
+      }
+    });
+
+    //Redraw a chart holding many points, as the headless mode capture command does
+    benchmarks.add( new PlotPanelBenchmark("Capture "+PlotPanelBenchmarks.CAPTURE_POINTS+" point time plot", KeyWords.TIME) {
+      private File imageFile;
+      public void setup() throws Exception
+      {
+        super.setup();
+        clearCount=Integer.MAX_VALUE;
+        imageFile = File.createTempFile("netplot_bench", ".png");
+        for( int i=0 ; i<PlotPanelBenchmarks.CAPTURE_POINTS ; i++ )
+        {
+          plotPanel.addTimePlotValue(0, startMillis+i, IngestBenchmarks.GetValue(i));
+        }
+        UO.Set((TimeSeriesPlotPanel)plotPanel, 0);
+      }
+      public long add(int operationCount) throws Exception
+      {
+        for( int i=0 ; i<operationCount ; i++ )
+        {
+          //Change the newest point so that the chart is redrawn
+          plotPanel.addTimePlotValue(0, startMillis+PlotPanelBenchmarks.CAPTURE_POINTS-1, IngestBenchmarks.GetValue(pointCount++));
+          UO.SaveImage(imageFile);
+        }
+        return imageFile.length();
+      }
+      public void tearDown()
+      {
+        imageFile.delete();
+      }
+    });
+
+    //Redraw a full time plot with an auto range x axis as points are added, 
+    //so that the visible range slides on every redraw. The decimation columns
+    //should be updated with the points added rather than rebuilt.
+    benchmarks.add( new PlotPanelBenchmark("Redraw sliding time plot", KeyWords.TIME) {
+      private ChartPanel         chartPanel;
+      private DecimatedXYDataset decimatedDataset;
+      private BufferedImage      image;
+      private final Runnable     drawChart = new Runnable() {
+        public void run()
+        {
+          //Notify the chart of the points added, as the RenderScheduler does
+          ((TimeSeriesBufferDataset)decimatedDataset.getSource()).notifyChanged();
+          Graphics2D g2 = image.createGraphics();
+          chartPanel.getChart().draw(g2, new Rectangle2D.Double(0, 0, image.getWidth(), image.getHeight()));
+          g2.dispose();
+        }
+      };
+      public void setup() throws Exception
+      {
+        super.setup();
+        clearCount=Integer.MAX_VALUE;
+        //Older points are removed once they are older than the max age
+        for( int i=0 ; i<PlotPanelBenchmarks.MAX_POINTS ; i++ )
+        {
+          plotPanel.addTimePlotValue(0, startMillis+i, IngestBenchmarks.GetValue(i));
+        }
+        pointCount=PlotPanelBenchmarks.MAX_POINTS;
+        for( Component component : ((GenericPlotPanel)plotPanel).getComponents() )
+        {
+          if( component instanceof ChartPanel )
+          {
+            chartPanel=(ChartPanel)component;
+          }
+        }
+        decimatedDataset=(DecimatedXYDataset)chartPanel.getChart().getXYPlot().getDataset(0);
+        image = new BufferedImage(chartPanel.getPreferredSize().width, chartPanel.getPreferredSize().height, BufferedImage.TYPE_INT_RGB);
+      }
+      public long add(int operationCount) throws Exception
+      {
+        //The oldest point is removed as each point is added
+        while( operationCount > 0 )
+        {
+          int length = Math.min(operationCount, PlotPanelBenchmarks.BLOCK_SIZE);
+          for( int i=0 ; i<length ; i++ )
+          {
+            times[i]=startMillis+pointCount;
+            yValues[i]=IngestBenchmarks.GetValue(pointCount);
+            pointCount++;
+          }
+          plotPanel.addTimePlotValues(0, times, yValues, 0, length);
+          SwingUtilities.invokeAndWait(applyStagedValues);
+          SwingUtilities.invokeAndWait(drawChart);
+          operationCount-=length;
+        }
+        return decimatedDataset.getItemCount(0);
+      }
+      public void tearDown()
+      {
+        System.out.println(getName()+": decimation columns rebuilt "+decimatedDataset.getRebuildCount()+" times, updated "+decimatedDataset.getUpdateCount()+" times");
+      }
+    });
+
+    return benchmarks;
+  }
+
+  /**
+   * Holds a chart of a single plot.
+   */
+  static abstract class PlotPanelBenchmark extends Benchmark
+  {
+    private String               graphType;
+    protected PlotPanelInterface plotPanel;
+    protected long               startMillis = System.currentTimeMillis();
+    protected int                pointCount;
+    protected int                clearCount=PlotPanelBenchmarks.MAX_POINTS;
+    protected long               times[] = new long[PlotPanelBenchmarks.BLOCK_SIZE];
+    protected double             xValues[] = new double[PlotPanelBenchmarks.BLOCK_SIZE];
+    protected double             yValues[] = new double[PlotPanelBenchmarks.BLOCK_SIZE];
+    protected final Runnable     applyStagedValues = new Runnable() {
+      public void run()
+      {
+        ((GenericPlotPanel)plotPanel).applyStagedValues();
+      }
+    };
+
+    public PlotPanelBenchmark(String name, String graphType)
+    {
+      super(name);
+      this.graphType=graphType;
+    }
+
+    public void setup() throws Exception
+    {
+      if( graphType.equals(KeyWords.TIME) )
+      {
+        plotPanel = new TimeSeriesPlotPanel();
+      }
+      else if( graphType.equals(KeyWords.XY) )
+      {
+        plotPanel = new XYPlotPanel();
+      }
+      else if( graphType.equals(KeyWords.BAR) )
+      {
+        plotPanel = new BarPlotPanel();
+      }
+      else
+      {
+        plotPanel = new DialPlotPanel();
+      }
+      plotPanel.setAttribute(KeyWords.Y_AXIS_NAME, "Y");
+      plotPanel.init();
+      plotPanel.setAttribute(KeyWords.MIN_SCALE_VALUE, "-10");
+      plotPanel.setAttribute(KeyWords.MAX_SCALE_VALUE, "10");
+      plotPanel.setAttribute(KeyWords.TICK_COUNT, "5");
+      plotPanel.setAttribute(KeyWords.MAX_POINT_COUNT, ""+Math.max(PlotPanelBenchmarks.MAX_POINTS, PlotPanelBenchmarks.CAPTURE_POINTS));
+      plotPanel.addPlot();
+    }
+
+    public long run(int operationCount) throws Exception
+    {
+      if( pointCount >= clearCount )
+      {
+        plotPanel.clear(0);
+        startMillis+=pointCount;
+        pointCount=0;
+      }
+      long result = add(operationCount);
+      SwingUtilities.invokeAndWait(applyStagedValues);
+      return result;
+    }
+
+    public abstract long add(int operationCount) throws Exception;
+  }
+
+}
@@ -0,0 +1,191 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Vector;
+
+import netplot.KeyWords;
+import netplot.NetPlotConnection;
+import netplot.NetPlotSocketHandler;
+
+/**
+ * Benchmarks of the complete ingest pipeline. A client sends values to a time
+ * series chart over a loopback TCP/IP connection served by a NetPlotSocketHandler,
+ * as the netplot server does. Each operation is one value added to the chart.
+ */
+public class SocketBenchmarks
+{
+  public static final int   BLOCK_SIZE=1024;
+  private static final String LOOPBACK="127.0.0.1";
+
+  public static Vector<Benchmark> Create()
+  {
+    Vector<Benchmark> benchmarks = new Vector<Benchmark>();
+
+    //The client waits for the OK response to each line
+    benchmarks.add( new SocketBenchmark("Socket text line ack_mode=line") {
+      public long run(int operationCount) throws Exception
+      {
+        for( int i=0 ; i<operationCount ; i++ )
+        {
+          os.write(lines[pointCount++%lines.length]);
+          os.flush();
+          readOK();
+        }
+        return pointCount;
+      }
+    });
+
+    //The client sends a block of lines and waits for the OK <line count> responses
+    benchmarks.add( new SocketBenchmark("Socket text lines ack_mode=batch") {
+      public void setup() throws Exception
+      {
+        super.setup();
+        sendCommand(NetPlotConnection.ACK_MODE_CMD+KeyWords.ACK_MODE_BATCH);
+      }
+      public long run(int operationCount) throws Exception
+      {
+        for( int i=0 ; i<operationCount ; i++ )
+        {
+          os.write(lines[pointCount++%lines.length]);
+        }
+        os.flush();
+        waitForBatchAck(operationCount);
+        return pointCount;
+      }
+    });
+
+    //The client sends binary frames of up to BLOCK_SIZE time stamped values
+    benchmarks.add( new SocketBenchmark("Socket binary time frames ack_mode=batch") {
+      private long startMillis = System.currentTimeMillis();
+      public void setup() throws Exception
+      {
+        super.setup();
+        sendCommand(NetPlotConnection.ACK_MODE_CMD+KeyWords.ACK_MODE_BATCH);
+        os.write(NetPlotConnection.BINARY_MAGIC);
+        os.flush();
+        readOK();
+      }
+      public long run(int operationCount) throws Exception
+      {
+        int frameCount=0;
+        while( operationCount > 0 )
+        {
+          int length = Math.min(operationCount, SocketBenchmarks.BLOCK_SIZE);
+          os.writeByte(NetPlotConnection.FRAME_TIME);
+          os.writeInt(0);
+          os.writeInt(length);
+          for( int i=0 ; i<length ; i++ )
+          {
+            os.writeLong(startMillis+pointCount);
+            os.writeDouble(IngestBenchmarks.GetValue(pointCount++));
+          }
+          frameCount++;
+          operationCount-=length;
+        }
+        os.flush();
+        waitForBatchAck(frameCount);
+        return pointCount;
+      }
+    });
+
+    return benchmarks;
+  }
+
+  /**
+   * Connects a client to a NetPlotSocketHandler serving a time series chart.
+   */
+  static abstract class SocketBenchmark extends Benchmark
+  {
+    private ServerSocket       serverSocket;
+    private Socket             socket;
+    private BufferedReader     br;
+    protected DataOutputStream os;
+    protected byte             lines[][] = new byte[IngestBenchmarks.LINE_COUNT][];
+    protected int              pointCount;
+
+    public SocketBenchmark(String name)
+    {
+      super(name);
+      for( int i=0 ; i<lines.length ; i++ )
+      {
+        lines[i] = (IngestBenchmarks.GetValue(i)+"\n").getBytes();
+      }
+    }
+
+    public void setup() throws Exception
+    {
+      serverSocket = new ServerSocket();
+      serverSocket.bind( new InetSocketAddress(SocketBenchmarks.LOOPBACK, 0) );
+      socket = new Socket(SocketBenchmarks.LOOPBACK, serverSocket.getLocalPort());
+      socket.setTcpNoDelay(true);
+      Socket serverSideSocket = serverSocket.accept();
+      serverSideSocket.setTcpNoDelay(true);
+      NetPlotSocketHandler netPlotSocketHandler = new NetPlotSocketHandler(0, 1);
+      netPlotSocketHandler.handle(serverSideSocket);
+
+      br = new BufferedReader( new InputStreamReader(socket.getInputStream()) );
+      os = new DataOutputStream( new BufferedOutputStream(socket.getOutputStream(), 65536) );
+      //The server version
+      br.readLine();
+      sendCommand(KeyWords.SET_PREFIX+KeyWords.GRAPH+"="+KeyWords.TIME);
+      sendCommand(KeyWords.SET_PREFIX+KeyWords.Y_AXIS_NAME+"=Y");
+      sendCommand(KeyWords.INIT);
+      sendCommand(KeyWords.ADD_PLOT);
+    }
+
+    public void tearDown() throws Exception
+    {
+      socket.close();
+      serverSocket.close();
+    }
+
+    /**
+     * Send a line and wait for the OK response.
+     */
+    protected void sendCommand(String line) throws IOException
+    {
+      os.write( (line+"\n").getBytes() );
+      os.flush();
+      readOK();
+    }
+
+    protected void readOK() throws IOException
+    {
+      String response = br.readLine();
+      if( response == null || !response.startsWith("OK") )
+      {
+        throw new IOException("Unexpected response: "+response);
+      }
+    }
+
+    /**
+     * Read the OK <line count> responses until lineCount lines have been acknowledged.
+     */
+    protected void waitForBatchAck(int lineCount) throws IOException
+    {
+      while( lineCount > 0 )
+      {
+        String response = br.readLine();
+        if( response == null || !response.startsWith("OK ") )
+        {
+          throw new IOException("Unexpected response: "+response);
+        }
+        lineCount -= Integer.parseInt( response.substring(3).trim() );
+      }
+    }
+  }
+
+}
@@ -395,6 +395,11 @@ void load_default_plotConfig(struct _plot_config *plot_config)
     plot_config->enableZeroOnXAxis=1;
     plot_config->enableZeroOnYAxis=1;
     plot_config->tickCount=0;
+    plot_config->binCount=0;
+    plot_config->binMin=DEFAULT_BIN_MIN;
+    plot_config->binMax=DEFAULT_BIN_MAX;
+    plot_config->enableLogBins=0;
+    plot_config->rowCount=DEFAULT_ROW_COUNT;
 }
 
 /**
@@ -613,6 +618,14 @@ int netplot_set_plot_type(int server_connection_index, int plot_type, char *plot
     {
         strncpy(buffer, "set graph=dial\n", CMD_BUFFER_SIZE);
     }
+    else if( plot_type == PLOT_TYPE_HISTOGRAM )
+    {
+        strncpy(buffer, "set graph=histogram\n", CMD_BUFFER_SIZE);
+    }
+    else if( plot_type == PLOT_TYPE_WATERFALL )
+    {
+        strncpy(buffer, "set graph=waterfall\n", CMD_BUFFER_SIZE);
+    }
     else
     {
         return -2;
@@ -796,6 +809,37 @@ int netplot_add_plot(int server_connection_index, struct _plot_config pc)
         rc = send_command_expect_ok(server_connection_index, buffer);
     }
     if( rc == 0 )
+    {
+        memset(buffer, 0 , CMD_BUFFER_SIZE);
+        if( pc.binCount > 0 )
+        {
+            snprintf(buffer, CMD_BUFFER_SIZE, "set bin_count=%d\n", pc.binCount);
+            rc = send_command_expect_ok(server_connection_index, buffer);
+        }
+    }
+    if( rc == 0 && pc.binMin != DEFAULT_BIN_MIN )
+    {
+        memset(buffer, 0 , CMD_BUFFER_SIZE);
+        snprintf(buffer, CMD_BUFFER_SIZE, "set bin_min=%E\n", pc.binMin);
+        rc = send_command_expect_ok(server_connection_index, buffer);
+    }
+    if( rc == 0 && pc.binMax != DEFAULT_BIN_MAX )
+    {
+        memset(buffer, 0 , CMD_BUFFER_SIZE);
+        snprintf(buffer, CMD_BUFFER_SIZE, "set bin_max=%E\n", pc.binMax);
+        rc = send_command_expect_ok(server_connection_index, buffer);
+    }
+    if( rc == 0 && pc.enableLogBins )
+    {
+        rc = send_command_expect_ok(server_connection_index, "set enable_log_bins=true\n");
+    }
+    if( rc == 0 && pc.rowCount != DEFAULT_ROW_COUNT )
+    {
+        memset(buffer, 0 , CMD_BUFFER_SIZE);
+        snprintf(buffer, CMD_BUFFER_SIZE, "set row_count=%d\n", pc.rowCount);
+        rc = send_command_expect_ok(server_connection_index, buffer);
+    }
+    if( rc == 0 )
     {
         rc = send_command_expect_ok(server_connection_index, "add_plot\n");
     }
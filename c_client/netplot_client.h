@@ -17,6 +17,14 @@
 #define PLOT_TYPE_BAR       2
 #define PLOT_TYPE_XY        3
 #define PLOT_TYPE_DIAL      4
+#define PLOT_TYPE_HISTOGRAM 5
+#define PLOT_TYPE_WATERFALL 6
+
+//The server defaults, plot config settings for histogram and waterfall charts
+//that are not changed from these are not sent as servers before 2.6 don't accept them
+#define DEFAULT_BIN_MIN     0
+#define DEFAULT_BIN_MAX     100
+#define DEFAULT_ROW_COUNT   512
 
 //holds the config for the netplot_client program
 struct _netplot_config
@@ -50,6 +58,11 @@ struct _plot_config
     int             tickCount;
     float           minScaleValue;
     float           maxScaleValue;
+    int             binCount;       //0 = the server default for the type of bins
+    float           binMin;
+    float           binMax;
+    unsigned char   enableLogBins;
+    int             rowCount;
 };
 
 struct _time_series_point
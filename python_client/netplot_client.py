@@ -12,7 +12,7 @@ import types
 import time
 from   datetime import datetime
 
-VALID_PLOT_TYPES=['time','bar','xy', 'dial']
+VALID_PLOT_TYPES=['time','bar','xy', 'dial', 'histogram', 'waterfall']
 
 PLOT_TITLE				= "plot_title"
 PLOT_NAME				= "plot_name"
@@ -31,6 +31,11 @@ FRAME_TITLE				= "frame_title"
 ENABLE_LEGEND			= "enable_legend"
 TICK_COUNT 				= "tick_count"
 LINE_WIDTH      		= "line_width"
+BIN_COUNT				= "bin_count"
+BIN_MIN					= "bin_min"
+BIN_MAX					= "bin_max"
+ENABLE_LOG_BINS			= "enable_log_bins"
+ROW_COUNT				= "row_count"
 
 DEFAULT_NETPLOT_PORT    = 9600
 
@@ -53,6 +58,11 @@ class PlotConfig:
     self.enableZeroOnXAxis=1
     self.enableZeroOnYAxis=1
     self.tickCount=0
+    self.binCount=None      #Histogram bins, if None the server default for the type of bins is used
+    self.binMin=None        #The histogram settings are not sent if None (the server default is used)
+    self.binMax=None        #as servers before 2.6 don't accept them. The server defaults are 0 to 100
+    self.enableLogBins=None #and linear bins.
+    self.rowCount=None      #The number of rows shown on a waterfall chart, if None the server default (512) is used
 
 class NetPlot:
 
@@ -224,6 +234,19 @@ class NetPlot:
         self.sendCmd("set %s=%s" % (ENABLE_ZERO_ON_Y_SCALE,varValue) )
       if plotConfig.tickCount != None:
         self.sendCmd("set %s=%s" % (TICK_COUNT,str(plotConfig.tickCount)) )
+      if plotConfig.binCount != None:
+        self.sendCmd("set %s=%s" % (BIN_COUNT,str(plotConfig.binCount)) )
+      if plotConfig.binMin != None:
+        self.sendCmd("set %s=%s" % (BIN_MIN,str(plotConfig.binMin)) )
+      if plotConfig.binMax != None:
+        self.sendCmd("set %s=%s" % (BIN_MAX,str(plotConfig.binMax)) )
+      if plotConfig.enableLogBins != None:
+        varValue="false"
+        if plotConfig.enableLogBins:
+          varValue="true"
+        self.sendCmd("set %s=%s" % (ENABLE_LOG_BINS,varValue) )
+      if plotConfig.rowCount != None:
+        self.sendCmd("set %s=%s" % (ROW_COUNT,str(plotConfig.rowCount)) )
     self.sendCmd("add_plot")
 
   def __getValue(self, value):
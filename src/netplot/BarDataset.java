@@ -0,0 +1,269 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Responsible for presenting the bars of a bar chart to JFreeChart.
+ *
+ * The bar heights are held in a double array. Bar n (from 0) is drawn at x
+ * value n+1 with a width of BAR_WIDTH. A whole frame of bars may replace the
+ * array held (see setBars()) so no objects are held or created for each bar.
+ * The y range is found from the bars once per change rather than by the
+ * renderer reading every bar.
+ */
+public class BarDataset extends AbstractIntervalXYDataset implements DomainInfo, RangeInfo, XYRangeInfo
+{
+  static final long serialVersionUID=1;
+  public static final int     INITIAL_CAPACITY=64;
+  public static final double  BAR_WIDTH=0.9;
+  private String              seriesName;
+  private double              bars[] = new double[BarDataset.INITIAL_CAPACITY];
+  private int                 count;
+  private double              minY=Double.NaN;
+  private double              maxY=Double.NaN;
+  private boolean             rangeValid=true;
+
+  public BarDataset(String seriesName)
+  {
+    this.seriesName=seriesName;
+  }
+
+  /**
+   * Set the height of a bar. The listeners (the chart) are not notified until notifyChanged() is called.
+   *
+   * @param index The index of the bar. If this is the bar count a bar is added.
+   */
+  public void set(int index, double y)
+  {
+    if( index == count )
+    {
+      if( count == bars.length )
+      {
+        double newBars[] = new double[Math.max(BarDataset.INITIAL_CAPACITY, count*2)];
+        System.arraycopy(bars, 0, newBars, 0, count);
+        bars=newBars;
+      }
+      count++;
+    }
+    bars[index]=y;
+    rangeValid=false;
+  }
+
+  /**
+   * Replace all the bars. The array is held (not copied) and must not be
+   * changed by the caller. The listeners (the chart) are not notified until
+   * notifyChanged() is called.
+   *
+   * @return The array that held the bars, which is no longer used.
+   */
+  public double[] setBars(double newBars[])
+  {
+    double oldBars[] = bars;
+    bars=newBars;
+    count=newBars.length;
+    rangeValid=false;
+    return oldBars;
+  }
+
+  /**
+   * Remove all bars. The listeners (the chart) are not notified until notifyChanged() is called.
+   */
+  public void clear()
+  {
+    count=0;
+    rangeValid=false;
+  }
+
+  /**
+   * Notify the listeners (the chart) that the bars have changed.
+   */
+  public void notifyChanged()
+  {
+    fireDatasetChanged();
+  }
+
+  /**
+   * Find the min and max bar heights if required.
+   */
+  private void validateRange()
+  {
+    if( rangeValid )
+    {
+      return;
+    }
+    rangeValid=true;
+    minY=Double.NaN;
+    maxY=Double.NaN;
+    for( int i=0 ; i<count ; i++ )
+    {
+      double y = bars[i];
+      if( Double.isNaN(y) )
+      {
+        continue;
+      }
+      if( Double.isNaN(minY) || y < minY )
+      {
+        minY=y;
+      }
+      if( Double.isNaN(maxY) || y > maxY )
+      {
+        maxY=y;
+      }
+    }
+  }
+
+  public int getSeriesCount()
+  {
+    return 1;
+  }
+
+  @SuppressWarnings("rawtypes")
+  public Comparable getSeriesKey(int series)
+  {
+    return seriesName;
+  }
+
+  @Override
+  public DomainOrder getDomainOrder()
+  {
+    return DomainOrder.ASCENDING;
+  }
+
+  public int getItemCount(int series)
+  {
+    return count;
+  }
+
+  @Override
+  public double getXValue(int series, int item)
+  {
+    return item+1;
+  }
+
+  @Override
+  public double getYValue(int series, int item)
+  {
+    return bars[item];
+  }
+
+  public Number getX(int series, int item)
+  {
+    return Double.valueOf( getXValue(series, item) );
+  }
+
+  public Number getY(int series, int item)
+  {
+    return Double.valueOf( bars[item] );
+  }
+
+  @Override
+  public double getStartXValue(int series, int item)
+  {
+    return item+1-BarDataset.BAR_WIDTH/2;
+  }
+
+  @Override
+  public double getEndXValue(int series, int item)
+  {
+    return item+1+BarDataset.BAR_WIDTH/2;
+  }
+
+  @Override
+  public double getStartYValue(int series, int item)
+  {
+    return bars[item];
+  }
+
+  @Override
+  public double getEndYValue(int series, int item)
+  {
+    return bars[item];
+  }
+
+  public Number getStartX(int series, int item)
+  {
+    return Double.valueOf( getStartXValue(series, item) );
+  }
+
+  public Number getEndX(int series, int item)
+  {
+    return Double.valueOf( getEndXValue(series, item) );
+  }
+
+  public Number getStartY(int series, int item)
+  {
+    return Double.valueOf( bars[item] );
+  }
+
+  public Number getEndY(int series, int item)
+  {
+    return Double.valueOf( bars[item] );
+  }
+
+  public double getDomainLowerBound(boolean includeInterval)
+  {
+    Range range = getDomainBounds(includeInterval);
+    return range == null ? Double.NaN : range.getLowerBound();
+  }
+
+  public double getDomainUpperBound(boolean includeInterval)
+  {
+    Range range = getDomainBounds(includeInterval);
+    return range == null ? Double.NaN : range.getUpperBound();
+  }
+
+  public Range getDomainBounds(boolean includeInterval)
+  {
+    if( count == 0 )
+    {
+      return null;
+    }
+    if( includeInterval )
+    {
+      return new Range(getStartXValue(0, 0), getEndXValue(0, count-1));
+    }
+    return new Range(1, count);
+  }
+
+  public double getRangeLowerBound(boolean includeInterval)
+  {
+    validateRange();
+    return minY;
+  }
+
+  public double getRangeUpperBound(boolean includeInterval)
+  {
+    validateRange();
+    return maxY;
+  }
+
+  public Range getRangeBounds(boolean includeInterval)
+  {
+    validateRange();
+    return Double.isNaN(minY) ? null : new Range(minY, maxY);
+  }
+
+  /**
+   * Used by the renderer to find the y axis auto range.
+   */
+  @SuppressWarnings("rawtypes")
+  public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval)
+  {
+    validateRange();
+    return RangeBounds.Find(this, visibleSeriesKeys, xRange, minY, maxY);
+  }
+
+}
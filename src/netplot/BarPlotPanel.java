@@ -8,6 +8,7 @@ package netplot;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -18,20 +19,22 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYBarRenderer;
 import org.jfree.data.Range;
 import org.jfree.data.time.Millisecond;
-import org.jfree.data.xy.XYBarDataset;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 
+/**
+ * Responsible for showing a bar chart. The bars are set one value at a time
+ * (the first value after replot sets the first bar) or a whole frame of bars
+ * at a time (see setBars()).
+ */
 public class BarPlotPanel extends GenericPlotPanel implements PlotPanelInterface
 {
   static final long serialVersionUID=1;
   private JFreeChart        chart;
-  private XYSeries          series;
   private XYPlot            plot;
   private int               xValue=1;
-  XYSeriesCollection        collection;
-  XYBarDataset              dataset;
+  BarDataset                dataset;
   private XYBarRenderer     renderer;
+  //A frame array no longer used by the dataset, reused for the next frame
+  private final AtomicReference<double[]> freeFrame = new AtomicReference<double[]>();
 
   public BarPlotPanel() {
     super(new BorderLayout());
@@ -41,17 +44,14 @@ public class BarPlotPanel extends GenericPlotPanel implements PlotPanelInterface
   public void init()
   {
     finalize();
-    series = new XYSeries("");
+    //The chart is notified of changes by the RenderScheduler
+    dataset = new BarDataset("");
     chart = createChart();
     add( new ChartPanel(chart) );
   }
   
   
   private JFreeChart createChart() {
-    collection = new XYSeriesCollection();
-    collection.addSeries(series);
-    dataset = new XYBarDataset(collection, 0.9);
-
     chart = ChartFactory.createXYBarChart(
         plotTitle,
         "",
@@ -98,14 +98,76 @@ public class BarPlotPanel extends GenericPlotPanel implements PlotPanelInterface
    */
   public void addPlotValue(double plotIndex, double yValue)
   {  
-    //If we want to change a plot point that should have already been plotted
-    if( xValue < series.getItemCount() ) {
-      series.updateByIndex(xValue, yValue);
+    stageValue(GenericPlotPanel.Y_VALUES, 0, 0, 0, yValue);
+  }
+
+  /**
+   * As only one plot is allowed plotIndex is not used.
+   */
+  public void addPlotValues(int plotIndex, double yValues[], int offset, int length)
+  {
+    stageValues(GenericPlotPanel.Y_VALUES, 0, 0, null, null, yValues, offset, length);
+  }
+
+  void applyValues(int type, int plotIndex, long times[], double xValues[], double yValues[], int offset, int length)
+  {
+    BarDataset barDataset = dataset;
+    if( barDataset == null ) {
+      return;
     }
-    else {
-      series.add(xValue, yValue);
+    for( int i=offset ; i<offset+length ; i++ ) {
+      //Bar xValue is held at index xValue-1. If it exists its height is changed, else it is added.
+      barDataset.set(Math.min(xValue-1, barDataset.getItemCount(0)), yValues[i]);
+      xValue++;
+    }
+  }
+
+  /**
+   * Replace all the bars with a frame of bar heights. The values are copied
+   * and the frame replaces the bars shown in a single change on the EDT, so the
+   * chart is redrawn once per frame. The next value added (see addPlotValues())
+   * follows the last bar of the frame. Called from any thread.
+   */
+  public void setBars(double values[], int offset, int length)
+  {
+    double frame[] = freeFrame.getAndSet(null);
+    if( frame == null || frame.length != length )
+    {
+      frame = new double[length];
+    }
+    System.arraycopy(values, offset, frame, 0, length);
+    double replacedFrame[] = stageFrame(frame);
+    if( replacedFrame != null )
+    {
+      //A frame that was not shown, the chart is redrawn at a lower rate than frames are received
+      freeFrame.set(replacedFrame);
+    }
+  }
+
+  void applyFrame(double frame[])
+  {
+    BarDataset barDataset = dataset;
+    if( barDataset == null ) {
+      return;
+    }
+    freeFrame.set( barDataset.setBars(frame) );
+    xValue=frame.length+1;
+  }
+
+  //Not implemented on BarPlotPanel
+  public void addPlotValues(int plotIndex, double xValues[], double yValues[], int offset, int length) {}
+
+  public void addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) throws NetPlotException 
+  { 
+    throw new NetPlotException("addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) should not be used on BarPlotPanel"); 
+  }
+
+  void fireDatasetChanged(int plotIndex)
+  {
+    BarDataset barDataset = dataset;
+    if( barDataset != null ) {
+      barDataset.notifyChanged();
     }
-    xValue++;
   }
   
   //Not implemented on BarPlotPanel
@@ -116,6 +178,11 @@ public class BarPlotPanel extends GenericPlotPanel implements PlotPanelInterface
     throw new NetPlotException("addPlotValue(int plotIndex, Millisecond ms, double yValue) should not be used on BarPlotPanel"); 
   }
 
+  public void addTimePlotValue(int plotIndex, long epochMillis, double yValue) throws NetPlotException 
+  { 
+    throw new NetPlotException("addTimePlotValue(int plotIndex, long epochMillis, double yValue) should not be used on BarPlotPanel"); 
+  }
+
   public void removePlots()
   {
     init();
@@ -125,13 +192,7 @@ public class BarPlotPanel extends GenericPlotPanel implements PlotPanelInterface
   public void finalize()
   {
     removeAll();
-    if( collection != null )
-    {
-      collection.removeAllSeries();
-      collection=null;
-    }
     dataset=null;
-    series=null;
     chart=null;
     //System.out.println("PJA: BarPlotPanel FreeMem="+Runtime.getRuntime().freeMemory());
   }
@@ -140,8 +201,9 @@ public class BarPlotPanel extends GenericPlotPanel implements PlotPanelInterface
     if( plotIndex != 0) {
       throw new NetPlotException("clear "+plotIndex+" is invalid for a bar plot. A bar plot can only contain a single plot. Try clear 0 instead.");
     }
-    if( series != null ) {
-      series.clear();
+    if( dataset != null ) {
+      dataset.clear();
+      plotChanged(0);
     }
   }
   
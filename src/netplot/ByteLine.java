@@ -0,0 +1,72 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Responsible for presenting a line of ASCII text held in a ByteBuffer (E.G a
+ * memory mapped file) as a CharSequence, so that the values it holds can be
+ * parsed without creating a String. The object is reused for every line.
+ */
+public class ByteLine implements CharSequence
+{
+  private ByteBuffer buffer;
+  private int        start;
+  private int        length;
+
+  /**
+   * Set the line to buffer[start] up to but not including buffer[end].
+   */
+  public void set(ByteBuffer buffer, int start, int end)
+  {
+    this.buffer=buffer;
+    this.start=start;
+    this.length=end-start;
+  }
+
+  public int length()
+  {
+    return length;
+  }
+
+  public char charAt(int index)
+  {
+    return (char)(buffer.get(start+index)&0xff);
+  }
+
+  /**
+   * @return The index of the first occurrence of the character or -1 if not found.
+   */
+  public int indexOf(char c)
+  {
+    for( int i=0 ; i<length ; i++ )
+    {
+      if( buffer.get(start+i) == c )
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public CharSequence subSequence(int start, int end)
+  {
+    byte bytes[] = new byte[end-start];
+    for( int i=0 ; i<bytes.length ; i++ )
+    {
+      bytes[i]=buffer.get(this.start+start+i);
+    }
+    return new String(bytes);
+  }
+
+  public String toString()
+  {
+    return subSequence(0, length).toString();
+  }
+
+}
@@ -0,0 +1,797 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.List;
+
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.general.DatasetChangeEvent;
+import org.jfree.data.general.DatasetChangeListener;
+import org.jfree.data.general.DatasetUtilities;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDataset;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Responsible for reducing the number of points of a plot that are drawn to
+ * the number that can be seen.
+ *
+ * This sits between the dataset holding all the points of a plot (which must
+ * hold a single series sorted by x value) and the chart renderer. The x axis
+ * is divided into columns no wider than a pixel and for each column the first,
+ * min, max and last points are kept. Drawing lines between these points gives
+ * the same image as drawing all the points, but the number of points drawn is
+ * limited by the width of the chart rather than the number of points held.
+ *
+ * When there are no more than POINTS_PER_COLUMN points per column in the
+ * visible range all the points are passed to the renderer unchanged.
+ *
+ * The column width is the largest power of two that is no wider than a pixel
+ * and the columns are aligned to x=0, so the columns do not move when the
+ * visible x range slides (as it does on every redraw of an auto range axis).
+ * The columns are held in a ring. When the range slides the columns that are
+ * no longer visible are dropped and only the points added since the last
+ * redraw are added to the columns. When the range grows to twice the column
+ * width (or more) adjacent columns are merged. The columns are only rebuilt
+ * from all the visible points when the range shrinks (zoom in), the chart is
+ * resized or the points are changed other than by adding points after the last
+ * point or removing points from the start (see ModificationCounter). The
+ * newest point is not added to the columns until a newer point is added as its
+ * value may still be replaced.
+ *
+ * The domain and range bounds are those of the source dataset, which may track
+ * them as points are added (see RangeInfo and XYRangeInfo).
+ */
+public class DecimatedXYDataset extends AbstractXYDataset implements DatasetChangeListener, DomainInfo, RangeInfo, XYRangeInfo
+{
+  static final long serialVersionUID=1;
+  public static final int     POINTS_PER_COLUMN=4;
+  private XYDataset           source;
+  private XYPlot              plot;
+  private double              lower=Double.NaN;
+  private double              upper=Double.NaN;
+  private int                 columns;
+  private boolean             valid;
+  private boolean             decimated;
+  //The columns held, in a ring. Column n holds the points from n*columnWidth
+  //up to (n+1)*columnWidth. Column columnStart is at ring index columnHead.
+  private double              columnWidth;
+  private long                columnStart;
+  private int                 columnHead;
+  private int                 heldColumnCount;
+  //The state of each column
+  private int                 columnCount[] = new int[0];
+  private double              firstX[],firstY[],lastX[],lastY[],minX[],minY[],maxX[],maxY[];
+  //Used to decide if the columns can be updated incrementally
+  private boolean             columnsValid;
+  private long                modificationCount;
+  private int                 columnEnd;        //The source index after the last point added to the columns
+  private double              lastColumnX;      //The x value of the last point added to the columns
+  private int                 lastColumnXCount; //The number of points added with an x value of lastColumnX
+  private boolean             haveLastColumnX;
+  private long                rebuildCount;
+  private long                updateCount;
+  //The points passed to the renderer
+  private double              xValues[] = new double[0];
+  private double              yValues[] = new double[0];
+  private int                 pointCount;
+
+  /**
+   * @param source  The dataset holding all the points of the plot.
+   * @param plot    The plot that the dataset is drawn on. The visible x range is
+   *                read from its domain axis.
+   * @param columns The width of the chart in pixels.
+   */
+  public DecimatedXYDataset(XYDataset source, XYPlot plot, int columns)
+  {
+    this.source=source;
+    this.plot=plot;
+    this.columns=Math.max(1, columns);
+    source.addChangeListener(this);
+  }
+
+  public XYDataset getSource() { return source; }
+
+  /**
+   * @return The number of times the columns have been rebuilt from all the visible points.
+   */
+  public long getRebuildCount() { return rebuildCount; }
+
+  /**
+   * @return The number of times the columns have been updated with only the points added.
+   */
+  public long getUpdateCount() { return updateCount; }
+
+  /**
+   * Set the width of the chart in pixels.
+   */
+  public void setColumns(int columns)
+  {
+    columns=Math.max(1, columns);
+    if( columns != this.columns )
+    {
+      this.columns=columns;
+      columnsValid=false;
+      valid=false;
+    }
+  }
+
+  /**
+   * Called when the points of the source dataset have changed.
+   */
+  public void datasetChanged(DatasetChangeEvent event)
+  {
+    valid=false;
+    fireDatasetChanged();
+  }
+
+  /**
+   * Recalculate the points to be drawn if required.
+   */
+  private void validate()
+  {
+    //The axis range is read here as JFreeChart does not send an axis change 
+    //event when it changes the range of an auto range axis.
+    ValueAxis domainAxis = plot.getDomainAxis();
+    if( domainAxis.getLowerBound() != lower || domainAxis.getUpperBound() != upper )
+    {
+      lower = domainAxis.getLowerBound();
+      upper = domainAxis.getUpperBound();
+      valid=false;
+    }
+    if( valid )
+    {
+      return;
+    }
+    valid=true;
+    int count = source.getItemCount(0);
+    if( count == 0 || Double.isNaN(lower) || upper <= lower )
+    {
+      decimated=false;
+      columnsValid=false;
+      return;
+    }
+    int first = findIndex(lower, false, count);
+    int last = findIndex(upper, true, count);
+    //first to last-1 are the visible points
+    double width = DecimatedXYDataset.GetColumnWidth(lower, upper, columns);
+    if( last-first <= columns*DecimatedXYDataset.POINTS_PER_COLUMN || !(width > 0) || Double.isInfinite(width) )
+    {
+      decimated=false;
+      columnsValid=false;
+      return;
+    }
+    decimated=true;
+    updateColumns(width, last, count);
+    buildPoints(last, count);
+  }
+
+  /**
+   * @return The largest power of two that is no wider than a pixel.
+   */
+  private static double GetColumnWidth(double lower, double upper, int columns)
+  {
+    return Math.scalb(1.0, Math.getExponent((upper-lower)/columns));
+  }
+
+  /**
+   * @return The column that x is in.
+   */
+  private static long GetColumn(double x, double columnWidth)
+  {
+    return (long)Math.floor(x/columnWidth);
+  }
+
+  /**
+   * Add the visible points (not including the newest point) to the columns,
+   * only adding the points not already added if possible.
+   *
+   * @param width The column width.
+   * @param last  The index of the first point after the visible range.
+   */
+  private void updateColumns(double width, int last, int count)
+  {
+    int end = Math.min(last, count-1);
+    long currentModificationCount = source instanceof ModificationCounter ? ((ModificationCounter)source).getModificationCount() : 0;
+    long lowColumn = DecimatedXYDataset.GetColumn(lower, width);
+    long highColumn = DecimatedXYDataset.GetColumn(upper, width);
+    //The points with an x value of lastColumnX must not have been removed to find the next point to add
+    boolean incremental = columnsValid &&
+                          haveLastColumnX &&
+                          source instanceof ModificationCounter &&
+                          currentModificationCount == modificationCount &&
+                          width >= columnWidth &&
+                          Math.getExponent(width)-Math.getExponent(columnWidth) < 63 &&
+                          source.getXValue(0, 0) < lastColumnX;
+    if( incremental && width > columnWidth )
+    {
+      mergeColumns(width, findIndex(lastColumnX, false, count)+lastColumnXCount, count);
+    }
+    if( incremental && columnStart+heldColumnCount-1 > highColumn )
+    {
+      //The visible range has moved back before the columns held
+      incremental=false;
+    }
+    if( incremental )
+    {
+      int addStart = findIndex(lastColumnX, false, count)+lastColumnXCount;
+      if( addStart < columnEnd )
+      {
+        removeFirstPoints(addStart, count);
+      }
+      dropColumns(lowColumn);
+      if( lowColumn < columnStart )
+      {
+        insertColumns(lowColumn, addStart, count);
+      }
+      int visibleStart = findIndex(lowColumn*width, false, count);
+      if( addStart < visibleStart )
+      {
+        //The range has moved on past points that were not added
+        skipPoints(visibleStart, count);
+        addStart=visibleStart;
+      }
+      addPoints(addStart, end);
+      updateCount++;
+    }
+    else
+    {
+      columnWidth=width;
+      columnStart=lowColumn;
+      columnHead=0;
+      heldColumnCount=0;
+      haveLastColumnX=false;
+      ensureColumnCapacity( (int)(highColumn-lowColumn+1) );
+      addPoints(findIndex(lowColumn*width, false, count), end);
+      rebuildCount++;
+    }
+    columnsValid=true;
+    modificationCount=currentModificationCount;
+  }
+
+  /**
+   * Rebuild the columns holding points that have been removed from the start
+   * of the source dataset.
+   *
+   * @param addStart The index of the first point not added to the columns.
+   */
+  private void removeFirstPoints(int addStart, int count)
+  {
+    double firstPointX = source.getXValue(0, 0);
+    long firstColumn = DecimatedXYDataset.GetColumn(firstPointX, columnWidth);
+    //The columns before the first point only held removed points
+    dropColumns(firstColumn);
+    if( heldColumnCount > 0 && columnStart == firstColumn )
+    {
+      columnCount[columnHead]=0;
+      int end = Math.min(addStart, findIndex((firstColumn+1)*columnWidth, false, count));
+      for( int i=0 ; i<end ; i++ )
+      {
+        addToColumn(source.getXValue(0, i), source.getYValue(0, i));
+      }
+    }
+  }
+
+  /**
+   * Drop the columns before column.
+   */
+  private void dropColumns(long column)
+  {
+    if( column-columnStart >= heldColumnCount )
+    {
+      heldColumnCount=0;
+      columnStart=column;
+      columnHead=0;
+      return;
+    }
+    while( columnStart < column )
+    {
+      columnHead=(columnHead+1)%columnCount.length;
+      columnStart++;
+      heldColumnCount--;
+    }
+  }
+
+  /**
+   * Add the columns from column up to the first column held, and the points in them.
+   *
+   * @param addStart The index of the first point not added to the columns.
+   */
+  private void insertColumns(long column, int addStart, int count)
+  {
+    int insertCount = (int)(columnStart-column);
+    ensureColumnCapacity(heldColumnCount+insertCount);
+    columnHead=(columnHead-insertCount+columnCount.length)%columnCount.length;
+    for( int i=0 ; i<insertCount ; i++ )
+    {
+      columnCount[(columnHead+i)%columnCount.length]=0;
+    }
+    int start = findIndex(column*columnWidth, false, count);
+    int end = Math.min(addStart, findIndex(columnStart*columnWidth, false, count));
+    columnStart=column;
+    heldColumnCount+=insertCount;
+    for( int i=start ; i<end ; i++ )
+    {
+      addToColumn(source.getXValue(0, i), source.getYValue(0, i));
+    }
+  }
+
+  /**
+   * Merge the columns into columns of a greater width.
+   *
+   * @param width    The new column width, a power of two times the current width.
+   * @param addStart The index of the first point not added to the columns.
+   */
+  private void mergeColumns(double width, int addStart, int count)
+  {
+    long oldColumnStart=columnStart;
+    double oldColumnWidth=columnWidth;
+    int shift = Math.getExponent(width)-Math.getExponent(columnWidth);
+    long newColumnStart = columnStart>>shift;
+    int newColumnCount = heldColumnCount == 0 ? 0 : (int)(((columnStart+heldColumnCount-1)>>shift)-newColumnStart+1);
+    int oldHead=columnHead;
+    int oldCapacity=columnCount.length;
+    int oldCount[]=columnCount;
+    double oldFirstX[]=firstX, oldFirstY[]=firstY, oldLastX[]=lastX, oldLastY[]=lastY;
+    double oldMinX[]=minX, oldMinY[]=minY, oldMaxX[]=maxX, oldMaxY[]=maxY;
+    allocateColumns(oldCapacity);
+    for( int i=0 ; i<heldColumnCount ; i++ )
+    {
+      int from=(oldHead+i)%oldCapacity;
+      int to=(int)(((columnStart+i)>>shift)-newColumnStart);
+      if( oldCount[from] == 0 )
+      {
+        continue;
+      }
+      if( columnCount[to] == 0 )
+      {
+        firstX[to]=oldFirstX[from];
+        firstY[to]=oldFirstY[from];
+        minX[to]=oldMinX[from];
+        minY[to]=oldMinY[from];
+        maxX[to]=oldMaxX[from];
+        maxY[to]=oldMaxY[from];
+      }
+      else
+      {
+        if( oldMinY[from] < minY[to] )
+        {
+          minX[to]=oldMinX[from];
+          minY[to]=oldMinY[from];
+        }
+        if( oldMaxY[from] > maxY[to] )
+        {
+          maxX[to]=oldMaxX[from];
+          maxY[to]=oldMaxY[from];
+        }
+      }
+      lastX[to]=oldLastX[from];
+      lastY[to]=oldLastY[from];
+      columnCount[to]+=oldCount[from];
+    }
+    columnWidth=width;
+    columnStart=newColumnStart;
+    columnHead=0;
+    heldColumnCount=newColumnCount;
+    if( heldColumnCount > 0 )
+    {
+      //The first column also covers columns before the first column held
+      int start = findIndex(newColumnStart*width, false, count);
+      int end = Math.min(addStart, findIndex(oldColumnStart*oldColumnWidth, false, count));
+      for( int i=end-1 ; i>=start ; i-- )
+      {
+        prependToFirstColumn(source.getXValue(0, i), source.getYValue(0, i));
+      }
+    }
+  }
+
+  /**
+   * Make sure that the ring can hold capacity columns.
+   */
+  private void ensureColumnCapacity(int capacity)
+  {
+    if( capacity <= columnCount.length )
+    {
+      return;
+    }
+    int oldHead=columnHead;
+    int oldCapacity=columnCount.length;
+    int oldCount[]=columnCount;
+    double oldFirstX[]=firstX, oldFirstY[]=firstY, oldLastX[]=lastX, oldLastY[]=lastY;
+    double oldMinX[]=minX, oldMinY[]=minY, oldMaxX[]=maxX, oldMaxY[]=maxY;
+    allocateColumns( Math.max(capacity, oldCapacity*2) );
+    for( int i=0 ; i<heldColumnCount ; i++ )
+    {
+      int from=(oldHead+i)%oldCapacity;
+      columnCount[i]=oldCount[from];
+      firstX[i]=oldFirstX[from];
+      firstY[i]=oldFirstY[from];
+      lastX[i]=oldLastX[from];
+      lastY[i]=oldLastY[from];
+      minX[i]=oldMinX[from];
+      minY[i]=oldMinY[from];
+      maxX[i]=oldMaxX[from];
+      maxY[i]=oldMaxY[from];
+    }
+    columnHead=0;
+  }
+
+  private void allocateColumns(int capacity)
+  {
+    columnCount = new int[capacity];
+    firstX = new double[capacity];
+    firstY = new double[capacity];
+    lastX = new double[capacity];
+    lastY = new double[capacity];
+    minX = new double[capacity];
+    minY = new double[capacity];
+    maxX = new double[capacity];
+    maxY = new double[capacity];
+  }
+
+  /**
+   * Add the points from start to end-1 (the newest points) to the columns.
+   */
+  private void addPoints(int start, int end)
+  {
+    for( int i=start ; i<end ; i++ )
+    {
+      double x = source.getXValue(0, i);
+      addToColumn(x, source.getYValue(0, i));
+      if( haveLastColumnX && x == lastColumnX )
+      {
+        lastColumnXCount++;
+      }
+      else
+      {
+        lastColumnX=x;
+        lastColumnXCount=1;
+        haveLastColumnX=true;
+      }
+    }
+    if( end > start )
+    {
+      columnEnd=end;
+    }
+    else if( !haveLastColumnX )
+    {
+      columnEnd=0;
+    }
+    else
+    {
+      columnEnd=start;
+    }
+  }
+
+  /**
+   * Treat the points before index as added to the columns, as they are before
+   * the visible columns.
+   */
+  private void skipPoints(int index, int count)
+  {
+    lastColumnX = source.getXValue(0, index-1);
+    lastColumnXCount = index-findIndex(lastColumnX, false, count);
+    haveLastColumnX=true;
+    columnEnd=index;
+  }
+
+  private void addToColumn(double x, double y)
+  {
+    long columnIndex = DecimatedXYDataset.GetColumn(x, columnWidth)-columnStart;
+    if( columnIndex < 0 )
+    {
+      columnIndex=0;
+    }
+    if( columnIndex >= heldColumnCount )
+    {
+      ensureColumnCapacity( (int)columnIndex+1 );
+      for( int i=heldColumnCount ; i<=columnIndex ; i++ )
+      {
+        columnCount[(columnHead+i)%columnCount.length]=0;
+      }
+      heldColumnCount=(int)columnIndex+1;
+    }
+    int column = (int)((columnHead+columnIndex)%columnCount.length);
+    if( columnCount[column] == 0 )
+    {
+      firstX[column]=x;
+      firstY[column]=y;
+      minX[column]=x;
+      minY[column]=y;
+      maxX[column]=x;
+      maxY[column]=y;
+    }
+    else
+    {
+      if( y < minY[column] )
+      {
+        minX[column]=x;
+        minY[column]=y;
+      }
+      if( y > maxY[column] )
+      {
+        maxX[column]=x;
+        maxY[column]=y;
+      }
+    }
+    lastX[column]=x;
+    lastY[column]=y;
+    columnCount[column]++;
+  }
+
+  /**
+   * Add a point before the points in the first column held.
+   */
+  private void prependToFirstColumn(double x, double y)
+  {
+    int column=columnHead;
+    if( columnCount[column] == 0 )
+    {
+      lastX[column]=x;
+      lastY[column]=y;
+      minX[column]=x;
+      minY[column]=y;
+      maxX[column]=x;
+      maxY[column]=y;
+    }
+    else
+    {
+      if( y <= minY[column] )
+      {
+        minX[column]=x;
+        minY[column]=y;
+      }
+      if( y >= maxY[column] )
+      {
+        maxX[column]=x;
+        maxY[column]=y;
+      }
+    }
+    firstX[column]=x;
+    firstY[column]=y;
+    columnCount[column]++;
+  }
+
+  /**
+   * Build the list of points to be drawn from the visible columns. The point 
+   * before and after the visible columns are included so that the lines are 
+   * drawn to the edges of the chart.
+   *
+   * @param last The index of the first point after the visible range.
+   */
+  private void buildPoints(int last, int count)
+  {
+    long lowColumn = DecimatedXYDataset.GetColumn(lower, columnWidth);
+    long highColumn = DecimatedXYDataset.GetColumn(upper, columnWidth);
+    int maxPoints = (int)(highColumn-lowColumn+1)*4+3;
+    if( xValues.length < maxPoints )
+    {
+      xValues = new double[maxPoints];
+      yValues = new double[maxPoints];
+    }
+    pointCount=0;
+    int first = findIndex(lowColumn*columnWidth, false, count);
+    if( first > 0 )
+    {
+      addPoint(source.getXValue(0, first-1), source.getYValue(0, first-1));
+    }
+    //The newest point is not held in the columns
+    long newestColumn=Long.MIN_VALUE;
+    double newestX=0;
+    double newestY=0;
+    if( last == count )
+    {
+      newestX = source.getXValue(0, count-1);
+      newestY = source.getYValue(0, count-1);
+      newestColumn = DecimatedXYDataset.GetColumn(newestX, columnWidth);
+    }
+    for( long column=lowColumn ; column<=highColumn ; column++ )
+    {
+      long columnIndex = column-columnStart;
+      int ringIndex = columnIndex >= 0 && columnIndex < heldColumnCount ? (int)((columnHead+columnIndex)%columnCount.length) : -1;
+      if( ringIndex >= 0 && columnCount[ringIndex] == 0 )
+      {
+        ringIndex=-1;
+      }
+      if( column == newestColumn )
+      {
+        addColumnPoints(ringIndex, true, newestX, newestY);
+      }
+      else if( ringIndex >= 0 )
+      {
+        addColumnPoints(ringIndex, false, 0, 0);
+      }
+    }
+    if( last < count )
+    {
+      addPoint(source.getXValue(0, last), source.getYValue(0, last));
+    }
+  }
+
+  /**
+   * Add the first, min, max and last points of a column in x order.
+   *
+   * @param column The ring index of the column or -1 if the column holds no points.
+   */
+  private void addColumnPoints(int column, boolean addNewest, double newestX, double newestY)
+  {
+    if( column < 0 )
+    {
+      //Only the newest point is in this column
+      addPoint(newestX, newestY);
+      return;
+    }
+    double cMinX=minX[column], cMinY=minY[column], cMaxX=maxX[column], cMaxY=maxY[column];
+    double cLastX=lastX[column], cLastY=lastY[column];
+    if( addNewest )
+    {
+      if( newestY < cMinY )
+      {
+        cMinX=newestX;
+        cMinY=newestY;
+      }
+      if( newestY > cMaxY )
+      {
+        cMaxX=newestX;
+        cMaxY=newestY;
+      }
+      cLastX=newestX;
+      cLastY=newestY;
+    }
+    addPoint(firstX[column], firstY[column]);
+    if( cMinX <= cMaxX )
+    {
+      addPoint(cMinX, cMinY);
+      addPoint(cMaxX, cMaxY);
+    }
+    else
+    {
+      addPoint(cMaxX, cMaxY);
+      addPoint(cMinX, cMinY);
+    }
+    addPoint(cLastX, cLastY);
+  }
+
+  /**
+   * Add a point to be drawn unless it is the same as the previous point.
+   */
+  private void addPoint(double x, double y)
+  {
+    if( pointCount > 0 && xValues[pointCount-1] == x && yValues[pointCount-1] == y )
+    {
+      return;
+    }
+    xValues[pointCount]=x;
+    yValues[pointCount]=y;
+    pointCount++;
+  }
+
+  /**
+   * @param after If true find the first point after x, else the first point at or after x.
+   * @return The index of the first point with an x value > x (or >= x), or count if there is none.
+   */
+  private int findIndex(double x, boolean after, int count)
+  {
+    int low=0;
+    int high=count;
+    while( low < high )
+    {
+      int mid = (low+high)>>>1;
+      double midX = source.getXValue(0, mid);
+      if( midX < x || ( after && midX == x ) )
+      {
+        low=mid+1;
+      }
+      else
+      {
+        high=mid;
+      }
+    }
+    return low;
+  }
+
+  public int getSeriesCount()
+  {
+    return 1;
+  }
+
+  @SuppressWarnings("rawtypes")
+  public Comparable getSeriesKey(int series)
+  {
+    return source.getSeriesKey(series);
+  }
+
+  @Override
+  public DomainOrder getDomainOrder()
+  {
+    return DomainOrder.ASCENDING;
+  }
+
+  public int getItemCount(int series)
+  {
+    validate();
+    return decimated ? pointCount : source.getItemCount(series);
+  }
+
+  @Override
+  public double getXValue(int series, int item)
+  {
+    return decimated ? xValues[item] : source.getXValue(series, item);
+  }
+
+  @Override
+  public double getYValue(int series, int item)
+  {
+    return decimated ? yValues[item] : source.getYValue(series, item);
+  }
+
+  public Number getX(int series, int item)
+  {
+    return decimated ? Double.valueOf(xValues[item]) : source.getX(series, item);
+  }
+
+  public Number getY(int series, int item)
+  {
+    return decimated ? Double.valueOf(yValues[item]) : source.getY(series, item);
+  }
+
+  /**
+   * The domain bounds are those of all the points held (not just the visible points)
+   * so that the x axis range includes all the points.
+   */
+  public double getDomainLowerBound(boolean includeInterval)
+  {
+    Range range = getDomainBounds(includeInterval);
+    return range == null ? Double.NaN : range.getLowerBound();
+  }
+
+  public double getDomainUpperBound(boolean includeInterval)
+  {
+    Range range = getDomainBounds(includeInterval);
+    return range == null ? Double.NaN : range.getUpperBound();
+  }
+
+  public Range getDomainBounds(boolean includeInterval)
+  {
+    return DatasetUtilities.findDomainBounds(source, includeInterval);
+  }
+
+  /**
+   * The range bounds are those of all the points held (not just the points drawn).
+   */
+  public double getRangeLowerBound(boolean includeInterval)
+  {
+    Range range = getRangeBounds(includeInterval);
+    return range == null ? Double.NaN : range.getLowerBound();
+  }
+
+  public double getRangeUpperBound(boolean includeInterval)
+  {
+    Range range = getRangeBounds(includeInterval);
+    return range == null ? Double.NaN : range.getUpperBound();
+  }
+
+  public Range getRangeBounds(boolean includeInterval)
+  {
+    return DatasetUtilities.findRangeBounds(source, includeInterval);
+  }
+
+  /**
+   * Used by the renderer to find the y axis auto range.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval)
+  {
+    return DatasetUtilities.findRangeBounds(source, visibleSeriesKeys, xRange, includeInterval);
+  }
+
+}
@@ -60,6 +60,9 @@ public class DialPlotPanel extends GenericPlotPanel  implements PlotPanelInterfa
       finalize();
       this.dataset1 = new DefaultValueDataset(10.0);
       this.dataset2 = new DefaultValueDataset(50.0);
+      //The chart is notified of changes by the RenderScheduler
+      this.dataset1.setNotify(false);
+      this.dataset2.setNotify(false);
       
       // get data for diagrams
       plot = new DialPlot();
@@ -159,17 +162,53 @@ public class DialPlotPanel extends GenericPlotPanel  implements PlotPanelInterfa
     {
       int index=(int)plotIndex;
       
-      if( index == 0 )
+      if( index != 0 && index != 1 )
       {
-        this.dataset1.setValue(yValue);
+        throw new NetPlotException("DialPlotPanel.addPlotValue(double plotIndex, double yValue) plotIndex="+index+" invalid (0 or 1 are valid)"); 
       }
-      else if ( index == 1 )
+      stageValue(GenericPlotPanel.Y_VALUES, index, 0, 0, yValue);
+    }
+
+    /**
+     * A dial only shows a single value so only the last value is used.
+     */
+    void applyValues(int type, int plotIndex, long times[], double xValues[], double yValues[], int offset, int length)
+    {
+      DefaultValueDataset dataset = plotIndex == 0 ? dataset1 : dataset2;
+      if( dataset != null && length > 0 )
       {
-        this.dataset2.setValue(yValue);
+        dataset.setValue(yValues[offset+length-1]);
       }
-      else
+    }
+
+    /**
+     * A dial only shows a single value so only the last value is used.
+     */
+    public void addPlotValues(int plotIndex, double yValues[], int offset, int length) throws NetPlotException
+    {
+      if( length > 0 )
       {
-        throw new NetPlotException("DialPlotPanel.addPlotValue(double plotIndex, double yValue) plotIndex="+index+" invalid (0 or 1 are valid)"); 
+        addPlotValue(plotIndex, yValues[offset+length-1]);
+      }
+    }
+
+    public void addPlotValues(int plotIndex, double xValues[], double yValues[], int offset, int length) throws NetPlotException 
+    { 
+      throw new NetPlotException("addPlotValues(int plotIndex, double xValues[], double yValues[], int offset, int length) is invalid for DialPlotPanel"); 
+    }
+
+    public void addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) throws NetPlotException 
+    { 
+      throw new NetPlotException("addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) should not be used on DialPlotPanel"); 
+    }
+
+    void fireDatasetChanged(int plotIndex)
+    {
+      DefaultValueDataset dataset = plotIndex == 0 ? dataset1 : dataset2;
+      if( dataset != null ) {
+        //Enabling notify sends the change event, disabling it again does not
+        dataset.setNotify(true);
+        dataset.setNotify(false);
       }
     }
 
@@ -183,6 +222,11 @@ public class DialPlotPanel extends GenericPlotPanel  implements PlotPanelInterfa
       throw new NetPlotException("addPlotValue(int plotIndex, Millisecond ms, double yValue) should not be used on DialPlotPanel"); 
     }
 
+    public void addTimePlotValue(int plotIndex, long epochMillis, double yValue) throws NetPlotException 
+    { 
+      throw new NetPlotException("addTimePlotValue(int plotIndex, long epochMillis, double yValue) should not be used on DialPlotPanel"); 
+    }
+
     public void finalize()
     {
       removeAll();
@@ -248,6 +292,7 @@ public class DialPlotPanel extends GenericPlotPanel  implements PlotPanelInterfa
         }
         else {
           dataset1.setValue(0);
+          plotChanged(0);
         }
       }
       else if( plotIndex == 1 ) {
@@ -256,6 +301,7 @@ public class DialPlotPanel extends GenericPlotPanel  implements PlotPanelInterfa
         }
         else {
           dataset2.setValue(0);
+          plotChanged(1);
         }
       }
       else {
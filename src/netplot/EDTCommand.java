@@ -0,0 +1,112 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.lang.reflect.InvocationTargetException;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Responsible for running a change to the charts or the frame on the Swing
+ * event dispatch thread (EDT). Swing components and chart datasets must only
+ * be changed on the EDT, so the threads receiving data pass such changes to
+ * the EDT event queue rather than making them directly.
+ */
+public abstract class EDTCommand implements Runnable
+{
+  private Exception error;
+
+  /**
+   * Make the change. Called on the EDT.
+   */
+  public abstract void execute() throws NetPlotException;
+
+  public void run()
+  {
+    try
+    {
+      execute();
+    }
+    catch(NetPlotException e)
+    {
+      error=e;
+    }
+    catch(RuntimeException e)
+    {
+      error=e;
+    }
+  }
+
+  /**
+   * Run the command on the EDT and wait for it to complete. Used when the
+   * client is to be told if the command failed.
+   */
+  public static void RunAndWait(EDTCommand command) throws NetPlotException
+  {
+    if( SwingUtilities.isEventDispatchThread() )
+    {
+      command.execute();
+      return;
+    }
+    try
+    {
+      SwingUtilities.invokeAndWait(command);
+    }
+    catch(InterruptedException e)
+    {
+      throw new NetPlotException("Interrupted while waiting for the charts to be updated.");
+    }
+    catch(InvocationTargetException e)
+    {
+      throw new NetPlotException(""+e.getCause());
+    }
+    if( command.error instanceof NetPlotException )
+    {
+      throw (NetPlotException)command.error;
+    }
+    if( command.error != null )
+    {
+      throw (RuntimeException)command.error;
+    }
+  }
+
+  /**
+   * Add the command to the EDT event queue and return without waiting. Commands
+   * are run in the order they are added. If the command fails the error is shown.
+   * If called on the EDT the command is run immediately and a RuntimeException
+   * is passed to the caller.
+   */
+  public static void RunLater(EDTCommand command)
+  {
+    if( SwingUtilities.isEventDispatchThread() )
+    {
+      command.run();
+      if( command.error instanceof RuntimeException )
+      {
+        throw (RuntimeException)command.error;
+      }
+      if( command.error != null )
+      {
+        UO.Error(command.error.getLocalizedMessage());
+      }
+      return;
+    }
+    final EDTCommand laterCommand = command;
+    SwingUtilities.invokeLater(new Runnable()
+    {
+      public void run()
+      {
+        laterCommand.run();
+        if( laterCommand.error != null )
+        {
+          UO.Error(laterCommand.error.getLocalizedMessage());
+        }
+      }
+    });
+  }
+
+}
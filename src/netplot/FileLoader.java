@@ -0,0 +1,168 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Responsible for loading a file of netplot lines (the commands and values a
+ * client would send) into the chart of a TCP/IP port (-f).
+ *
+ * The file is memory mapped in chunks of whole lines. The chunks are parsed
+ * in parallel (see ParallelLineParser) directly from the mapped memory and
+ * the results are added to the chart in the order of the lines by a
+ * LineProcessor, as if the lines had been received from a client in a
+ * single block. Lines that fail are shown with their line number and the
+ * load continues.
+ */
+public class FileLoader implements Runnable, ParsedLineHandler
+{
+  public static final int       CHUNK_SIZE=4*1024*1024;
+  //The number of errors shown, the rest are only counted
+  public static final int       MAX_ERRORS_SHOWN=100;
+  private final File            file;
+  private final int             panelIndex;
+  private final LineProcessor   lineProcessor;
+  private long                  errorCount;
+
+  /**
+   * @param file       The file to load.
+   * @param panelIndex The index of the chart to load the file into.
+   */
+  public FileLoader(File file, int panelIndex)
+  {
+    this.file=file;
+    this.panelIndex=panelIndex;
+    lineProcessor = new LineProcessor(panelIndex, NetPlotter.maxPlotCount);
+  }
+
+  public void run()
+  {
+    long startNanos = System.nanoTime();
+    long lineCount=0;
+    long valueCount=0;
+    RandomAccessFile randomAccessFile=null;
+    try
+    {
+      randomAccessFile = new RandomAccessFile(file, "r");
+      FileChannel fileChannel = randomAccessFile.getChannel();
+      long fileSize = fileChannel.size();
+      long offset=0;
+      ParallelLineParser parallelLineParser = new ParallelLineParser();
+      //Parse ahead of the chunk being added to the chart, but not the whole file
+      int maxPendingChunks = ParallelLineParser.GetParallelism()*2;
+      UO.Info("Loading "+file+" ("+fileSize+" bytes) to TCP/IP port "+(NetPlotter.basePort+panelIndex));
+      while( offset < fileSize || parallelLineParser.getPendingCount() > 0 )
+      {
+        while( offset < fileSize && parallelLineParser.getPendingCount() < maxPendingChunks )
+        {
+          offset = submitChunk(fileChannel, fileSize, offset, parallelLineParser);
+        }
+        ParsedLines parsedLines = parallelLineParser.take();
+        parsedLines.apply(lineProcessor, lineCount+1, this);
+        lineCount+=parsedLines.getLineCount();
+        valueCount+=parsedLines.getValueCount();
+        parallelLineParser.free(parsedLines);
+        try
+        {
+          lineProcessor.flush();
+        }
+        catch(Exception e)
+        {
+          lineFailed(lineCount, e);
+        }
+      }
+      double seconds = (System.nanoTime()-startNanos)/1.0E9;
+      UO.Info("Loaded "+lineCount+" lines ("+valueCount+" values, "+errorCount+" errors) from "+file+" in "+seconds+" seconds");
+    }
+    catch(IOException e)
+    {
+      UO.Error("Failed to load "+file+": "+e.getLocalizedMessage());
+    }
+    catch(InterruptedException e)
+    {
+      UO.Error("Loading "+file+" was interrupted");
+    }
+    finally
+    {
+      lineProcessor.close();
+      if( randomAccessFile != null )
+      {
+        try
+        {
+          randomAccessFile.close();
+        }
+        catch(IOException e) {}
+      }
+    }
+  }
+
+  /**
+   * Map the chunk of whole lines that starts at the offset and start parsing it.
+   *
+   * @return The offset of the next chunk.
+   */
+  private long submitChunk(FileChannel fileChannel, long fileSize, long offset, ParallelLineParser parallelLineParser) throws IOException
+  {
+    long size = FileLoader.CHUNK_SIZE;
+    while( true )
+    {
+      size = Math.min(size, fileSize-offset);
+      MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+      int end = (int)size;
+      if( offset+size < fileSize )
+      {
+        //End the chunk after the last complete line
+        while( end > 0 && buffer.get(end-1) != '\n' )
+        {
+          end--;
+        }
+      }
+      if( end > 0 )
+      {
+        parallelLineParser.submit(buffer, 0, end);
+        return offset+end;
+      }
+      if( size >= Integer.MAX_VALUE/2 )
+      {
+        throw new IOException("line at byte "+offset+" is too long");
+      }
+      //A line longer than the chunk
+      size=size*2;
+    }
+  }
+
+  public void processLine(long lineNumber, String line) throws Exception
+  {
+    lineProcessor.processLine(line);
+  }
+
+  public void lineProcessed(long lineNumber) {}
+
+  public boolean isClosed()
+  {
+    return false;
+  }
+
+  public void lineFailed(long lineNumber, Exception e)
+  {
+    errorCount++;
+    if( errorCount <= FileLoader.MAX_ERRORS_SHOWN )
+    {
+      UO.Error(file+": line "+lineNumber+": "+e.getLocalizedMessage());
+    }
+    if( errorCount == FileLoader.MAX_ERRORS_SHOWN )
+    {
+      UO.Error(file+": further errors are not shown");
+    }
+  }
+
+}
@@ -8,27 +8,59 @@ package netplot;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
 import java.awt.LayoutManager;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.Rectangle2D;
+import java.util.BitSet;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
+import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.AxisLocation;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.axis.NumberTickUnit;
 import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.ChartProgressEvent;
+import org.jfree.chart.event.ChartProgressListener;
 import org.jfree.chart.labels.XYToolTipGenerator;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYItemRenderer;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.chart.util.LogFormat;
 import org.jfree.data.Range;
+import org.jfree.data.xy.XYDataset;
 import org.jfree.chart.axis.LogarithmicAxis;
 
-public class GenericPlotPanel extends JPanel
+/**
+ * The base class of all the chart panels.
+ *
+ * The chart datasets and Swing components of a panel are only changed on the
+ * EDT. Values added from other threads (see the addPlotValue methods) are
+ * checked, held in a StagedValues and marked as changed. The RenderScheduler
+ * then swaps the staged values for an empty StagedValues on the EDT and adds
+ * them to the datasets (see applyValues()) before the chart is redrawn, so
+ * the chart always reads datasets that are not being changed. The threads
+ * adding values only wait for each other (or the EDT) for the time taken to
+ * copy the values or swap the buffers, and each panel has its own lock.
+ */
+public class GenericPlotPanel extends JPanel implements ChartProgressListener
 {
   static final long serialVersionUID=3;
   static final int DEFAULT_LINE_WIDTH=1;
+  static final int DEFAULT_MAX_POINT_COUNT=1000000;
+  //The types of the values held in a StagedValues
+  static final int Y_VALUES=1;
+  static final int XY_VALUES=2;
+  static final int TIME_VALUES=3;
+  //If more values than this are staged they are added to the datasets before the chart is next redrawn
+  public static final int MAX_STAGED_VALUES=262144;
+  //If more values than this are staged the threads adding values wait until they have been added to the datasets
+  public static final int STAGED_VALUES_LIMIT=4*MAX_STAGED_VALUES;
   public static Color       PlotColours[] = {Color.blue, Color.black, Color.red, Color.green, Color.cyan, Color.darkGray, Color.gray, Color.lightGray, Color.magenta, Color.orange, Color.pink, Color.yellow };
 
   //Plot attributes
@@ -44,14 +76,41 @@ public class GenericPlotPanel extends JPanel
   double    minScaleValue=0;
   double    maxScaleValue=0;
   int       maxAgeSeconds=60;
+  int       maxPointCount=GenericPlotPanel.DEFAULT_MAX_POINT_COUNT;
   boolean   logYAxis=false;
   boolean   zeroOnXScale=true;
   boolean   zeroOnYScale=false;
   boolean   enableLegend=true;
   int       yAxisTickCount=0;
+  boolean   decimationEnabled=true;
+  //Histogram plots only, a bin count of 0 selects the default for fixed width or log bins
+  int       binCount=0;
+  double    binMin=0;
+  double    binMax=100;
+  boolean   logBins=false;
+  //Waterfall plots only
+  int       rowCount=WaterfallPlotPanel.DEFAULT_ROW_COUNT;
 
   int yAxisIndex=0;
 
+  //The index of each plot that has changed since the chart was last redrawn
+  private final BitSet changedPlots = new BitSet();
+  //The render time of the chart is recorded in these metrics if not null
+  private volatile IngestMetrics metrics;
+  private JFreeChart             timedChart;
+  private long                   renderNanos;
+  private long                   drawStartNanos;
+  //The values added to the chart that have not yet been added to the datasets, guarded by stagingLock
+  private final Object           stagingLock = new Object();
+  private StagedValues           stagedValues = new StagedValues();
+  //Only used on the EDT, swapped with stagedValues
+  private StagedValues           appliedValues = new StagedValues();
+  //A frame that replaces all the data of the chart (see stageFrame()), guarded by stagingLock
+  private double                 stagedFrame[];
+  private boolean                applyPending;
+  //The number of plots that values may be added to
+  private volatile int           addedPlotCount;
+
   public GenericPlotPanel(LayoutManager layoutManager)
   {
     super(layoutManager);
@@ -71,7 +130,13 @@ public String toString()
     strBuffer.append("minScaleValue    = "+minScaleValue+"\n");
     strBuffer.append("maxScaleValue    = "+maxScaleValue+"\n");
     strBuffer.append("maxAgeSeconds    = "+maxAgeSeconds+"\n");
+    strBuffer.append("maxPointCount    = "+maxPointCount+"\n");
     strBuffer.append("logYAxis         = "+logYAxis+"\n");
+    strBuffer.append("binCount         = "+binCount+"\n");
+    strBuffer.append("binMin           = "+binMin+"\n");
+    strBuffer.append("binMax           = "+binMax+"\n");
+    strBuffer.append("logBins          = "+logBins+"\n");
+    strBuffer.append("rowCount         = "+rowCount+"\n");
     return strBuffer.toString();
   }
 
@@ -175,6 +240,85 @@ public String toString()
         throw new NetPlotException(value+" is an invalid value for "+KeyWords.MAX_AGE_SECONDS+", must be a integer value");
       }
     }
+    else if( name.equals(KeyWords.MAX_POINT_COUNT) )
+    {
+      try
+      {
+        maxPointCount=Integer.parseInt(value);
+        if( maxPointCount < 1 ) {
+          throw new NumberFormatException();
+        }
+      }
+      catch(NumberFormatException e)
+      {
+        throw new NetPlotException(value+" is an invalid value for "+KeyWords.MAX_POINT_COUNT+", must be a integer value greater than 0");
+      }
+    }
+    else if( name.equals(KeyWords.BIN_COUNT) )
+    {
+      try
+      {
+        binCount=Integer.parseInt(value);
+        if( binCount < 1 ) {
+          throw new NumberFormatException();
+        }
+      }
+      catch(NumberFormatException e)
+      {
+        throw new NetPlotException(value+" is an invalid value for "+KeyWords.BIN_COUNT+", must be a integer value greater than 0");
+      }
+    }
+    else if( name.equals(KeyWords.ROW_COUNT) )
+    {
+      try
+      {
+        rowCount=Integer.parseInt(value);
+        if( rowCount < 1 ) {
+          throw new NumberFormatException();
+        }
+      }
+      catch(NumberFormatException e)
+      {
+        throw new NetPlotException(value+" is an invalid value for "+KeyWords.ROW_COUNT+", must be a integer value greater than 0");
+      }
+    }
+    else if( name.equals(KeyWords.BIN_MIN) )
+    {
+      try
+      {
+        binMin=Double.parseDouble(value);
+      }
+      catch(NumberFormatException e)
+      {
+        throw new NetPlotException(value+" is an invalid value for "+KeyWords.BIN_MIN+", must be a double value");
+      }
+    }
+    else if( name.equals(KeyWords.BIN_MAX) )
+    {
+      try
+      {
+        binMax=Double.parseDouble(value);
+      }
+      catch(NumberFormatException e)
+      {
+        throw new NetPlotException(value+" is an invalid value for "+KeyWords.BIN_MAX+", must be a double value");
+      }
+    }
+    else if( name.equals(KeyWords.ENABLE_LOG_BINS) )
+    {
+      if( value.equals("true") )
+      {
+        logBins=true;
+      }
+      else if( value.equals("false") )
+      {
+        logBins=false;
+      }
+      else
+      {
+        throw new NetPlotException(value+" is an invalid value for "+KeyWords.ENABLE_LOG_BINS+", must be true or false");
+      }
+    }
     else if( name.equals(KeyWords.ENABLE_LOG_Y_AXIS) )
     {
       if( value.equals("true") )
@@ -235,6 +379,21 @@ public String toString()
         throw new NetPlotException(value+" is an invalid value for "+KeyWords.ENABLE_LEGEND+", must be true or false");
       }
     }
+    else if( name.equals(KeyWords.ENABLE_DECIMATION) )
+    {
+      if( value.equals("true") )
+      {
+        decimationEnabled=true;
+      }
+      else if( value.equals("false") )
+      {
+        decimationEnabled=false;
+      }
+      else
+      {
+        throw new NetPlotException(value+" is an invalid value for "+KeyWords.ENABLE_DECIMATION+", must be true or false");
+      }
+    }
     else if( name.equals(KeyWords.TICK_COUNT) )
     {
       try
@@ -266,6 +425,351 @@ public String toString()
     }
   }
 
+  /**
+   * Draw the chart (without Swing painting the panel). Used when there is no display.
+   */
+  void drawChart(Graphics2D g2, Rectangle2D area)
+  {
+    for( Component component : getComponents() )
+    {
+      if( component instanceof ChartPanel )
+      {
+        ((ChartPanel)component).getChart().draw(g2, area);
+      }
+    }
+  }
+
+  /**
+   * @return The dataset holding all the points of a plot wrapped in a 
+   *         DecimatedXYDataset if decimation is enabled.
+   */
+  XYDataset getPlotDataset(XYDataset dataset, XYPlot plot, ChartPanel chartPanel)
+  {
+    if( decimationEnabled )
+    {
+      return new DecimatedXYDataset(dataset, plot, GenericPlotPanel.GetWidth(chartPanel));
+    }
+    return dataset;
+  }
+
+  /**
+   * Update the decimated datasets of a chart when the width of the chart changes.
+   */
+  void addDecimationListener(final XYPlot plot, final ChartPanel chartPanel)
+  {
+    chartPanel.addComponentListener(new ComponentAdapter()
+    {
+      public void componentResized(ComponentEvent e)
+      {
+        int width = GenericPlotPanel.GetWidth(chartPanel);
+        for( int i=0 ; i<plot.getDatasetCount() ; i++ )
+        {
+          XYDataset dataset = plot.getDataset(i);
+          if( dataset instanceof DecimatedXYDataset )
+          {
+            ((DecimatedXYDataset)dataset).setColumns(width);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * @return The width of a chart in pixels.
+   */
+  static int GetWidth(ChartPanel chartPanel)
+  {
+    int width = chartPanel.getWidth();
+    if( width <= 0 )
+    {
+      width = chartPanel.getPreferredSize().width;
+    }
+    return width;
+  }
+
+  /**
+   * Called (from any thread) when the data of a plot has changed. The chart is
+   * not redrawn immediately, the RenderScheduler calls render() later.
+   */
+  void plotChanged(int plotIndex)
+  {
+    boolean alreadyDirty;
+    synchronized(changedPlots)
+    {
+      alreadyDirty = !changedPlots.isEmpty();
+      changedPlots.set(plotIndex);
+    }
+    if( !alreadyDirty )
+    {
+      RenderScheduler.MarkDirty(this);
+    }
+  }
+
+  /**
+   * Set the number of plots that values may be added to. Called by the plot
+   * panels on the EDT when plots are added or removed.
+   */
+  void setAddedPlotCount(int addedPlotCount)
+  {
+    this.addedPlotCount=addedPlotCount;
+  }
+
+  /**
+   * Check that values may be added to a plot. Called from any thread.
+   */
+  void checkPlotIndex(int plotIndex) throws NetPlotException
+  {
+    if( plotIndex < 0 || plotIndex >= addedPlotCount )
+    {
+      throw new NetPlotException("Plot "+plotIndex+" does not exist ("+addedPlotCount+" plots have been added to the chart).");
+    }
+  }
+
+  /**
+   * Hold a value until it is added to the chart dataset on the EDT. Called from any thread.
+   *
+   * @param type Y_VALUES, XY_VALUES or TIME_VALUES.
+   */
+  void stageValue(int type, int plotIndex, long time, double xValue, double yValue)
+  {
+    int stagedCount;
+    synchronized(stagingLock)
+    {
+      stagedValues.add(type, plotIndex, time, xValue, yValue);
+      stagedCount = stagedValues.getCount();
+    }
+    valuesStaged(plotIndex, stagedCount);
+  }
+
+  /**
+   * Hold values until they are added to the chart dataset on the EDT. Called from any thread.
+   *
+   * @param type    Y_VALUES, XY_VALUES or TIME_VALUES.
+   * @param time    The time of all the values if times is null.
+   * @param times   The times of the values or null.
+   * @param xValues The x values or null if not used.
+   */
+  void stageValues(int type, int plotIndex, long time, long times[], double xValues[], double yValues[], int offset, int length)
+  {
+    int stagedCount;
+    synchronized(stagingLock)
+    {
+      for( int i=offset ; i<offset+length ; i++ )
+      {
+        stagedValues.add(type, plotIndex, times == null ? time : times[i], xValues == null ? 0 : xValues[i], yValues[i]);
+      }
+      stagedCount = stagedValues.getCount();
+    }
+    valuesStaged(plotIndex, stagedCount);
+  }
+
+  /**
+   * Mark the plot as changed and if many values are held add them to the datasets
+   * without waiting for the chart to be redrawn (E.G in headless mode the charts
+   * are only redrawn when saved). If values are staged faster than the EDT can
+   * add them the calling thread waits until they have been added, so that the
+   * staged values can't use all the memory.
+   */
+  private void valuesStaged(int plotIndex, int stagedCount)
+  {
+    plotChanged(plotIndex);
+    if( stagedCount <= GenericPlotPanel.MAX_STAGED_VALUES )
+    {
+      return;
+    }
+    if( SwingUtilities.isEventDispatchThread() )
+    {
+      applyStagedValues();
+      return;
+    }
+    synchronized(stagingLock)
+    {
+      requestApply();
+      while( stagedValues.getCount() > GenericPlotPanel.STAGED_VALUES_LIMIT )
+      {
+        try
+        {
+          stagingLock.wait();
+        }
+        catch(InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        //Other threads may have staged more values since they were applied
+        requestApply();
+      }
+    }
+  }
+
+  /**
+   * Add the staged values to the datasets on the EDT if not already requested.
+   * Called with stagingLock held.
+   */
+  private void requestApply()
+  {
+    if( applyPending )
+    {
+      return;
+    }
+    applyPending=true;
+    SwingUtilities.invokeLater(new Runnable()
+    {
+      public void run()
+      {
+        applyStagedValues();
+      }
+    });
+  }
+
+  /**
+   * Hold a frame of values that replaces all the data of the chart until it is
+   * added to the chart dataset on the EDT (see applyFrame()). The values staged
+   * before the frame are discarded as the frame replaces them, the values staged
+   * after it are applied after it. Called from any thread.
+   *
+   * @return The previous frame if it had not been applied (so it can be reused), else null.
+   */
+  double[] stageFrame(double frame[])
+  {
+    double replacedFrame[];
+    synchronized(stagingLock)
+    {
+      stagedValues.clear();
+      replacedFrame=stagedFrame;
+      stagedFrame=frame;
+    }
+    plotChanged(0);
+    return replacedFrame;
+  }
+
+  /**
+   * Replace the data of the chart with a frame of values. Called on the EDT.
+   * Plot panels that call stageFrame() must override this.
+   */
+  void applyFrame(double frame[]) {}
+
+  /**
+   * Add the staged values to the chart datasets. Must be called on the EDT.
+   */
+  public void applyStagedValues()
+  {
+    StagedValues values;
+    double frame[];
+    synchronized(stagingLock)
+    {
+      frame=stagedFrame;
+      stagedFrame=null;
+      values=stagedValues;
+      stagedValues=appliedValues;
+      appliedValues=values;
+      applyPending=false;
+      //Wake the threads waiting for the staged values to be applied
+      stagingLock.notifyAll();
+    }
+    if( frame != null )
+    {
+      applyFrame(frame);
+    }
+    if( values.getCount() == 0 )
+    {
+      return;
+    }
+    for( int run=0 ; run<values.runCount ; run++ )
+    {
+      try
+      {
+        applyValues(values.runTypes[run], values.runPlotIndexes[run], values.values.times, values.values.xValues, values.values.yValues, values.runOffsets[run], values.runLengths[run]);
+      }
+      catch(RuntimeException e)
+      {
+        //E.G the plots were removed after the values were added
+        UO.Debug(e);
+      }
+    }
+    values.clear();
+  }
+
+  /**
+   * Add values to a chart dataset. Called on the EDT. Plot panels that call
+   * stageValue() or stageValues() must override this.
+   *
+   * @param type Y_VALUES, XY_VALUES or TIME_VALUES.
+   */
+  void applyValues(int type, int plotIndex, long times[], double xValues[], double yValues[], int offset, int length) {}
+
+  /**
+   * Called by the RenderScheduler on the EDT to notify the chart of the plots that have changed.
+   */
+  void render()
+  {
+    long startNanos = System.nanoTime();
+    BitSet plots;
+    synchronized(changedPlots)
+    {
+      plots = (BitSet)changedPlots.clone();
+      changedPlots.clear();
+    }
+    //After the changed plots are cleared so that values staged from now on mark the panel as dirty again
+    applyStagedValues();
+    for( int plotIndex=plots.nextSetBit(0) ; plotIndex>=0 ; plotIndex=plots.nextSetBit(plotIndex+1) )
+    {
+      fireDatasetChanged(plotIndex);
+    }
+    if( metrics != null )
+    {
+      //The time is recorded when the chart has been drawn
+      renderNanos += System.nanoTime()-startNanos;
+      timeChartDrawing();
+    }
+  }
+
+  /**
+   * Set the metrics that the time taken to update and draw the chart is recorded in.
+   */
+  void setMetrics(IngestMetrics metrics)
+  {
+    this.metrics=metrics;
+  }
+
+  /**
+   * Listen for the chart being drawn if not already doing so. Called on the EDT.
+   */
+  private void timeChartDrawing()
+  {
+    for( Component component : getComponents() )
+    {
+      if( component instanceof ChartPanel && ((ChartPanel)component).getChart() != timedChart )
+      {
+        timedChart = ((ChartPanel)component).getChart();
+        timedChart.addProgressListener(this);
+      }
+    }
+  }
+
+  /**
+   * Called on the EDT when the chart starts and finishes drawing.
+   */
+  public void chartProgress(ChartProgressEvent event)
+  {
+    if( event.getType() == ChartProgressEvent.DRAWING_STARTED )
+    {
+      drawStartNanos = System.nanoTime();
+    }
+    else if( event.getType() == ChartProgressEvent.DRAWING_FINISHED && drawStartNanos != 0 && metrics != null )
+    {
+      metrics.renderTime.record( renderNanos+System.nanoTime()-drawStartNanos );
+      renderNanos=0;
+      drawStartNanos=0;
+    }
+  }
+
+  /**
+   * Send the dataset change notification of a plot to the chart. Plot panels
+   * that call plotChanged() must override this.
+   */
+  void fireDatasetChanged(int plotIndex) {}
+
 void genericConfig(JFreeChart chart, XYPlot plot, int plotIndex)
   {
     if( !enableLegend )
@@ -0,0 +1,135 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Vector;
+
+/**
+ * Responsible for holding the charts when netplot runs without a display.
+ *
+ * No window is created. The charts are held in the same grid as a PlotFrame
+ * would show them and createImage() draws each chart directly into its cell
+ * of an image, without the Swing layout and painting of a window. Status
+ * messages are printed on stdout.
+ */
+public class HeadlessPlotFrame implements PlotFrameInterface
+{
+  public static final int     DEFAULT_WIDTH=1024;
+  public static final int     DEFAULT_HEIGHT=768;
+  private final Vector<Component> panels = new Vector<Component>();
+  private int                 rows=1;
+  private int                 columns=1;
+  private int                 width;
+  private int                 height;
+  private String              title="";
+  private volatile boolean    showStatusMessages=true;
+
+  /**
+   * @param width  The width of the images created.
+   * @param height The height of the images created.
+   */
+  public HeadlessPlotFrame(int width, int height)
+  {
+    this.width=width;
+    this.height=height;
+  }
+
+  public synchronized void setTitle(String title)
+  {
+    this.title=title;
+  }
+
+  public synchronized String getTitle() { return title; }
+
+  public synchronized void addPanel(Component panel, int index)
+  {
+    panels.add(index, panel);
+  }
+
+  public synchronized void removePanel(int index)
+  {
+    panels.remove(index);
+  }
+
+  public synchronized int getPanelCount()
+  {
+    return panels.size();
+  }
+
+  public synchronized void setChartLayout(int rows, int columns)
+  {
+    panels.removeAllElements();
+    this.rows=rows;
+    this.columns=columns;
+  }
+
+  public void addStatusMessage(String line)
+  {
+    if( showStatusMessages )
+    {
+      System.out.println(line);
+    }
+  }
+
+  public void SetEnableStatusMessages(boolean enabled)
+  {
+    showStatusMessages=enabled;
+  }
+
+  /**
+   * Draw the charts into an image, laid out as a GridLayout would lay them out in a window.
+   */
+  public synchronized BufferedImage createImage()
+  {
+    if( panels.size() == 0 )
+    {
+      return null;
+    }
+    int gridRows=rows;
+    int gridColumns=columns;
+    //As GridLayout, if the rows are set the number of columns depends upon the number of charts
+    if( gridRows > 0 )
+    {
+      gridColumns = (panels.size()+gridRows-1)/gridRows;
+    }
+    else
+    {
+      gridRows = (panels.size()+gridColumns-1)/gridColumns;
+    }
+    int cellWidth = width/gridColumns;
+    int cellHeight = height/gridRows;
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2 = image.createGraphics();
+    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g2.setColor(Color.WHITE);
+    g2.fillRect(0, 0, width, height);
+    for( int i=0 ; i<panels.size() ; i++ )
+    {
+      Component panel = panels.get(i);
+      if( panel instanceof GenericPlotPanel )
+      {
+        //The size of the (not displayed) panel is used to decide how many points are drawn
+        if( panel.getWidth() != cellWidth || panel.getHeight() != cellHeight )
+        {
+          panel.setSize(cellWidth, cellHeight);
+          ((GenericPlotPanel)panel).doLayout();
+        }
+        Rectangle2D area = new Rectangle2D.Double((i%gridColumns)*cellWidth, (i/gridColumns)*cellHeight, cellWidth, cellHeight);
+        ((GenericPlotPanel)panel).drawChart(g2, area);
+      }
+    }
+    g2.dispose();
+    return image;
+  }
+
+}
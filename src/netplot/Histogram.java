@@ -0,0 +1,82 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Responsible for counting durations in fixed buckets, as a Prometheus histogram.
+ *
+ * Durations are recorded in nanoseconds from any thread without locking. Each
+ * bucket holds the number of durations less than or equal to its upper bound
+ * and greater than the previous bound. The counts are made cumulative when
+ * written in the Prometheus text format.
+ */
+public class Histogram
+{
+  //The upper bound of each bucket in nanoseconds, the last bucket is +Inf
+  public static final long    BUCKET_BOUNDS[] = { 1000L, 2500L, 5000L, 10000L, 25000L, 50000L, 100000L, 250000L, 500000L,
+                                                  1000000L, 2500000L, 5000000L, 10000000L, 25000000L, 50000000L, 100000000L,
+                                                  250000000L, 500000000L, 1000000000L, 2500000000L };
+  private final AtomicLongArray bucketCounts = new AtomicLongArray(Histogram.BUCKET_BOUNDS.length+1);
+  private final AtomicLong    count = new AtomicLong();
+  private final AtomicLong    sumNanos = new AtomicLong();
+
+  /**
+   * Record a duration.
+   */
+  public void record(long nanos)
+  {
+    int bucket=0;
+    while( bucket < Histogram.BUCKET_BOUNDS.length && nanos > Histogram.BUCKET_BOUNDS[bucket] )
+    {
+      bucket++;
+    }
+    bucketCounts.incrementAndGet(bucket);
+    count.incrementAndGet();
+    sumNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Add the durations recorded in another histogram to this one.
+   */
+  public void add(Histogram histogram)
+  {
+    for( int i=0 ; i<bucketCounts.length() ; i++ )
+    {
+      bucketCounts.addAndGet(i, histogram.bucketCounts.get(i));
+    }
+    count.addAndGet(histogram.count.get());
+    sumNanos.addAndGet(histogram.sumNanos.get());
+  }
+
+  public long getCount()    { return count.get(); }
+  public long getSumNanos() { return sumNanos.get(); }
+
+  /**
+   * Write the histogram in the Prometheus text format. The durations are in seconds.
+   *
+   * @param name   The metric name.
+   * @param labels The labels of the metric (E.G port="9600") or an empty string.
+   */
+  public void write(StringBuffer text, String name, String labels)
+  {
+    String separator = labels.length() > 0 ? "," : "";
+    long cumulativeCount=0;
+    for( int i=0 ; i<bucketCounts.length() ; i++ )
+    {
+      cumulativeCount+=bucketCounts.get(i);
+      String bound = i < Histogram.BUCKET_BOUNDS.length ? ""+Histogram.BUCKET_BOUNDS[i]/1E9 : "+Inf";
+      text.append(name+"_bucket{"+labels+separator+"le=\""+bound+"\"} "+cumulativeCount+"\n");
+    }
+    text.append(name+"_sum{"+labels+"} "+sumNanos.get()/1E9+"\n");
+    //The +Inf bucket count so that the two are the same when values are being recorded
+    text.append(name+"_count{"+labels+"} "+cumulativeCount+"\n");
+  }
+
+}
@@ -0,0 +1,335 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Responsible for counting the samples of a single histogram plot in bins and
+ * presenting the bins to JFreeChart as bars.
+ *
+ * The bins are either fixed width, binCount bins from binMin to binMax, or log
+ * bins where each power of two is divided into binCount bins of equal width (as
+ * an HDR histogram), giving the same relative precision for every sample no
+ * matter what its size. In fixed width mode samples below binMin are counted
+ * in the first bin and samples above binMax in the last bin. In log mode only
+ * samples above 0 are counted and the bins are created as samples arrive, only
+ * the bins from the lowest to the highest sample are shown.
+ *
+ * The counts are held in a long array so adding a sample is O(1) and no
+ * objects are held for each sample or bin.
+ */
+public class HistogramBinDataset extends AbstractIntervalXYDataset implements DomainInfo, RangeInfo, XYRangeInfo
+{
+  static final long serialVersionUID=1;
+  public static final int INITIAL_LOG_CAPACITY=64;
+  private String          seriesName;
+  private boolean         logBins;
+  private int             binCount;
+  private double          binMin;
+  private double          binWidth;
+  //The bin counts. In log mode counts[i] holds the count of bin key firstKey+i
+  private long            counts[];
+  private int             firstKey;
+  //The range of bins shown, lowKey > highKey if no samples have been counted
+  private int             lowKey;
+  private int             highKey;
+  private long            maxCount;
+
+  /**
+   * @param logBins  If true log bins are used, else fixed width bins.
+   * @param binCount The number of bins (fixed width) or the number of bins per power of two (log).
+   * @param binMin   The min value of the first bin (fixed width only).
+   * @param binMax   The max value of the last bin (fixed width only).
+   */
+  public HistogramBinDataset(String seriesName, boolean logBins, int binCount, double binMin, double binMax)
+  {
+    this.seriesName=seriesName;
+    this.logBins=logBins;
+    this.binCount=binCount;
+    this.binMin=binMin;
+    this.binWidth=(binMax-binMin)/binCount;
+    counts = new long[ logBins ? HistogramBinDataset.INITIAL_LOG_CAPACITY : binCount ];
+    clear();
+  }
+
+  /**
+   * Count a sample. NaN samples are ignored. The listeners (the chart) are not
+   * notified until notifyChanged() is called.
+   */
+  public void add(double sample)
+  {
+    int key;
+    if( logBins )
+    {
+      if( !(sample > 0) || Double.isInfinite(sample) )
+      {
+        return;
+      }
+      int exponent = Math.getExponent(sample);
+      //The mantissa, 1 to 2
+      double mantissa = sample/Math.scalb(1.0, exponent);
+      int subBin = Math.max(0, Math.min(binCount-1, (int)((mantissa-1.0)*binCount)));
+      key = exponent*binCount+subBin;
+      if( lowKey > highKey )
+      {
+        //The first sample
+        firstKey = key-counts.length/2;
+      }
+      else if( key < firstKey || key >= firstKey+counts.length )
+      {
+        grow(key);
+      }
+    }
+    else
+    {
+      if( Double.isNaN(sample) )
+      {
+        return;
+      }
+      double bin = Math.floor((sample-binMin)/binWidth);
+      key = (int)Math.max(0, Math.min(binCount-1, bin));
+    }
+    long count = ++counts[key-firstKey];
+    if( count > maxCount )
+    {
+      maxCount=count;
+    }
+    if( lowKey > highKey )
+    {
+      lowKey=key;
+      highKey=key;
+    }
+    else if( key < lowKey )
+    {
+      lowKey=key;
+    }
+    else if( key > highKey )
+    {
+      highKey=key;
+    }
+  }
+
+  /**
+   * Increase the size of the log bin counts array so that it holds the bin key.
+   */
+  private void grow(int key)
+  {
+    int low = Math.min(key, firstKey);
+    int high = Math.max(key, firstKey+counts.length-1);
+    int capacity = counts.length*2;
+    while( capacity < (high-low+1)*2 )
+    {
+      capacity=capacity*2;
+    }
+    //Leave room for more bins both below and above
+    int newFirstKey = low-(capacity-(high-low+1))/2;
+    long newCounts[] = new long[capacity];
+    System.arraycopy(counts, 0, newCounts, firstKey-newFirstKey, counts.length);
+    counts=newCounts;
+    firstKey=newFirstKey;
+  }
+
+  /**
+   * Remove all samples. The listeners (the chart) are not notified until notifyChanged() is called.
+   */
+  public void clear()
+  {
+    Arrays.fill(counts, 0);
+    maxCount=0;
+    if( logBins )
+    {
+      lowKey=1;
+      highKey=0;
+    }
+    else
+    {
+      //All the fixed width bins are shown
+      firstKey=0;
+      lowKey=0;
+      highKey=binCount-1;
+    }
+  }
+
+  /**
+   * Notify the listeners (the chart) that the bins have changed.
+   */
+  public void notifyChanged()
+  {
+    fireDatasetChanged();
+  }
+
+  /**
+   * @return The lower value of a bin.
+   */
+  private double getBinStart(int key)
+  {
+    if( logBins )
+    {
+      //Rounded down for negative keys (samples below 1)
+      int exponent = key >= 0 ? key/binCount : -((-key-1)/binCount)-1;
+      int subBin = key-exponent*binCount;
+      return Math.scalb(1.0+(double)subBin/binCount, exponent);
+    }
+    return binMin+key*binWidth;
+  }
+
+  public int getSeriesCount()
+  {
+    return 1;
+  }
+
+  @SuppressWarnings("rawtypes")
+  public Comparable getSeriesKey(int series)
+  {
+    return seriesName;
+  }
+
+  @Override
+  public DomainOrder getDomainOrder()
+  {
+    return DomainOrder.ASCENDING;
+  }
+
+  public int getItemCount(int series)
+  {
+    return Math.max(0, highKey-lowKey+1);
+  }
+
+  @Override
+  public double getStartXValue(int series, int item)
+  {
+    return getBinStart(lowKey+item);
+  }
+
+  @Override
+  public double getEndXValue(int series, int item)
+  {
+    return getBinStart(lowKey+item+1);
+  }
+
+  /**
+   * @return The centre of the bin.
+   */
+  @Override
+  public double getXValue(int series, int item)
+  {
+    return (getStartXValue(series, item)+getEndXValue(series, item))/2;
+  }
+
+  @Override
+  public double getYValue(int series, int item)
+  {
+    return counts[lowKey+item-firstKey];
+  }
+
+  @Override
+  public double getStartYValue(int series, int item)
+  {
+    return getYValue(series, item);
+  }
+
+  @Override
+  public double getEndYValue(int series, int item)
+  {
+    return getYValue(series, item);
+  }
+
+  public Number getX(int series, int item)
+  {
+    return Double.valueOf( getXValue(series, item) );
+  }
+
+  public Number getY(int series, int item)
+  {
+    return Double.valueOf( getYValue(series, item) );
+  }
+
+  public Number getStartX(int series, int item)
+  {
+    return Double.valueOf( getStartXValue(series, item) );
+  }
+
+  public Number getEndX(int series, int item)
+  {
+    return Double.valueOf( getEndXValue(series, item) );
+  }
+
+  public Number getStartY(int series, int item)
+  {
+    return getY(series, item);
+  }
+
+  public Number getEndY(int series, int item)
+  {
+    return getY(series, item);
+  }
+
+  public double getDomainLowerBound(boolean includeInterval)
+  {
+    Range range = getDomainBounds(includeInterval);
+    return range == null ? Double.NaN : range.getLowerBound();
+  }
+
+  public double getDomainUpperBound(boolean includeInterval)
+  {
+    Range range = getDomainBounds(includeInterval);
+    return range == null ? Double.NaN : range.getUpperBound();
+  }
+
+  /**
+   * The bins shown are always the full bin width.
+   */
+  public Range getDomainBounds(boolean includeInterval)
+  {
+    if( lowKey > highKey )
+    {
+      return null;
+    }
+    return new Range(getBinStart(lowKey), getBinStart(highKey+1));
+  }
+
+  /**
+   * The counts only increase (until cleared) so the max count is tracked as samples are added.
+   */
+  public double getRangeLowerBound(boolean includeInterval)
+  {
+    return 0;
+  }
+
+  public double getRangeUpperBound(boolean includeInterval)
+  {
+    return maxCount;
+  }
+
+  public Range getRangeBounds(boolean includeInterval)
+  {
+    if( lowKey > highKey )
+    {
+      return null;
+    }
+    return new Range(0, maxCount);
+  }
+
+  /**
+   * Used by the renderer to find the y axis auto range.
+   */
+  @SuppressWarnings("rawtypes")
+  public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval)
+  {
+    return RangeBounds.Find(this, visibleSeriesKeys, xRange, 0, maxCount);
+  }
+
+}
@@ -0,0 +1,187 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.util.Vector;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.LogAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.StandardXYBarPainter;
+import org.jfree.chart.renderer.xy.XYBarRenderer;
+import org.jfree.data.time.Millisecond;
+
+/**
+ * Responsible for showing histograms of the samples received.
+ *
+ * The samples are sent as plot values (E.G 1.2,3.4 adds a sample to plot 0
+ * and plot 1) and counted in the bins of each plot on the server (see
+ * HistogramBinDataset) so the clients do not have to bin the samples. The
+ * chart is redrawn at the rate set by max_fps, not for every sample.
+ */
+public class HistogramPlotPanel extends GenericPlotPanel implements PlotPanelInterface
+{
+  static final long serialVersionUID=1;
+  public static final int             DEFAULT_BIN_COUNT=100;
+  public static final int             DEFAULT_LOG_BIN_COUNT=16;
+  //Plots are drawn over each other so the plots behind may be seen
+  public static final float           FOREGROUND_ALPHA=0.7f;
+  private JFreeChart                  chart;
+  private Vector<HistogramBinDataset> datasetList;
+  private ChartPanel                  chartPanel;
+
+  public HistogramPlotPanel()
+  {
+    super(new BorderLayout());
+    init();
+  }
+
+  public void init()
+  {
+    removeAll();
+    setAddedPlotCount(0);
+    datasetList = new Vector<HistogramBinDataset>();
+    chart = ChartFactory.createXYBarChart(
+        plotTitle,
+        xAxisName,
+        false,
+        yAxisName,
+        null,
+        PlotOrientation.VERTICAL,
+        enableLegend,
+        true,
+        true
+    );
+    XYPlot plot = (XYPlot)chart.getPlot();
+    plot.setBackgroundPaint(Color.WHITE);
+    plot.setDomainGridlinePaint(Color.DARK_GRAY);
+    plot.setRangeGridlinePaint(Color.DARK_GRAY);
+    plot.setForegroundAlpha(HistogramPlotPanel.FOREGROUND_ALPHA);
+    chartPanel = new ChartPanel(chart);
+    chartPanel.setPreferredSize(new java.awt.Dimension(500, 270));
+    add(chartPanel);
+  }
+
+  public void addPlot() throws NetPlotException
+  {
+    int count = binCount;
+    if( count == 0 )
+    {
+      count = logBins ? HistogramPlotPanel.DEFAULT_LOG_BIN_COUNT : HistogramPlotPanel.DEFAULT_BIN_COUNT;
+    }
+    if( !logBins && binMax <= binMin )
+    {
+      throw new NetPlotException(KeyWords.BIN_MAX+" ("+binMax+") must be greater than "+KeyWords.BIN_MIN+" ("+binMin+")");
+    }
+    int plotIndex=datasetList.size();
+    XYPlot plot = (XYPlot)chart.getPlot();
+    if( plotIndex == 0 && logBins )
+    {
+      //Each power of two has the same width on a log axis
+      plot.setDomainAxis( new LogAxis(xAxisName) );
+    }
+    //The chart is notified of changes by the RenderScheduler
+    HistogramBinDataset dataset = new HistogramBinDataset(plotName, logBins, count, binMin, binMax);
+    datasetList.add(dataset);
+    plot.setDataset(plotIndex, dataset);
+
+    XYBarRenderer renderer = new XYBarRenderer();
+    renderer.setBarPainter( new StandardXYBarPainter() );
+    renderer.setShadowVisible(false);
+    renderer.setSeriesPaint(0, getPlotColour(plotIndex));
+    plot.setRenderer(plotIndex, renderer);
+    genericConfig(chart, plot, plotIndex);
+    setAddedPlotCount(datasetList.size());
+  }
+
+  public int getPlotCount() { return ((XYPlot)chart.getPlot()).getSeriesCount(); }
+
+  public void addPlotValues(int plotIndex, double yValues[], int offset, int length) throws NetPlotException
+  {
+    checkPlotIndex(plotIndex);
+    stageValues(GenericPlotPanel.Y_VALUES, plotIndex, 0, null, null, yValues, offset, length);
+  }
+
+  void applyValues(int type, int plotIndex, long times[], double xValues[], double yValues[], int offset, int length)
+  {
+    HistogramBinDataset dataset = datasetList.get(plotIndex);
+    for( int i=offset ; i<offset+length ; i++ )
+    {
+      dataset.add(yValues[i]);
+    }
+  }
+
+  void fireDatasetChanged(int plotIndex)
+  {
+    Vector<HistogramBinDataset> list = datasetList;
+    if( list != null && plotIndex < list.size() )
+    {
+      list.get(plotIndex).notifyChanged();
+    }
+  }
+
+  public void addPlotValue(double xValue, double yValue) throws NetPlotException
+  {
+    throw new NetPlotException("addPlotValue(double xValue, double yValue) is invalid for HistogramPlotPanel");
+  }
+
+  public void addPlotValue(int plotIndex, double xValue, double yValue) throws NetPlotException
+  {
+    throw new NetPlotException("x/y values are invalid for a histogram plot, send the samples as plot values (E.G 1.2,3.4)");
+  }
+
+  public void addPlotValues(int plotIndex, double xValues[], double yValues[], int offset, int length) throws NetPlotException
+  {
+    throw new NetPlotException("x/y values are invalid for a histogram plot, send the samples as plot values (E.G 1.2,3.4)");
+  }
+
+  public void addPlotValue(int plotIndex, Millisecond ms, double yValue) throws NetPlotException
+  {
+    throw new NetPlotException("addPlotValue(int plotIndex, Millisecond ms, double yValue) should not be used on HistogramPlotPanel");
+  }
+
+  public void addTimePlotValue(int plotIndex, long epochMillis, double yValue) throws NetPlotException
+  {
+    throw new NetPlotException("Time stamped values are invalid for a histogram plot, send the samples as plot values (E.G 1.2,3.4)");
+  }
+
+  public void addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) throws NetPlotException
+  {
+    throw new NetPlotException("Time stamped values are invalid for a histogram plot, send the samples as plot values (E.G 1.2,3.4)");
+  }
+
+  public void removePlots()
+  {
+    init();
+    validate();
+  }
+
+  public void clear(int plotIndex) throws NetPlotException
+  {
+    if( datasetList == null || plotIndex < 0 || plotIndex >= datasetList.size() )
+    {
+      throw new NetPlotException("Failed to clear histogram plot "+plotIndex+". Please ensure the plot exists before clearing it.");
+    }
+    datasetList.get(plotIndex).clear();
+    plotChanged(plotIndex);
+  }
+
+  /**
+   * The samples of a histogram are not ordered so this starts counting the
+   * samples again, as clear does.
+   */
+  public void replot(int plotIndex) throws NetPlotException
+  {
+    clear(plotIndex);
+  }
+
+}
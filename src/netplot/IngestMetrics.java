@@ -0,0 +1,64 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Responsible for holding the counters and histograms of the data received
+ * by a client connection, or by all the connections to a chart port.
+ *
+ * The counters are updated by the thread reading from the connection and may
+ * be read from any thread (E.G the metrics HTTP server or the metrics dialog).
+ */
+public class IngestMetrics
+{
+  private int                 panelIndex;
+  private String              clientAddress;
+  private long                startMillis=System.currentTimeMillis();
+  public final AtomicLong     lines = new AtomicLong();
+  public final AtomicLong     values = new AtomicLong();
+  public final AtomicLong     bytes = new AtomicLong();
+  public final AtomicLong     errors = new AtomicLong();
+  public final AtomicLong     connections = new AtomicLong();
+  //The time taken to parse the lines/frames in each block of data received
+  public final Histogram      parseTime = new Histogram();
+  //The time taken to add the values to the chart datasets
+  public final Histogram      applyTime = new Histogram();
+  //The time taken to notify the chart of changes and redraw it (only used for a chart port)
+  public final Histogram      renderTime = new Histogram();
+
+  /**
+   * @param panelIndex    The index of the chart (0 = the base TCP/IP port).
+   * @param clientAddress The address of the client or null for the totals of a chart port.
+   */
+  public IngestMetrics(int panelIndex, String clientAddress)
+  {
+    this.panelIndex=panelIndex;
+    this.clientAddress=clientAddress;
+  }
+
+  public int    getPanelIndex()    { return panelIndex; }
+  public String getClientAddress() { return clientAddress; }
+  public long   getStartMillis()   { return startMillis; }
+
+  /**
+   * Add the counts of another IngestMetrics to this one.
+   */
+  public void add(IngestMetrics ingestMetrics)
+  {
+    lines.addAndGet(ingestMetrics.lines.get());
+    values.addAndGet(ingestMetrics.values.get());
+    bytes.addAndGet(ingestMetrics.bytes.get());
+    errors.addAndGet(ingestMetrics.errors.get());
+    connections.addAndGet(ingestMetrics.connections.get());
+    parseTime.add(ingestMetrics.parseTime);
+    applyTime.add(ingestMetrics.applyTime);
+    renderTime.add(ingestMetrics.renderTime);
+  }
+
+}
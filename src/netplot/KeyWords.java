@@ -14,10 +14,20 @@ public class KeyWords
   public static final String BAR                = "bar";
   public static final String DIAL               = "dial";
   public static final String XY                 = "xy";
+  public static final String HISTOGRAM          = "histogram";
+  public static final String WATERFALL          = "waterfall";
   public static final String INIT               = "init";
   public static final String ADD_PLOT           = "add_plot";
   public static final String GRID               = "grid";  
   public static final String ENABLE_STATUS      = "enable_status";
+  public static final String ENABLE_ACK         = "enable_ack";
+  public static final String ACK_MODE           = "ack_mode";
+  public static final String ACK_MODE_LINE      = "line";
+  public static final String ACK_MODE_NONE      = "none";
+  public static final String ACK_MODE_BATCH     = "batch";
+  public static final String MAX_FPS            = "max_fps";
+  public static final String ECHO_LINES         = "echo_lines";
+  public static final String BARS               = "bars";
 
   //Used in GenericPlotPanel
   public static final String PLOT_TITLE             =   "plot_title";
@@ -31,13 +41,21 @@ public class KeyWords
   public static final String MIN_SCALE_VALUE        =   "min_scale_value";
   public static final String MAX_SCALE_VALUE        =   "max_scale_value";
   public static final String MAX_AGE_SECONDS        =   "max_age_seconds";
+  public static final String MAX_POINT_COUNT        =   "max_point_count";
   public static final String ENABLE_LOG_Y_AXIS      =   "enable_log_y_axis";
   public static final String ENABLE_ZERO_ON_X_SCALE =   "enable_zero_on_x_scale";
   public static final String ENABLE_ZERO_ON_Y_SCALE =   "enable_zero_on_y_scale";
   public static final String FRAME_TITLE            =   "frame_title";
   public static final String ENABLE_LEGEND          =   "enable_legend";
   public static final String TICK_COUNT             =   "tick_count";
+  public static final String ENABLE_DECIMATION      =   "enable_decimation";
+  public static final String BIN_COUNT              =   "bin_count";
+  public static final String BIN_MIN                =   "bin_min";
+  public static final String BIN_MAX                =   "bin_max";
+  public static final String ENABLE_LOG_BINS        =   "enable_log_bins";
+  public static final String ROW_COUNT              =   "row_count";
   public static final String CLEAR                  =   "clear";
   public static final String REPLOT                 =   "replot";
+  public static final String CAPTURE                =   "capture";
   
 }
@@ -7,11 +7,8 @@
 package netplot;
 
 import java.util.StringTokenizer;
-import java.util.Vector;
 import javax.swing.*;
 
-import org.jfree.data.time.Millisecond;
-
 import java.util.*;
 
 /**
@@ -27,29 +24,203 @@ public class LineProcessor
   private PlotPanelInterface    plotPanelInterface;
   private int                   panelIndex;
   private int                   maxPanelIndex;
+  private final ValueParser     valueParser = new ValueParser();
+  private final TimeStampParser timeStampParser = new TimeStampParser(valueParser);
   public static final String    TIMESTAMP_DELIM=";";
+  //Sets all the bars of a bar chart, E.G set bars=1.2,3.4,5.6
+  public static final String    SET_BARS=KeyWords.SET_PREFIX+KeyWords.BARS+"=";
+  //Values for plot indexes above this are not held but added to the plot immediately.
+  public static final int       MAX_HELD_PLOT_INDEX=1023;
+  //The type of the values held in heldValues
+  private static final int      NO_VALUES=0;
+  private static final int      VALUES=1;
+  private static final int      XY_VALUES=2;
+  private static final int      TIME_VALUES=3;
+  //True for each chart port on which every line received is shown (see set echo_lines=true)
+  private static volatile boolean EchoLines[] = new boolean[0];
+  private int                   heldValuesType=LineProcessor.NO_VALUES;
+  private PlotValues            heldValues[] = new PlotValues[0];
+  private IngestMetrics         metrics;
+  private long                  applyNanos;   //The total time spent adding held values to the plots
+  private boolean               recordingEnabled=true;
+  //Shared mode (-shared) only. The chart of the port shared with other clients, or null
+  private SharedChart           sharedChart;
+  //The attributes (name, value) set by this client, set again on the shared chart before this client changes it
+  private final Vector<String[]> sharedAttributes = new Vector<String[]>();
+  //The shared chart plot index of each plot added by this client
+  private int                   sharedPlotIndexes[] = new int[0];
+  private int                   sharedPlotCount;
   
   public LineProcessor(int panelIndex, int maxPanelIndex)
   {
     this.panelIndex=panelIndex;
     this.maxPanelIndex=maxPanelIndex;
   }
+
+  /**
+   * Set the metrics that the values added and the time taken to add them are recorded in.
+   */
+  public void setMetrics(IngestMetrics metrics)
+  {
+    this.metrics=metrics;
+  }
+
+  /**
+   * Set whether the commands and values processed are recorded when the -record
+   * option is used. Disabled when replaying a recording.
+   */
+  public void setRecordingEnabled(boolean recordingEnabled)
+  {
+    this.recordingEnabled=recordingEnabled;
+  }
+
+  /**
+   * @return The total time (nanoseconds) spent adding held values to the plots.
+   */
+  public long getApplyNanos()
+  {
+    return applyNanos;
+  }
+  
+  /**
+   * Set whether every line received on a chart port is shown. This is off by
+   * default as showing every line slows the processing of the data received.
+   * 
+   * @param panelIndex The index of the chart port.
+   * @param echoLines  If true show every line received on the port.
+   */
+  public synchronized static void SetEchoLines(int panelIndex, boolean echoLines)
+  {
+    boolean newEchoLines[] = new boolean[ Math.max(panelIndex+1, LineProcessor.EchoLines.length) ];
+    System.arraycopy(LineProcessor.EchoLines, 0, newEchoLines, 0, LineProcessor.EchoLines.length);
+    newEchoLines[panelIndex]=echoLines;
+    LineProcessor.EchoLines=newEchoLines;
+  }
   
   /**
    * Process a line of text read from the dataFile.
    * 
+   * Plot values are held (see holdValue()) until flush() is called or the next 
+   * command line is processed.
+   * 
    * @param line
    */
   public void processLine(String line) throws NetPlotException
   {
-    UO.Debug(line);
+    if( panelIndex < LineProcessor.EchoLines.length && LineProcessor.EchoLines[panelIndex] )
+    {
+      UO.Info((NetPlotter.basePort+panelIndex)+": "+line);
+    }
     if( line == null || line.length() < 1 || line.startsWith("#") || line.startsWith("/") )
     {
       //Ignore empty lines and comments
       return;
     } 
+    else if( line.startsWith(LineProcessor.SET_BARS) )
+    {
+      //Not run on the EDT as a command, the frame of bars is staged as values are
+      int count = valueParser.parse(line, LineProcessor.SET_BARS.length(), line.length());
+      setBars(valueParser.getValues(), 0, count);
+    }
+    else if( LineProcessor.IsCommand(line) )
+    {
+      flush();
+      final String command = line;
+      //Commands change the chart or the frame so are run on the EDT
+      EDTCommand.RunAndWait(new EDTCommand()
+      {
+        public void execute() throws NetPlotException
+        {
+          processCommand(command);
+        }
+      });
+      if( recordingEnabled && Recorder.IsRecording() )
+      {
+        Recorder.RecordCommand(panelIndex, line);
+      }
+    }
+    else if ( line.equals(KeyWords.CAPTURE) )
+    {
+      flush();
+      if( NetPlotter.imageFile == null )
+      {
+        throw new NetPlotException("Cannot capture the charts as the server was not started with the -png option.");
+      }
+      UO.SaveImage(NetPlotter.imageFile);
+    }
+    //If we have some values to plot
+    else if( plotPanelInterface != null )
+    {
+      //If the plot has not been initialised yet
+      if( plotInitialized == false )
+      {
+        throw new NetPlotException("Cannot add values to plot as it has not been initialised yet.");
+      }
+      if( line.indexOf(':') != -1 )
+      {
+        //If the line contains chars indicating it contains a time stamp
+        if( line.indexOf(LineProcessor.TIMESTAMP_DELIM) != -1 || line.indexOf(TimeStampParser.EPOCH_PREFIX) != -1 )
+        {
+          timeStampParser.parse(line);
+          holdValue(LineProcessor.TIME_VALUES, timeStampParser.getPlotIndex(), timeStampParser.getEpochMillis(), 0, timeStampParser.getValue());
+        }
+        else {
+          int valueCount = valueParser.parse(line);
+          double values[] = valueParser.getValues();
+          if( valueCount%3 != 0 )
+          {
+            throw new NetPlotException(line+" is invalid. Lines containing : must hold plot index:x value:y value");
+          }
+          for( int i=0 ; i<valueCount ; i=i+3 )
+          {
+            holdValue(LineProcessor.XY_VALUES, (int)values[i], 0, values[i+1], values[i+2]);
+          }     
+        }
+      }
+      else if( isRowChart() )
+      {
+        int valueCount = valueParser.parse(line);
+        addRow(valueParser.getValues(), 0, valueCount);
+      }
+      else
+      {
+        int valueCount = valueParser.parse(line);
+        double values[] = valueParser.getValues();
+        long receivedMillis = getReceivedMillis();
+        for( int plotIndex=0 ; plotIndex<valueCount ; plotIndex++ )
+        {
+          holdValue(LineProcessor.VALUES, plotIndex, receivedMillis, 0, values[plotIndex]);
+        }
+      }
+    }
+  }
+  
+  /**
+   * @return True if the line is a command that is run by processCommand().
+   */
+  static boolean IsCommand(String line)
+  {
+    return line.startsWith(KeyWords.SET_PREFIX) ||
+           line.equals(KeyWords.INIT) ||
+           line.equals(KeyWords.ADD_PLOT) ||
+           line.startsWith(KeyWords.CLEAR) ||
+           line.startsWith(KeyWords.ENABLE_STATUS) ||
+           line.startsWith(KeyWords.REPLOT);
+  }
+
+  /**
+   * Process a command line. Called on the EDT once the values received before
+   * the command have been flushed.
+   */
+  private void processCommand(String line) throws NetPlotException
+  {
+    if( plotPanelInterface != null )
+    {
+      //The values received before the command are added to the chart before it is changed
+      ((GenericPlotPanel)plotPanelInterface).applyStagedValues();
+    }
     //If we have an attribute
-    else if( line.startsWith(KeyWords.SET_PREFIX) )
+    if( line.startsWith(KeyWords.SET_PREFIX) )
     {
       String nameValueStr = line.substring(4);
       StringTokenizer strTok = new StringTokenizer(nameValueStr, "=");
@@ -66,6 +237,10 @@ public class LineProcessor
         if( name.equals(KeyWords.GRAPH) )
         {
           plotInitialized=false;
+          if( NetPlotter.sharedMode && joinSharedChart(value) )
+          {
+            return;
+          }
           if( value.equals(KeyWords.TIME) )
           {
             TimeSeriesPlotPanel timeSeriesPlotPanel = new TimeSeriesPlotPanel();
@@ -86,10 +261,25 @@ public class LineProcessor
             DialPlotPanel dialPlotPanel = new DialPlotPanel();
             plotPanelInterface = dialPlotPanel;
           }
+          else if( value.equals(KeyWords.HISTOGRAM) )
+          {
+            HistogramPlotPanel histogramPlotPanel = new HistogramPlotPanel();
+            plotPanelInterface = histogramPlotPanel;
+          }
+          else if( value.equals(KeyWords.WATERFALL) )
+          {
+            WaterfallPlotPanel waterfallPlotPanel = new WaterfallPlotPanel();
+            plotPanelInterface = waterfallPlotPanel;
+          }
           else
           {
             throw new NetPlotException(value+" is an unknown graph type");
           }
+          ((GenericPlotPanel)plotPanelInterface).setMetrics( Metrics.GetPortMetrics(panelIndex) );
+          if( NetPlotter.sharedMode )
+          {
+            sharedChart.setPlotPanel(value, plotPanelInterface);
+          }
         }
         else if( name.equals(KeyWords.GRID) )
         {
@@ -109,6 +299,21 @@ public class LineProcessor
         {
           UO.SetFrameTitle(value);
         }
+        else if( name.equals(KeyWords.ECHO_LINES) )
+        {
+          LineProcessor.SetEchoLines(panelIndex, value.equals("true"));
+        }
+        else if( name.equals(KeyWords.MAX_FPS) )
+        {
+          try
+          {
+            RenderScheduler.SetMaxFPS( Integer.parseInt(value) );
+          }
+          catch(NumberFormatException e)
+          {
+            throw new NetPlotException(value+" is an invalid value for "+KeyWords.MAX_FPS+", must be a integer value");
+          }
+        }
         else 
         {
           if( plotPanelInterface == null )
@@ -116,6 +321,10 @@ public class LineProcessor
             throw new NetPlotException("Attempt to set an attribute before a plot type has been defined.");
           }
           plotPanelInterface.setAttribute(name, value);
+          if( sharedChart != null )
+          {
+            sharedAttributes.add( new String[] { name, value } );
+          }
         }
       }
     }
@@ -125,7 +334,18 @@ public class LineProcessor
       {
         throw new NetPlotException("Attempt to init a graph before setting a graph type.");
       }
-      plotPanelInterface.init();
+      if( sharedChart == null )
+      {
+        plotPanelInterface.init();
+      }
+      //A shared chart is not initialised again while other clients are using it as this would remove their plots
+      else if( !sharedChart.isInitialized() || sharedChart.getClientCount() == 1 )
+      {
+        setSharedAttributes();
+        plotPanelInterface.init();
+        sharedChart.setInitialized();
+      }
+      sharedPlotCount=0;
       plotInitialized=true;
     }
     else if ( line.equals(KeyWords.ADD_PLOT))
@@ -134,15 +354,22 @@ public class LineProcessor
       {
         throw new NetPlotException("Attempt to add a plot before setting a graph type.");
       }
-      plotPanelInterface.addPlot();
-      UO.Set((JPanel)plotPanelInterface, panelIndex);
+      if( sharedChart == null )
+      {
+        plotPanelInterface.addPlot();
+        UO.Set((JPanel)plotPanelInterface, panelIndex);
+      }
+      else
+      {
+        addSharedPlot();
+      }
     }
     else if ( line.startsWith(KeyWords.CLEAR))
     {
       Scanner scanner = new Scanner(line);
       scanner.next();
       int index = scanner.nextInt();
-      plotPanelInterface.clear(index);
+      plotPanelInterface.clear( getPlotIndex(index) );
     }
     else if ( line.startsWith(KeyWords.ENABLE_STATUS) ) {
       Scanner scanner = new Scanner(line);
@@ -162,110 +389,404 @@ public class LineProcessor
       Scanner scanner = new Scanner(line);
       scanner.next();
       int index = scanner.nextInt();
-      plotPanelInterface.replot(index);
+      plotPanelInterface.replot( getPlotIndex(index) );
     }
-    //If we have some values to plot
-    else if( plotPanelInterface != null )
+  }
+
+  /**
+   * Use the shared chart of the port if it has the graph type given. Called on the EDT.
+   *
+   * @return True if the shared chart is used, false if a new chart of the graph type should be created.
+   */
+  private boolean joinSharedChart(String graphType) throws NetPlotException
+  {
+    leaveSharedChart();
+    SharedChart chart = SharedChart.Get(panelIndex);
+    if( chart.getPlotPanel() == null || !chart.getGraphType().equals(graphType) )
     {
-      //If the plot has not been initialised yet
-      if( plotInitialized == false )
+      if( chart.getClientCount() > 0 )
       {
-        throw new NetPlotException("Cannot add values to plot as it has not been initialised yet.");
+        throw new NetPlotException("The chart on TCP/IP port "+(NetPlotter.basePort+panelIndex)+" is a "+chart.getGraphType()+" chart used by "+chart.getClientCount()+" other client(s).");
       }
-      if( line.indexOf(':') != -1 )
+      chart.addClient();
+      sharedChart=chart;
+      return false;
+    }
+    chart.addClient();
+    sharedChart=chart;
+    plotPanelInterface=chart.getPlotPanel();
+    plotInitialized=chart.isInitialized();
+    return true;
+  }
+
+  /**
+   * Stop using the shared chart (if any). Called on the EDT.
+   */
+  private void leaveSharedChart()
+  {
+    if( sharedChart != null )
+    {
+      sharedChart.removeClient();
+      sharedChart=null;
+    }
+    sharedAttributes.removeAllElements();
+    sharedPlotCount=0;
+  }
+
+  /**
+   * Set the attributes set by this client on the shared chart as other clients
+   * may have changed them. The plot name is cleared first so that a plot
+   * added by this client is not given the name of another client's plot.
+   */
+  private void setSharedAttributes() throws NetPlotException
+  {
+    plotPanelInterface.setAttribute(KeyWords.PLOT_NAME, "");
+    for( String attribute[] : sharedAttributes )
+    {
+      plotPanelInterface.setAttribute(attribute[0], attribute[1]);
+    }
+  }
+
+  /**
+   * Add a plot to the shared chart, or use the plot of the same name if
+   * another client has already added it. Called on the EDT.
+   */
+  private void addSharedPlot() throws NetPlotException
+  {
+    setSharedAttributes();
+    String plotName = ((GenericPlotPanel)plotPanelInterface).plotName;
+    int plotIndex = sharedChart.getPlotIndex(plotName);
+    if( plotIndex < 0 )
+    {
+      plotPanelInterface.addPlot();
+      plotIndex = sharedChart.plotAdded(plotName);
+      UO.Set((JPanel)plotPanelInterface, panelIndex);
+    }
+    if( sharedPlotCount == sharedPlotIndexes.length )
+    {
+      int newSharedPlotIndexes[] = new int[sharedPlotCount+8];
+      System.arraycopy(sharedPlotIndexes, 0, newSharedPlotIndexes, 0, sharedPlotCount);
+      sharedPlotIndexes=newSharedPlotIndexes;
+    }
+    sharedPlotIndexes[sharedPlotCount++]=plotIndex;
+  }
+
+  /**
+   * @param plotIndex The index of a plot as used by the client.
+   * @return The index of the plot in the chart. In shared mode the plots of
+   *         the chart may have been added by other clients.
+   */
+  private int getPlotIndex(int plotIndex) throws NetPlotException
+  {
+    if( sharedChart == null || plotPanelInterface instanceof BarPlotPanel )
+    {
+      //A bar chart only has one plot
+      return plotIndex;
+    }
+    if( plotIndex < 0 || plotIndex >= sharedPlotCount )
+    {
+      throw new NetPlotException("Plot "+plotIndex+" has not been added by this client ("+sharedPlotCount+" plots added).");
+    }
+    return sharedPlotIndexes[plotIndex];
+  }
+
+  /**
+   * Called when the connection to the client has been closed. In shared mode
+   * the chart is left for other clients to use.
+   */
+  public void close()
+  {
+    if( sharedChart != null )
+    {
+      EDTCommand.RunLater(new EDTCommand()
       {
-        //If the line contains chars indicating it contains a time stamp
-        if( line.indexOf(LineProcessor.TIMESTAMP_DELIM) != -1 )
+        public void execute()
         {
-          Scanner dateStrScanner = new Scanner(line);
-          dateStrScanner.useDelimiter(":");
-          //Extract the parameters
-          int plotIndex = dateStrScanner.nextInt();
-          String dateString = dateStrScanner.next();
-          double yValue = dateStrScanner.nextDouble();
-          Scanner dateScanner = new Scanner(dateString);
-          dateScanner.useDelimiter(LineProcessor.TIMESTAMP_DELIM);
-          int year        = dateScanner.nextInt();
-          int month       = dateScanner.nextInt();
-          int day         = dateScanner.nextInt();
-          int hour        = dateScanner.nextInt();
-          int minute      = dateScanner.nextInt();
-          int second      = dateScanner.nextInt();
-          int milliSecond = (int)dateScanner.nextFloat();
-          Millisecond ms  = new Millisecond(milliSecond,
-                                           second,
-                                           minute,
-                                           hour,
-                                           day,
-                                           month,
-                                           year);          
-          plotPanelInterface.addPlotValue(plotIndex, ms, yValue);
-        }
-        else {
-          Double valueList[] = getValues(line);
-          for( int i=0 ; i<valueList.length ; i=i+3 )
-          {
-            plotPanelInterface.addPlotValue((int)valueList[i].doubleValue(), valueList[i+1], valueList[i+2]);
-          }     
+          leaveSharedChart();
         }
-      }
-      else
+      });
+    }
+  }
+
+  /**
+   * Check that plot values may be added.
+   */
+  private void checkPlotInitialized() throws NetPlotException
+  {
+    if( plotPanelInterface == null )
+    {
+      throw new NetPlotException("Cannot add values to plot as a graph type has not been set.");
+    }
+    //If the plot has not been initialised yet
+    if( plotInitialized == false )
+    {
+      throw new NetPlotException("Cannot add values to plot as it has not been initialised yet.");
+    }
+  }
+
+  /**
+   * Add a value to a plot. Used for values received in binary frames.
+   */
+  public void addPlotValue(int plotIndex, double value) throws NetPlotException
+  {
+    checkPlotInitialized();
+    holdValue(LineProcessor.VALUES, plotIndex, getReceivedMillis(), 0, value);
+  }
+
+  /**
+   * @return The time that values without a time stamp are shown at on a time
+   *         series chart, the time they were received. 0 on other charts.
+   */
+  private long getReceivedMillis()
+  {
+    return plotPanelInterface instanceof TimeSeriesPlotPanel ? System.currentTimeMillis() : 0;
+  }
+
+  /**
+   * Add an x/y value to a plot. Used for values received in binary frames.
+   */
+  public void addXYPlotValue(int plotIndex, double xValue, double yValue) throws NetPlotException
+  {
+    checkPlotInitialized();
+    holdValue(LineProcessor.XY_VALUES, plotIndex, 0, xValue, yValue);
+  }
+
+  /**
+   * Add a value with a time stamp to a plot. Used for values received in binary frames.
+   * 
+   * @param epochMillis The time stamp in milliseconds since 1 Jan 1970 UTC.
+   */
+  public void addTimePlotValue(int plotIndex, long epochMillis, double value) throws NetPlotException
+  {
+    checkPlotInitialized();
+    holdValue(LineProcessor.TIME_VALUES, plotIndex, epochMillis, 0, value);
+  }
+
+  /**
+   * Replace all the bars of a bar chart. Used for set bars= lines and binary bar frames.
+   */
+  public void setBars(double values[], int offset, int count) throws NetPlotException
+  {
+    checkPlotInitialized();
+    if( !(plotPanelInterface instanceof BarPlotPanel) )
+    {
+      throw new NetPlotException(KeyWords.BARS+" may only be set on a "+KeyWords.BAR+" graph.");
+    }
+    flush();
+    ((BarPlotPanel)plotPanelInterface).setBars(values, offset, count);
+    if( metrics != null )
+    {
+      metrics.values.addAndGet(count);
+    }
+    if( recordingEnabled && Recorder.IsRecording() )
+    {
+      Recorder.RecordFrame(panelIndex, NetPlotConnection.FRAME_BARS, values, offset, count);
+    }
+  }
+
+  /**
+   * @return True if each line of values is added to the chart as a row (a waterfall chart)
+   *         rather than as a value for each plot.
+   */
+  public boolean isRowChart()
+  {
+    return plotPanelInterface instanceof WaterfallPlotPanel;
+  }
+
+  /**
+   * @return True once a chart has been created (set graph=). Lines that are not
+   *         commands are ignored until then.
+   */
+  public boolean hasChart()
+  {
+    return plotPanelInterface != null;
+  }
+
+  /**
+   * Add a row to a waterfall chart. Used for lines of values and binary row frames.
+   */
+  public void addRow(double values[], int offset, int count) throws NetPlotException
+  {
+    checkPlotInitialized();
+    if( !isRowChart() )
+    {
+      throw new NetPlotException("Rows may only be added to a "+KeyWords.WATERFALL+" graph.");
+    }
+    flush();
+    ((WaterfallPlotPanel)plotPanelInterface).addRow(values, offset, count);
+    if( metrics != null )
+    {
+      metrics.values.addAndGet(count);
+    }
+    if( recordingEnabled && Recorder.IsRecording() )
+    {
+      Recorder.RecordFrame(panelIndex, NetPlotConnection.FRAME_ROW, values, offset, count);
+    }
+  }
+
+  /**
+   * Hold a plot value until flush() is called. The held values are added to 
+   * each plot in a single call so that the plot is updated once rather than 
+   * once per value.
+   * 
+   * @param valuesType VALUES, XY_VALUES or TIME_VALUES. If different to the 
+   *                   values already held they are flushed first.
+   */
+  private void holdValue(int valuesType, int plotIndex, long time, double xValue, double yValue) throws NetPlotException
+  {
+    if( plotIndex < 0 )
+    {
+      throw new NetPlotException(plotIndex+" is an invalid plot index");
+    }
+    if( sharedChart != null )
+    {
+      plotIndex = getPlotIndex(plotIndex);
+    }
+    if( valuesType != heldValuesType )
+    {
+      flush();
+      heldValuesType=valuesType;
+    }
+    if( plotIndex > LineProcessor.MAX_HELD_PLOT_INDEX )
+    {
+      //Not expected, as this would be a chart with over 1000 plots.
+      flush();
+      PlotValues plotValues = new PlotValues();
+      plotValues.add(time, xValue, yValue);
+      addPlotValues(valuesType, plotIndex, plotValues);
+      if( metrics != null )
       {
-        Double values[] = getValues(line);
-        int plotIndex=0;
-        for( Double value : values )
-        {
-          plotPanelInterface.addPlotValue(plotIndex, value.doubleValue());
-          plotIndex++;
-        }
+        metrics.values.incrementAndGet();
       }
+      return;
+    }
+    if( plotIndex >= heldValues.length )
+    {
+      PlotValues newHeldValues[] = new PlotValues[plotIndex+1];
+      System.arraycopy(heldValues, 0, newHeldValues, 0, heldValues.length);
+      heldValues=newHeldValues;
+    }
+    if( heldValues[plotIndex] == null )
+    {
+      heldValues[plotIndex] = new PlotValues();
     }
+    heldValues[plotIndex].add(time, xValue, yValue);
   }
-  
-  public Double[] getValues(String line)
+
+  /**
+   * Add all the held values to the plots. If an error occurs adding the values
+   * of a plot the values of the other plots are still added and the first error
+   * is thrown once all the values have been processed.
+   */
+  public void flush() throws NetPlotException
   {
-    String tok;
-    
-    Vector<Double>values = new Vector<Double>();
-    StringTokenizer strTok = new StringTokenizer(line," ,");
-    while( strTok.hasMoreTokens() )
-    {
-      tok = strTok.nextToken();
-      //If we have an X/Y value pair
-      if( tok.indexOf(':') > 0 )
+    if( heldValuesType == LineProcessor.NO_VALUES )
+    {
+      return;
+    }
+    long startNanos = System.nanoTime();
+    long valueCount=0;
+    Exception error=null;
+    for( int plotIndex=0 ; plotIndex<heldValues.length ; plotIndex++ )
+    {
+      PlotValues plotValues = heldValues[plotIndex];
+      if( plotValues == null || plotValues.count == 0 )
       {
-        StringTokenizer strTok2 = new StringTokenizer(line,":");
-        if( strTok2.countTokens() == 3 )
-        {
-          Double plotIndexValue = new Double(Double.parseDouble(strTok2.nextToken())); 
-          Double xValue = new Double(Double.parseDouble(strTok2.nextToken()));
-          Double yValue = new Double(strTok2.nextToken());
-          //v1.21 hopeful fix here
-          values.add( plotIndexValue );
-          values.add( xValue );
-          values.add( yValue );
-        }
+        continue;
       }
-      else
+      valueCount+=plotValues.count;
+      try
       {
-        values.add( new Double(Double.parseDouble(tok)) );
+        addPlotValues(heldValuesType, plotIndex, plotValues);
       }
+      catch(Exception e)
+      {
+        if( error == null )
+        {
+          error=e;
+        }
+      }
+      plotValues.count=0;
+    }
+    heldValuesType=LineProcessor.NO_VALUES;
+    long nanos = System.nanoTime()-startNanos;
+    applyNanos+=nanos;
+    if( metrics != null )
+    {
+      metrics.values.addAndGet(valueCount);
+      metrics.applyTime.record(nanos);
+    }
+    if( error instanceof NetPlotException )
+    {
+      throw (NetPlotException)error;
     }
-    Double array[] = new Double[values.size()];
-    int index=0;
-    for( Double value : values )
+    if( error != null )
     {
-      array[index]=value;
-      index++;
+      throw (RuntimeException)error;
     }
-    return array;
   }
-  
+
+  /**
+   * Add values to a plot.
+   */
+  private void addPlotValues(int valuesType, int plotIndex, PlotValues plotValues) throws NetPlotException
+  {
+    if( valuesType == LineProcessor.TIME_VALUES )
+    {
+      plotPanelInterface.addTimePlotValues(plotIndex, plotValues.times, plotValues.yValues, 0, plotValues.count);
+    }
+    else if( valuesType == LineProcessor.XY_VALUES )
+    {
+      plotPanelInterface.addPlotValues(plotIndex, plotValues.xValues, plotValues.yValues, 0, plotValues.count);
+    }
+    else if( plotPanelInterface instanceof TimeSeriesPlotPanel )
+    {
+      //Each value is shown at the time its line was received
+      plotPanelInterface.addTimePlotValues(plotIndex, plotValues.times, plotValues.yValues, 0, plotValues.count);
+    }
+    else
+    {
+      plotPanelInterface.addPlotValues(plotIndex, plotValues.yValues, 0, plotValues.count);
+    }
+    if( recordingEnabled && Recorder.IsRecording() )
+    {
+      recordPlotValues(valuesType, plotIndex, plotValues);
+    }
+  }
+
+  /**
+   * Record values added to a plot. Values added to a time series chart without
+   * a time stamp are recorded with the time they were received.
+   */
+  private void recordPlotValues(int valuesType, int plotIndex, PlotValues plotValues)
+  {
+    int recordType = GenericPlotPanel.Y_VALUES;
+    if( valuesType == LineProcessor.TIME_VALUES )
+    {
+      recordType = GenericPlotPanel.TIME_VALUES;
+    }
+    else if( valuesType == LineProcessor.XY_VALUES )
+    {
+      recordType = GenericPlotPanel.XY_VALUES;
+    }
+    else if( plotPanelInterface instanceof TimeSeriesPlotPanel )
+    {
+      recordType = GenericPlotPanel.TIME_VALUES;
+    }
+    Recorder.RecordValues(panelIndex, recordType, plotIndex, plotValues);
+  }
+
   public void initPlot()
   {
     if( plotPanelInterface != null )
     {
-      plotPanelInterface.init();
+      EDTCommand.RunLater(new EDTCommand()
+      {
+        public void execute()
+        {
+          plotPanelInterface.init();
+        }
+      });
     }
   }
   
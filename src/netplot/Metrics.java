@@ -0,0 +1,233 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.Vector;
+
+/**
+ * Responsible for holding the IngestMetrics of all the client connections and
+ * chart ports, and for writing them in the Prometheus text format.
+ *
+ * Each connection has its own IngestMetrics while it is open. When it is
+ * closed its counts are added to the totals of its chart port so that the
+ * port totals never decrease.
+ */
+public class Metrics
+{
+  private static final Vector<IngestMetrics> Connections = new Vector<IngestMetrics>();
+  //The counts of the closed connections and the render times of each chart port
+  private static final Vector<IngestMetrics> Ports = new Vector<IngestMetrics>();
+
+  /**
+   * Called when a client connects.
+   *
+   * @return The IngestMetrics for the connection.
+   */
+  public static IngestMetrics OpenConnection(int panelIndex, String clientAddress)
+  {
+    IngestMetrics ingestMetrics = new IngestMetrics(panelIndex, clientAddress);
+    ingestMetrics.connections.set(1);
+    Metrics.GetPortMetrics(panelIndex);
+    Metrics.Connections.add(ingestMetrics);
+    return ingestMetrics;
+  }
+
+  /**
+   * Called when a client connection is closed. May be called more than once.
+   */
+  public static void CloseConnection(IngestMetrics ingestMetrics)
+  {
+    synchronized(Metrics.Connections)
+    {
+      if( Metrics.Connections.remove(ingestMetrics) )
+      {
+        Metrics.GetPortMetrics(ingestMetrics.getPanelIndex()).add(ingestMetrics);
+      }
+    }
+  }
+
+  /**
+   * @return The metrics that are held for a chart port rather than a connection.
+   */
+  public static IngestMetrics GetPortMetrics(int panelIndex)
+  {
+    synchronized(Metrics.Ports)
+    {
+      while( Metrics.Ports.size() <= panelIndex )
+      {
+        Metrics.Ports.add( new IngestMetrics(Metrics.Ports.size(), null) );
+      }
+      return Metrics.Ports.get(panelIndex);
+    }
+  }
+
+  /**
+   * @return The number of chart ports that have metrics.
+   */
+  public static int GetPortCount()
+  {
+    return Metrics.Ports.size();
+  }
+
+  /**
+   * Get the totals of each chart port (including the open connections) and the
+   * open connections at the same time, so that the counts of a connection
+   * being closed are not missed or counted twice.
+   *
+   * @param connections Set to the metrics of the open connections.
+   * @return The totals of each chart port.
+   */
+  public static IngestMetrics[] GetPortTotals(Vector<IngestMetrics> connections)
+  {
+    synchronized(Metrics.Connections)
+    {
+      connections.clear();
+      connections.addAll(Metrics.Connections);
+      IngestMetrics portTotals[] = new IngestMetrics[Metrics.GetPortCount()];
+      for( int panelIndex=0 ; panelIndex<portTotals.length ; panelIndex++ )
+      {
+        portTotals[panelIndex] = new IngestMetrics(panelIndex, null);
+        portTotals[panelIndex].add( Metrics.GetPortMetrics(panelIndex) );
+        for( IngestMetrics connection : connections )
+        {
+          if( connection.getPanelIndex() == panelIndex )
+          {
+            portTotals[panelIndex].add(connection);
+          }
+        }
+      }
+      return portTotals;
+    }
+  }
+
+  /**
+   * @return The number of open connections to a chart port.
+   */
+  public static int GetOpenConnectionCount(int panelIndex, Vector<IngestMetrics> connections)
+  {
+    int openConnectionCount=0;
+    for( IngestMetrics connection : connections )
+    {
+      if( connection.getPanelIndex() == panelIndex )
+      {
+        openConnectionCount++;
+      }
+    }
+    return openConnectionCount;
+  }
+
+  /**
+   * @return All the metrics in the Prometheus text format.
+   */
+  public static String GetPrometheusText()
+  {
+    Vector<IngestMetrics> connections = new Vector<IngestMetrics>();
+    IngestMetrics portTotals[] = Metrics.GetPortTotals(connections);
+    StringBuffer text = new StringBuffer();
+    Metrics.WriteCounter(text, "netplot_lines_total", "Lines of text and binary frames received.", portTotals, 0);
+    Metrics.WriteCounter(text, "netplot_values_total", "Values added to the chart.", portTotals, 1);
+    Metrics.WriteCounter(text, "netplot_received_bytes_total", "Bytes received from clients.", portTotals, 2);
+    Metrics.WriteCounter(text, "netplot_errors_total", "Lines or frames that could not be processed.", portTotals, 3);
+    Metrics.WriteCounter(text, "netplot_connections_total", "Client connections accepted.", portTotals, 4);
+
+    text.append("# HELP netplot_open_connections Client connections currently open.\n");
+    text.append("# TYPE netplot_open_connections gauge\n");
+    for( int i=0 ; i<portTotals.length ; i++ )
+    {
+      text.append("netplot_open_connections{"+Metrics.GetPortLabel(i)+"} "+Metrics.GetOpenConnectionCount(i, connections)+"\n");
+    }
+
+    Metrics.WriteHistogram(text, "netplot_parse_seconds", "Time taken to parse each block of data received.", portTotals, 0);
+    Metrics.WriteHistogram(text, "netplot_apply_seconds", "Time taken to add the values received to the chart.", portTotals, 1);
+    Metrics.WriteHistogram(text, "netplot_render_seconds", "Time taken to update and draw the chart.", portTotals, 2);
+
+    //The counts of each open connection
+    IngestMetrics connectionMetrics[] = connections.toArray(new IngestMetrics[connections.size()]);
+    Metrics.WriteCounter(text, "netplot_connection_lines_total", "Lines of text and binary frames received on an open connection.", connectionMetrics, 0);
+    Metrics.WriteCounter(text, "netplot_connection_values_total", "Values received on an open connection.", connectionMetrics, 1);
+    Metrics.WriteCounter(text, "netplot_connection_received_bytes_total", "Bytes received on an open connection.", connectionMetrics, 2);
+    Metrics.WriteCounter(text, "netplot_connection_errors_total", "Errors on an open connection.", connectionMetrics, 3);
+    return text.toString();
+  }
+
+  /**
+   * @return The labels that identify the metrics of a chart port or connection.
+   */
+  private static String GetLabels(IngestMetrics ingestMetrics)
+  {
+    String labels = Metrics.GetPortLabel(ingestMetrics.getPanelIndex());
+    if( ingestMetrics.getClientAddress() != null )
+    {
+      labels = labels+",client=\""+ingestMetrics.getClientAddress().replace("\\", "\\\\").replace("\"", "\\\"")+"\"";
+    }
+    return labels;
+  }
+
+  private static String GetPortLabel(int panelIndex)
+  {
+    return "port=\""+(NetPlotter.basePort+panelIndex)+"\"";
+  }
+
+  /**
+   * @param counter 0=lines, 1=values, 2=bytes, 3=errors, 4=connections
+   */
+  private static void WriteCounter(StringBuffer text, String name, String help, IngestMetrics ingestMetrics[], int counter)
+  {
+    text.append("# HELP "+name+" "+help+"\n");
+    text.append("# TYPE "+name+" counter\n");
+    for( IngestMetrics metrics : ingestMetrics )
+    {
+      long value;
+      if( counter == 0 )
+      {
+        value = metrics.lines.get();
+      }
+      else if( counter == 1 )
+      {
+        value = metrics.values.get();
+      }
+      else if( counter == 2 )
+      {
+        value = metrics.bytes.get();
+      }
+      else if( counter == 3 )
+      {
+        value = metrics.errors.get();
+      }
+      else
+      {
+        value = metrics.connections.get();
+      }
+      text.append(name+"{"+Metrics.GetLabels(metrics)+"} "+value+"\n");
+    }
+  }
+
+  /**
+   * @param histogram 0=parse time, 1=apply time, 2=render time
+   */
+  private static void WriteHistogram(StringBuffer text, String name, String help, IngestMetrics ingestMetrics[], int histogram)
+  {
+    text.append("# HELP "+name+" "+help+"\n");
+    text.append("# TYPE "+name+" histogram\n");
+    for( IngestMetrics metrics : ingestMetrics )
+    {
+      if( histogram == 0 )
+      {
+        metrics.parseTime.write(text, name, Metrics.GetLabels(metrics));
+      }
+      else if( histogram == 1 )
+      {
+        metrics.applyTime.write(text, name, Metrics.GetLabels(metrics));
+      }
+      else
+      {
+        metrics.renderTime.write(text, name, Metrics.GetLabels(metrics));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,181 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.HashMap;
+import java.util.Vector;
+
+import javax.swing.JDialog;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Responsible for showing the ingest metrics of each chart port and each open
+ * connection. The table is updated every UPDATE_MILLIS. The rates and mean
+ * times are those since the previous update.
+ */
+public class MetricsDialog extends JDialog implements ActionListener
+{
+  static final long serialVersionUID=1;
+  public static final int       UPDATE_MILLIS=1000;
+  public static final String    COLUMN_NAMES[] = { "Port", "Client", "Connections", "Lines/s", "Values/s", "KB/s", "Errors", "Parse ms", "Apply ms", "Render ms" };
+  private final MetricsTableModel tableModel = new MetricsTableModel();
+  private final Timer           updateTimer = new Timer(MetricsDialog.UPDATE_MILLIS, this);
+  //The counts at the previous update of each chart port (Integer panel index) or connection (IngestMetrics)
+  private HashMap<Object, long[]> previousCounts = new HashMap<Object, long[]>();
+  private long                  previousNanos;
+
+  public MetricsDialog(Frame owner)
+  {
+    super(owner, "Metrics", false);
+    JTable table = new JTable(tableModel);
+    JScrollPane scrollPane = new JScrollPane(table);
+    scrollPane.setPreferredSize( new Dimension(900, 300) );
+    getContentPane().add(scrollPane, BorderLayout.CENTER);
+    pack();
+    setLocationRelativeTo(owner);
+    addWindowListener( new WindowAdapter() {
+      public void windowClosing(WindowEvent e)
+      {
+        updateTimer.stop();
+      }
+    });
+  }
+
+  /**
+   * Show the dialog and start updating the table.
+   */
+  public void showMetrics()
+  {
+    update();
+    updateTimer.start();
+    setVisible(true);
+  }
+
+  /**
+   * Called by the update timer.
+   */
+  public void actionPerformed(ActionEvent e)
+  {
+    if( !isVisible() )
+    {
+      updateTimer.stop();
+      return;
+    }
+    update();
+  }
+
+  /**
+   * Update the table from the current metrics.
+   */
+  private void update()
+  {
+    long nowNanos = System.nanoTime();
+    double seconds = previousNanos == 0 ? 0 : (nowNanos-previousNanos)/1E9;
+    previousNanos = nowNanos;
+    HashMap<Object, long[]> counts = new HashMap<Object, long[]>();
+    Vector<Object[]> rows = new Vector<Object[]>();
+    Vector<IngestMetrics> connections = new Vector<IngestMetrics>();
+    IngestMetrics portTotals[] = Metrics.GetPortTotals(connections);
+    for( IngestMetrics portMetrics : portTotals )
+    {
+      if( portMetrics.connections.get() == 0 )
+      {
+        continue;
+      }
+      Integer key = Integer.valueOf(portMetrics.getPanelIndex());
+      rows.add( getRow(portMetrics, "All", ""+Metrics.GetOpenConnectionCount(portMetrics.getPanelIndex(), connections)+" open", key, counts, seconds) );
+      for( IngestMetrics connection : connections )
+      {
+        if( connection.getPanelIndex() == portMetrics.getPanelIndex() )
+        {
+          rows.add( getRow(connection, connection.getClientAddress(), "", connection, counts, seconds) );
+        }
+      }
+    }
+    previousCounts = counts;
+    tableModel.setRows(rows);
+  }
+
+  /**
+   * @return A row of the table.
+   */
+  private Object[] getRow(IngestMetrics metrics, String client, String connections, Object key, HashMap<Object, long[]> counts, double seconds)
+  {
+    long count[] = { metrics.lines.get(), metrics.values.get(), metrics.bytes.get(),
+                     metrics.parseTime.getCount(), metrics.parseTime.getSumNanos(),
+                     metrics.applyTime.getCount(), metrics.applyTime.getSumNanos(),
+                     metrics.renderTime.getCount(), metrics.renderTime.getSumNanos() };
+    counts.put(key, count);
+    long previous[] = previousCounts.get(key);
+    if( previous == null || seconds <= 0 )
+    {
+      previous = new long[count.length];
+      seconds = (System.currentTimeMillis()-metrics.getStartMillis())/1000.0;
+    }
+    Object row[] = new Object[MetricsDialog.COLUMN_NAMES.length];
+    row[0] = ""+(NetPlotter.basePort+metrics.getPanelIndex());
+    row[1] = client;
+    row[2] = connections;
+    row[3] = MetricsDialog.GetRate(count[0]-previous[0], seconds);
+    row[4] = MetricsDialog.GetRate(count[1]-previous[1], seconds);
+    row[5] = MetricsDialog.GetRate((count[2]-previous[2])/1024.0, seconds);
+    row[6] = ""+metrics.errors.get();
+    row[7] = MetricsDialog.GetMeanMillis(count[4]-previous[4], count[3]-previous[3]);
+    row[8] = MetricsDialog.GetMeanMillis(count[6]-previous[6], count[5]-previous[5]);
+    row[9] = MetricsDialog.GetMeanMillis(count[8]-previous[8], count[7]-previous[7]);
+    return row;
+  }
+
+  private static String GetRate(double count, double seconds)
+  {
+    if( seconds <= 0 )
+    {
+      return "";
+    }
+    return String.format("%.1f", count/seconds);
+  }
+
+  private static String GetMeanMillis(long sumNanos, long count)
+  {
+    if( count <= 0 )
+    {
+      return "";
+    }
+    return String.format("%.3f", sumNanos/1E6/count);
+  }
+
+  /**
+   * Holds the rows of the metrics table.
+   */
+  class MetricsTableModel extends AbstractTableModel
+  {
+    static final long serialVersionUID=1;
+    private Vector<Object[]> rows = new Vector<Object[]>();
+
+    public void setRows(Vector<Object[]> rows)
+    {
+      this.rows=rows;
+      fireTableDataChanged();
+    }
+
+    public int getRowCount()                   { return rows.size(); }
+    public int getColumnCount()                { return MetricsDialog.COLUMN_NAMES.length; }
+    public String getColumnName(int column)    { return MetricsDialog.COLUMN_NAMES[column]; }
+    public Object getValueAt(int row, int column) { return rows.get(row)[column]; }
+  }
+
+}
@@ -0,0 +1,56 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Responsible for serving the ingest metrics over HTTP in the Prometheus text
+ * format (http://localhost:<metrics port>/metrics). The server only accepts
+ * connections from the local machine.
+ */
+public class MetricsServer implements HttpHandler
+{
+  public static final String  PATH="/metrics";
+  public static final String  CONTENT_TYPE="text/plain; version=0.0.4; charset=utf-8";
+
+  /**
+   * Start the HTTP server on a single thread.
+   */
+  public static void Start(int port) throws IOException
+  {
+    HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 0);
+    httpServer.createContext(MetricsServer.PATH, new MetricsServer());
+    httpServer.start();
+    UO.Info("Metrics available from http://127.0.0.1:"+port+MetricsServer.PATH);
+  }
+
+  public void handle(HttpExchange httpExchange) throws IOException
+  {
+    try
+    {
+      byte response[] = Metrics.GetPrometheusText().getBytes("UTF-8");
+      httpExchange.getResponseHeaders().set("Content-Type", MetricsServer.CONTENT_TYPE);
+      httpExchange.sendResponseHeaders(200, response.length);
+      OutputStream os = httpExchange.getResponseBody();
+      os.write(response);
+      os.close();
+    }
+    finally
+    {
+      httpExchange.close();
+    }
+  }
+
+}
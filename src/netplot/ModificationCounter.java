@@ -0,0 +1,18 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+/**
+ * Implemented by datasets that count the changes made to their points other
+ * than adding points after the last point, changing the value of the last
+ * point and removing points from the start. A DecimatedXYDataset uses this
+ * to decide if it can update incrementally as points are added.
+ */
+public interface ModificationCounter
+{
+  public long getModificationCount();
+}
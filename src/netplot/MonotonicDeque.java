@@ -0,0 +1,139 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+/**
+ * Responsible for holding the min (or max) value of a sliding window of values.
+ *
+ * Values are added at the end of the window and removed from the start. Each
+ * value is identified by a sequence number that increases by one for each
+ * value added. Only the values that may become the min (max) are held, in
+ * sequence order, so the first value held is the min (max) of the window.
+ * Adding and removing values is O(1) on average.
+ */
+public class MonotonicDeque
+{
+  public static final int INITIAL_CAPACITY=64;
+  private final boolean   max;
+  private long            sequences[] = new long[MonotonicDeque.INITIAL_CAPACITY];
+  private double          values[] = new double[MonotonicDeque.INITIAL_CAPACITY];
+  private int             mask = MonotonicDeque.INITIAL_CAPACITY-1;
+  private int             head;
+  private int             size;
+
+  /**
+   * @param max If true the max value is held, else the min value.
+   */
+  public MonotonicDeque(boolean max)
+  {
+    this.max=max;
+  }
+
+  /**
+   * @return The min (max) value of the window or NaN if the window holds no values.
+   */
+  public double getValue()
+  {
+    return size == 0 ? Double.NaN : values[head];
+  }
+
+  /**
+   * @return True if value a should be held in place of value b.
+   */
+  private boolean replaces(double a, double b)
+  {
+    return max ? a >= b : a <= b;
+  }
+
+  /**
+   * Add a value at the end of the window. NaN values are ignored.
+   *
+   * @param sequence Must be greater than the sequence of the values already held.
+   */
+  public void add(long sequence, double value)
+  {
+    if( Double.isNaN(value) )
+    {
+      return;
+    }
+    //Values before this one that are not below (above) it can no longer be the min (max)
+    while( size > 0 && replaces(value, values[(head+size-1)&mask]) )
+    {
+      size--;
+    }
+    if( size == sequences.length )
+    {
+      grow();
+    }
+    int index = (head+size)&mask;
+    sequences[index]=sequence;
+    values[index]=value;
+    size++;
+  }
+
+  /**
+   * Replace the value at the end of the window.
+   *
+   * @return False if this is not possible because a value removed when the
+   *         previous value was added may now be the min (max). The values must
+   *         then be added again.
+   */
+  public boolean replaceLast(long sequence, double value)
+  {
+    if( size > 0 && sequences[(head+size-1)&mask] == sequence )
+    {
+      if( Double.isNaN(value) || !replaces(value, values[(head+size-1)&mask]) )
+      {
+        return false;
+      }
+      size--;
+    }
+    add(sequence, value);
+    return true;
+  }
+
+  /**
+   * Remove the values with a sequence before the sequence given from the start of the window.
+   */
+  public void removeBefore(long sequence)
+  {
+    while( size > 0 && sequences[head] < sequence )
+    {
+      head=(head+1)&mask;
+      size--;
+    }
+  }
+
+  /**
+   * Remove all values.
+   */
+  public void clear()
+  {
+    head=0;
+    size=0;
+  }
+
+  /**
+   * Double the size of the buffers.
+   */
+  private void grow()
+  {
+    int capacity = sequences.length*2;
+    long newSequences[] = new long[capacity];
+    double newValues[] = new double[capacity];
+    for( int i=0 ; i<size ; i++ )
+    {
+      newSequences[i]=sequences[(head+i)&mask];
+      newValues[i]=values[(head+i)&mask];
+    }
+    sequences=newSequences;
+    values=newValues;
+    mask=capacity-1;
+    head=0;
+  }
+
+}
@@ -0,0 +1,698 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Responsible for the netplot protocol on a single client connection.
+ *
+ * The bytes received from the client are placed in the read buffer. Each
+ * complete line of text is passed to a LineProcessor and the responses to be
+ * sent back to the client are collected in the write buffer. No I/O is done
+ * here so the same protocol handling is used by the thread per connection
+ * server (NetPlotSocketHandler) and the NIO server (NetPlotNioServer).
+ *
+ * A client may send the BINARY_MAGIC byte at the start of a line to switch
+ * the connection to binary frames (see processFrame()). Plot values sent in
+ * binary frames are passed to the LineProcessor as primitive values, avoiding
+ * the text formatting and parsing.
+ *
+ * When the client does not wait for a response to each line (ack_mode is not
+ * line) large blocks of lines are split into chunks that are parsed in parallel
+ * (see ParallelLineParser) when there is more than one processor. The results
+ * are then processed in the order of the lines, so the responses are the same as
+ * if the lines had been processed one at a time.
+ */
+public class NetPlotConnection implements ParsedLineHandler
+{
+  public static final int       INITIAL_BUFFER_SIZE=8192;
+  //Ack intervals. A value above 0 sends an OK response after that many lines.
+  public static final int       ACK_NONE=0;     //Only errors are reported
+  public static final int       ACK_BATCH=-1;   //OK <line count> after each block of received data
+  public static final int       ACK_LINE=1;     //OK after every line (default)
+  public static final String    ACK_MODE_CMD=KeyWords.SET_PREFIX+KeyWords.ACK_MODE+"=";
+  //Sent by a client at the start of a line to switch the connection to binary frames
+  public static final byte      BINARY_MAGIC=(byte)0xB7;
+  //Binary frame types
+  public static final byte      FRAME_TEXT='L';
+  public static final byte      FRAME_VALUES='V';
+  public static final byte      FRAME_XY='X';
+  public static final byte      FRAME_TIME='T';
+  public static final byte      FRAME_BARS='B';
+  public static final byte      FRAME_ROW='R';
+  //The max size of a binary frame in bytes, so that a frame header can't make the read buffer grow without limit
+  public static final int       MAX_FRAME_SIZE=1<<22;
+  //The read buffer size when the client does not wait for a response to each line
+  public static final int       BULK_BUFFER_SIZE=1<<20;
+  //The min number of bytes of complete lines that are parsed in parallel
+  public static final int       PARALLEL_PARSE_MIN_BYTES=65536;
+  //The min number of bytes parsed by each thread
+  public static final int       PARALLEL_PARSE_CHUNK_SIZE=16384;
+  private final LineProcessor   lineProcessor;
+  private ByteBuffer            readBuffer;
+  private ByteBuffer            writeBuffer;
+  private boolean               closed;
+  private int                   ackInterval=NetPlotConnection.ACK_LINE;
+  private int                   unackedLineCount;
+  private long                  lineNumber;
+  private boolean               binaryMode;
+  //The values of the last FRAME_BARS or FRAME_ROW received
+  private double                frameValues[] = new double[0];
+  private final int             panelIndex;
+  private IngestMetrics         metrics;
+  private int                   retainedByteCount;  //The bytes of a partial line/frame left in the read buffer
+  private ParallelLineParser    parallelLineParser;
+
+  public NetPlotConnection(int panelIndex, int maxPanelIndex)
+  {
+    this.panelIndex=panelIndex;
+    lineProcessor = new LineProcessor(panelIndex, maxPanelIndex);
+    readBuffer = ByteBuffer.allocate(NetPlotConnection.INITIAL_BUFFER_SIZE);
+    writeBuffer = ByteBuffer.allocate(NetPlotConnection.INITIAL_BUFFER_SIZE);
+  }
+
+  /**
+   * Called when the client connects. Sends the initial ID message.
+   * 
+   * @param clientAddress The address of the client, used to identify the connection metrics.
+   */
+  public void open(String clientAddress)
+  {
+    metrics = Metrics.OpenConnection(panelIndex, clientAddress);
+    lineProcessor.setMetrics(metrics);
+    lineProcessor.initPlot();
+    respond("netplot_version="+PlotFrame.NETPLOT_VERSION);
+  }
+
+  /**
+   * Get the buffer that bytes received from the client should be placed into.
+   * The buffer position is the end of the data already received and there is
+   * always space for more data.
+   */
+  public ByteBuffer getReadBuffer()
+  {
+    if( !readBuffer.hasRemaining() )
+    {
+      readBuffer = NetPlotConnection.Grow(readBuffer, readBuffer.capacity()*2);
+    }
+    else if( ackInterval != NetPlotConnection.ACK_LINE && !binaryMode && readBuffer.capacity() < NetPlotConnection.BULK_BUFFER_SIZE )
+    {
+      //Read large blocks that can be parsed in parallel
+      readBuffer = NetPlotConnection.Grow(readBuffer, NetPlotConnection.BULK_BUFFER_SIZE);
+    }
+    return readBuffer;
+  }
+
+  /**
+   * Get the buffer holding the responses to be sent to the client. The buffer
+   * position is the end of the response data. Once (some of) the data has been
+   * sent the caller should flip and compact the buffer (or clear it if all the
+   * data has been sent).
+   */
+  public ByteBuffer getWriteBuffer()
+  {
+    return writeBuffer;
+  }
+
+  /**
+   * @return True if an error occurred and the connection should be closed once
+   *         the write buffer has been sent.
+   */
+  public boolean isClosed()
+  {
+    return closed;
+  }
+
+  /**
+   * Called when the connection to the client has been closed.
+   */
+  public void close()
+  {
+    closed=true;
+    if( metrics != null )
+    {
+      Metrics.CloseConnection(metrics);
+    }
+    lineProcessor.close();
+  }
+
+  /**
+   * Process all complete lines (or binary frames) held in the read buffer. 
+   * Any partial line or frame is retained until the rest of it is received.
+   */
+  public void process()
+  {
+    long startNanos = System.nanoTime();
+    long startApplyNanos = lineProcessor.getApplyNanos();
+    long startLineNumber = lineNumber;
+    metrics.bytes.addAndGet(readBuffer.position()-retainedByteCount);
+    readBuffer.flip();
+    if( !binaryMode && ackInterval != NetPlotConnection.ACK_LINE && readBuffer.remaining() >= NetPlotConnection.PARALLEL_PARSE_MIN_BYTES &&
+        ParallelLineParser.GetParallelism() > 1 )
+    {
+      processLinesInParallel();
+    }
+    while( !closed && readBuffer.hasRemaining() )
+    {
+      boolean processed;
+      if( binaryMode )
+      {
+        processed = processFrame();
+      }
+      else
+      {
+        processed = processLine();
+      }
+      if( !processed )
+      {
+        break;
+      }
+    }
+    readBuffer.compact();
+    retainedByteCount = readBuffer.position();
+    metrics.lines.addAndGet(lineNumber-startLineNumber);
+    //The time spent adding values to the chart (in line ack mode) is not parse time
+    metrics.parseTime.record( System.nanoTime()-startNanos-(lineProcessor.getApplyNanos()-startApplyNanos) );
+    flushValues();
+    if( ackInterval == NetPlotConnection.ACK_BATCH )
+    {
+      sendBatchAck();
+    }
+  }
+
+  /**
+   * Called when the client has closed its side of the connection. Any partial
+   * line left in the read buffer is processed as the last line.
+   */
+  public void endOfInput()
+  {
+    if( readBuffer.position() > 0 && !closed && !binaryMode )
+    {
+      processLine(readBuffer.array(), 0, readBuffer.position());
+      readBuffer.clear();
+      metrics.lines.incrementAndGet();
+    }
+    flushValues();
+    if( ackInterval == NetPlotConnection.ACK_BATCH )
+    {
+      sendBatchAck();
+    }
+    closed=true;
+  }
+
+  /**
+   * Process the line at the read buffer position.
+   * 
+   * @return false if the read buffer does not hold a complete line.
+   */
+  private boolean processLine()
+  {
+    byte buffer[] = readBuffer.array();
+    int lineStart = readBuffer.position();
+    int end = readBuffer.limit();
+    if( buffer[lineStart] == NetPlotConnection.BINARY_MAGIC )
+    {
+      //The client has requested the binary protocol for the rest of the connection.
+      readBuffer.position(lineStart+1);
+      binaryMode=true;
+      respond("OK");
+      return true;
+    }
+    for( int i=lineStart ; i<end ; i++ )
+    {
+      if( buffer[i] == '\n' )
+      {
+        readBuffer.position(i+1);
+        processLine(buffer, lineStart, i);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parse the complete lines in the read buffer in parallel and then process
+   * them in order. If the lines include the start of binary frames nothing is
+   * done and the lines are processed one at a time.
+   */
+  private void processLinesInParallel()
+  {
+    byte buffer[] = readBuffer.array();
+    int start = readBuffer.position();
+    int end = readBuffer.limit();
+    while( end > start && buffer[end-1] != '\n' )
+    {
+      end--;
+    }
+    if( end-start < NetPlotConnection.PARALLEL_PARSE_MIN_BYTES )
+    {
+      return;
+    }
+    for( int i=start ; i<end ; i++ )
+    {
+      if( buffer[i] == NetPlotConnection.BINARY_MAGIC )
+      {
+        return;
+      }
+    }
+    if( parallelLineParser == null )
+    {
+      parallelLineParser = new ParallelLineParser();
+    }
+    int chunkSize = Math.max(NetPlotConnection.PARALLEL_PARSE_CHUNK_SIZE, (end-start)/ParallelLineParser.GetParallelism());
+    int chunkStart = start;
+    while( chunkStart < end )
+    {
+      int chunkEnd = Math.min(chunkStart+chunkSize, end);
+      while( buffer[chunkEnd-1] != '\n' )
+      {
+        chunkEnd++;
+      }
+      parallelLineParser.submit(readBuffer, chunkStart, chunkEnd);
+      chunkStart = chunkEnd;
+    }
+    try
+    {
+      while( parallelLineParser.getPendingCount() > 0 )
+      {
+        ParsedLines parsedLines = parallelLineParser.take();
+        parsedLines.apply(lineProcessor, lineNumber+1, this);
+        parallelLineParser.free(parsedLines);
+      }
+    }
+    catch(InterruptedException e)
+    {
+      closed=true;
+    }
+    readBuffer.position(end);
+  }
+
+  /**
+   * Called by ParsedLines.apply() for a line that does not hold plot values.
+   */
+  public void processLine(long lineNumber, String line)
+  {
+    processLine(line);
+  }
+
+  /**
+   * Called by ParsedLines.apply() when the plot values of a line have been added.
+   */
+  public void lineProcessed(long lineNumber)
+  {
+    this.lineNumber++;
+    try
+    {
+      if( ackInterval == NetPlotConnection.ACK_LINE )
+      {
+        lineProcessor.flush();
+      }
+      lineAcked();
+    }
+    catch(Exception e)
+    {
+      lineFailed(e);
+    }
+  }
+
+  /**
+   * Called by ParsedLines.apply() when a line could not be parsed or its values added.
+   */
+  public void lineFailed(long lineNumber, Exception e)
+  {
+    this.lineNumber++;
+    lineFailed(e);
+  }
+
+  /**
+   * Process a single line, buffer[start] up to but not including buffer[end].
+   */
+  private void processLine(byte buffer[], int start, int end)
+  {
+    //Remove the CR from CRLF line endings
+    if( end > start && buffer[end-1] == '\r' )
+    {
+      end--;
+    }
+    processLine( new String(buffer, start, end-start) );
+  }
+
+  /**
+   * Process a single line of text.
+   */
+  private void processLine(String line)
+  {
+    lineNumber++;
+    try
+    {
+      if( line.startsWith(NetPlotConnection.ACK_MODE_CMD) || line.startsWith(KeyWords.ENABLE_ACK) )
+      {
+        flushValues();
+        setAckMode(line);
+        return;
+      }
+      lineProcessor.processLine(line);
+      if( ackInterval == NetPlotConnection.ACK_LINE )
+      {
+        //The client is waiting for the result of this line
+        lineProcessor.flush();
+      }
+      lineAcked();
+    }
+    catch(Exception e)
+    {
+      lineFailed(e);
+    }
+  }
+
+  /**
+   * Process the binary frame at the read buffer position. All frames start 
+   * with the frame type byte. The frame formats (all values are big endian) are
+   * 
+   * FRAME_TEXT   : int byte count, the bytes of a line of text (E.G set graph=time).
+   * FRAME_VALUES : int plot index, int value count, the double values. The first value
+   *                is added to the plot index given, the next to the following plot
+   *                and so on. This is the same as sending 1.2,3.4 as a text line.
+   * FRAME_XY     : int plot index, int point count, x,y double pairs for the plot.
+   * FRAME_TIME   : int plot index, int point count, long epoch milliseconds,double value
+   *                pairs for a time series plot.
+   * FRAME_BARS   : int bar count, the double bar heights. Replaces all the bars of
+   *                a bar chart. This is the same as sending set bars=1.2,3.4 as a text line.
+   * FRAME_ROW    : int value count, the double values. Adds a row to a waterfall chart.
+   *                This is the same as sending 1.2,3.4 as a text line.
+   * 
+   * @return false if the read buffer does not hold a complete frame.
+   */
+  private boolean processFrame()
+  {
+    int frameStart = readBuffer.position();
+    int available = readBuffer.remaining();
+    byte frameType = readBuffer.get(frameStart);
+    int itemSize;
+    int headerSize;
+    if( frameType == NetPlotConnection.FRAME_TEXT )
+    {
+      itemSize=1;
+      headerSize=5;
+    }
+    else if( frameType == NetPlotConnection.FRAME_BARS || frameType == NetPlotConnection.FRAME_ROW )
+    {
+      itemSize=8;
+      headerSize=5;
+    }
+    else if( frameType == NetPlotConnection.FRAME_VALUES )
+    {
+      itemSize=8;
+      headerSize=9;
+    }
+    else if( frameType == NetPlotConnection.FRAME_XY || frameType == NetPlotConnection.FRAME_TIME )
+    {
+      itemSize=16;
+      headerSize=9;
+    }
+    else
+    {
+      //We can't find the start of the next frame so the connection is closed.
+      lineNumber++;
+      metrics.errors.incrementAndGet();
+      respond("ERROR: line "+lineNumber+": "+frameType+" is an unknown binary frame type");
+      closed=true;
+      return false;
+    }
+    if( available < headerSize )
+    {
+      return false;
+    }
+    int plotIndex=0;
+    int count;
+    if( frameType == NetPlotConnection.FRAME_TEXT || frameType == NetPlotConnection.FRAME_BARS || frameType == NetPlotConnection.FRAME_ROW )
+    {
+      count = readBuffer.getInt(frameStart+1);
+    }
+    else
+    {
+      plotIndex = readBuffer.getInt(frameStart+1);
+      count = readBuffer.getInt(frameStart+5);
+    }
+    if( count < 0 || count > (NetPlotConnection.MAX_FRAME_SIZE-headerSize)/itemSize )
+    {
+      lineNumber++;
+      metrics.errors.incrementAndGet();
+      respond("ERROR: line "+lineNumber+": invalid binary frame length ("+count+"), frames are limited to "+NetPlotConnection.MAX_FRAME_SIZE+" bytes");
+      closed=true;
+      return false;
+    }
+    int frameSize = headerSize+count*itemSize;
+    if( available < frameSize )
+    {
+      return false;
+    }
+    readBuffer.position(frameStart+frameSize);
+    if( frameType == NetPlotConnection.FRAME_TEXT )
+    {
+      processLine( new String(readBuffer.array(), readBuffer.arrayOffset()+frameStart+headerSize, count) );
+      return true;
+    }
+    lineNumber++;
+    try
+    {
+      int offset = frameStart+headerSize;
+      if( frameType == NetPlotConnection.FRAME_BARS || frameType == NetPlotConnection.FRAME_ROW )
+      {
+        if( frameValues.length < count )
+        {
+          frameValues = new double[count];
+        }
+        for( int i=0 ; i<count ; i++ )
+        {
+          frameValues[i]=readBuffer.getDouble(offset);
+          offset+=8;
+        }
+        if( frameType == NetPlotConnection.FRAME_BARS )
+        {
+          lineProcessor.setBars(frameValues, 0, count);
+        }
+        else
+        {
+          lineProcessor.addRow(frameValues, 0, count);
+        }
+      }
+      else
+      {
+        for( int i=0 ; i<count ; i++ )
+        {
+          if( frameType == NetPlotConnection.FRAME_VALUES )
+          {
+            lineProcessor.addPlotValue(plotIndex+i, readBuffer.getDouble(offset));
+            offset+=8;
+          }
+          else if( frameType == NetPlotConnection.FRAME_XY )
+          {
+            lineProcessor.addXYPlotValue(plotIndex, readBuffer.getDouble(offset), readBuffer.getDouble(offset+8));
+            offset+=16;
+          }
+          else
+          {
+            lineProcessor.addTimePlotValue(plotIndex, readBuffer.getLong(offset), readBuffer.getDouble(offset+8));
+            offset+=16;
+          }
+        }
+      }
+      if( ackInterval == NetPlotConnection.ACK_LINE )
+      {
+        //The client is waiting for the result of this frame
+        lineProcessor.flush();
+      }
+      lineAcked();
+    }
+    catch(Exception e)
+    {
+      lineFailed(e);
+    }
+    return true;
+  }
+
+  /**
+   * Add the plot values held by the LineProcessor to the plots. When the client
+   * does not wait for a response to each line the values of many lines are
+   * held and added to each plot in a single call. If this fails the error is
+   * reported against the last line processed.
+   */
+  private void flushValues()
+  {
+    try
+    {
+      lineProcessor.flush();
+    }
+    catch(Exception e)
+    {
+      UO.Debug(e);
+      metrics.errors.incrementAndGet();
+      respond("ERROR: line "+lineNumber+": "+NetPlotConnection.GetErrorMessage(e));
+    }
+  }
+
+  /**
+   * @return The message of an exception to be sent to the client.
+   */
+  private static String GetErrorMessage(Exception e)
+  {
+    String m = e.getLocalizedMessage();
+    if( m == null || m.length() == 0 )
+    {
+      m = "unknown";
+    }
+    return m;
+  }
+
+  /**
+   * Called when an error occurs processing a line or frame.
+   */
+  private void lineFailed(Exception e)
+  {
+    String m = NetPlotConnection.GetErrorMessage(e);
+    UO.Debug(e);
+    metrics.errors.incrementAndGet();
+    //If an error has occurred then send message back to source
+    if( ackInterval == NetPlotConnection.ACK_LINE )
+    {
+      respond("ERROR: "+m);
+      closed=true;
+    }
+    else
+    {
+      //The client has not waited for a response to each line so tell it
+      //which line failed and carry on processing the following lines.
+      respond("ERROR: line "+lineNumber+": "+m);
+      lineAcked();
+    }
+  }
+
+  /**
+   * Set the acknowledgement mode from a set ack_mode= or enable_ack line.
+   * These lines are always acknowledged with an OK response so that a client
+   * can wait for the new mode to take effect. When leaving batch mode the
+   * pending batch acknowledgement is sent first.
+   */
+  private void setAckMode(String line) throws NetPlotException
+  {
+    int newAckInterval;
+    if( line.startsWith(KeyWords.ENABLE_ACK) )
+    {
+      String enabled = line.substring(KeyWords.ENABLE_ACK.length()).trim().toLowerCase();
+      if( enabled.equals("0") || 
+          enabled.equals("false") || 
+          enabled.equals("no") ) {
+        newAckInterval = NetPlotConnection.ACK_NONE;
+      }
+      else {
+        newAckInterval = NetPlotConnection.ACK_LINE;
+      }
+    }
+    else
+    {
+      newAckInterval = NetPlotConnection.ParseAckMode( line.substring(NetPlotConnection.ACK_MODE_CMD.length()).trim() );
+    }
+    if( ackInterval == NetPlotConnection.ACK_BATCH )
+    {
+      sendBatchAck();
+    }
+    ackInterval=newAckInterval;
+    unackedLineCount=0;
+    respond("OK");
+  }
+
+  /**
+   * Called when a line has been processed. Sends an OK response if one is
+   * due in the current ack mode.
+   */
+  private void lineAcked()
+  {
+    if( ackInterval == NetPlotConnection.ACK_NONE )
+    {
+      return;
+    }
+    unackedLineCount++;
+    if( ackInterval > 0 && unackedLineCount >= ackInterval )
+    {
+      //The OK indicates that the values sent have been added to the plots
+      flushValues();
+      respond("OK");
+      unackedLineCount=0;
+    }
+  }
+
+  /**
+   * Send the acknowledgement for all the lines processed since the last one in batch mode.
+   */
+  private void sendBatchAck()
+  {
+    if( unackedLineCount > 0 )
+    {
+      respond("OK "+unackedLineCount);
+      unackedLineCount=0;
+    }
+  }
+
+  /**
+   * Get the ack interval from the value of an ack_mode command.
+   *
+   * @param value line, none, batch or the number of lines per OK response.
+   * @return The ack interval (ACK_NONE, ACK_BATCH or the number of lines per OK response).
+   */
+  public static int ParseAckMode(String value) throws NetPlotException
+  {
+    if( value.equals(KeyWords.ACK_MODE_LINE) )
+    {
+      return NetPlotConnection.ACK_LINE;
+    }
+    if( value.equals(KeyWords.ACK_MODE_NONE) )
+    {
+      return NetPlotConnection.ACK_NONE;
+    }
+    if( value.equals(KeyWords.ACK_MODE_BATCH) )
+    {
+      return NetPlotConnection.ACK_BATCH;
+    }
+    try
+    {
+      int lineCount = Integer.parseInt(value);
+      if( lineCount > 0 )
+      {
+        return lineCount;
+      }
+    }
+    catch(NumberFormatException e) {}
+    throw new NetPlotException(value+" is an invalid value for "+KeyWords.ACK_MODE+", must be "+KeyWords.ACK_MODE_LINE+", "+KeyWords.ACK_MODE_NONE+", "+KeyWords.ACK_MODE_BATCH+" or a line count greater than 0");
+  }
+
+  /**
+   * Add a response line to the write buffer.
+   */
+  private void respond(String line)
+  {
+    byte bytes[] = (line+"\n").getBytes();
+    if( writeBuffer.remaining() < bytes.length )
+    {
+      writeBuffer = NetPlotConnection.Grow(writeBuffer, writeBuffer.position()+bytes.length+NetPlotConnection.INITIAL_BUFFER_SIZE);
+    }
+    writeBuffer.put(bytes);
+  }
+
+  /**
+   * Copy the data in a buffer (in write mode) into a bigger buffer.
+   */
+  private static ByteBuffer Grow(ByteBuffer buffer, int capacity)
+  {
+    ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+    buffer.flip();
+    newBuffer.put(buffer);
+    return newBuffer;
+  }
+
+}
@@ -0,0 +1,211 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * Responsible for serving all the netplot TCP/IP ports from a single thread.
+ *
+ * One Selector owns the server socket channels on ports basePort to
+ * basePort+maxPlotCount-1 and every connected client channel. Received lines
+ * are passed to the NetPlotConnection (and therefore the LineProcessor) for
+ * the chart associated with the port the client connected to. This avoids
+ * having a thread per port and a thread per connection when many charts are
+ * used.
+ */
+public class NetPlotNioServer extends Thread
+{
+  //Stop reading from a client if this many response bytes are waiting to be sent to it
+  public static final int   MAX_PENDING_WRITE_BYTES=65536;
+  private final int         basePort;
+  private final int         maxPlotCount;
+  private Selector          selector;
+
+  public NetPlotNioServer(int basePort, int maxPlotCount)
+  {
+    super("NetPlot NIO server");
+    this.basePort=basePort;
+    this.maxPlotCount=maxPlotCount;
+  }
+
+  /**
+   * Bind all the server ports.
+   */
+  public void open() throws IOException
+  {
+    selector = Selector.open();
+    for( int i=0 ; i<maxPlotCount ; i++ )
+    {
+      int port=basePort+i;
+      try
+      {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().bind( new InetSocketAddress(port) );
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT, Integer.valueOf(i));
+        UO.Info("NetPlot server waiting for connections on TCP/IP port "+port);
+      }
+      catch(IOException e)
+      {
+        if( UO.IsDebugEnabled() )
+        {
+          UO.Debug("TCP port "+port+": "+e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Thread that services all the server and client channels.
+   */
+  @Override
+  public void run()
+  {
+    try
+    {
+      while( selector.isOpen() )
+      {
+        selector.select();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while( keys.hasNext() )
+        {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try
+          {
+            if( !key.isValid() )
+            {
+              continue;
+            }
+            if( key.isAcceptable() )
+            {
+              accept(key);
+            }
+            else
+            {
+              if( key.isReadable() )
+              {
+                read(key);
+              }
+              if( key.isValid() && key.isWritable() )
+              {
+                write(key);
+              }
+            }
+          }
+          catch(IOException e)
+          {
+            UO.Debug(e);
+            close(key);
+          }
+        }
+      }
+    }
+    catch(IOException e)
+    {
+      UO.Error("NetPlot NIO server: "+e);
+    }
+  }
+
+  /**
+   * Accept a client connection on one of the chart ports.
+   */
+  private void accept(SelectionKey key) throws IOException
+  {
+    ServerSocketChannel serverChannel = (ServerSocketChannel)key.channel();
+    SocketChannel channel = serverChannel.accept();
+    if( channel == null )
+    {
+      return;
+    }
+    UO.Info(channel.socket().getInetAddress()+" connected to the server");
+    int panelIndex = ((Integer)key.attachment()).intValue();
+    channel.configureBlocking(false);
+    NetPlotConnection connection = new NetPlotConnection(panelIndex, maxPlotCount);
+    SelectionKey clientKey = channel.register(selector, SelectionKey.OP_READ, connection);
+    connection.open(channel.socket().getRemoteSocketAddress().toString());
+    write(clientKey);
+  }
+
+  /**
+   * Read the data available from a client and process the complete lines.
+   */
+  private void read(SelectionKey key) throws IOException
+  {
+    SocketChannel channel = (SocketChannel)key.channel();
+    NetPlotConnection connection = (NetPlotConnection)key.attachment();
+    ByteBuffer readBuffer = connection.getReadBuffer();
+    int byteCount = channel.read(readBuffer);
+    if( byteCount < 0 )
+    {
+      connection.endOfInput();
+    }
+    else if( byteCount > 0 )
+    {
+      connection.process();
+    }
+    write(key);
+  }
+
+  /**
+   * Send as much of the response data as the client will accept and update
+   * the interest set of the key accordingly.
+   */
+  private void write(SelectionKey key) throws IOException
+  {
+    SocketChannel channel = (SocketChannel)key.channel();
+    NetPlotConnection connection = (NetPlotConnection)key.attachment();
+    ByteBuffer writeBuffer = connection.getWriteBuffer();
+    writeBuffer.flip();
+    channel.write(writeBuffer);
+    writeBuffer.compact();
+    int pendingByteCount = writeBuffer.position();
+    if( pendingByteCount == 0 && connection.isClosed() )
+    {
+      close(key);
+    }
+    else if( pendingByteCount == 0 )
+    {
+      key.interestOps(SelectionKey.OP_READ);
+    }
+    else if( pendingByteCount > NetPlotNioServer.MAX_PENDING_WRITE_BYTES || connection.isClosed() )
+    {
+      //The client is not reading its responses, stop reading from it until it does.
+      key.interestOps(SelectionKey.OP_WRITE);
+    }
+    else
+    {
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+  }
+
+  /**
+   * Close a client channel.
+   */
+  private void close(SelectionKey key)
+  {
+    if( key.attachment() instanceof NetPlotConnection )
+    {
+      ((NetPlotConnection)key.attachment()).close();
+    }
+    key.cancel();
+    try
+    {
+      key.channel().close();
+    }
+    catch(IOException e) {}
+  }
+
+}
@@ -6,26 +6,30 @@
 
 package netplot;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 
-public class NetPlotSocketHandler extends Thread
+/**
+ * Responsible for serving a client connected to a chart port on its own thread.
+ * The thread is a virtual thread if enabled (see VirtualThreads).
+ */
+public class NetPlotSocketHandler implements Runnable
 {
-  private Socket            socket;
-  private final LineProcessor     lineProcessor;
+  private Socket                    socket;
+  private final NetPlotConnection   connection;
 
   public NetPlotSocketHandler(int panelIndex, int maxPanelIndex)
   {
-    lineProcessor = new LineProcessor(panelIndex, maxPanelIndex);
+    connection = new NetPlotConnection(panelIndex, maxPanelIndex);
   }
 
   public synchronized void handle(Socket socket)
   {
     this.socket=socket;
-    start();
+    VirtualThreads.Start(this, "netplot client "+socket.getRemoteSocketAddress());
   }
 
   /**
@@ -34,59 +38,57 @@ public class NetPlotSocketHandler extends Thread
   @Override
 public void run()
   {
-    String line;
-
-    lineProcessor.initPlot();
-    BufferedReader br=null;
-    PrintWriter    pw=null;
+    InputStream  is=null;
+    OutputStream os=null;
     try
     {
-      br = new BufferedReader( new InputStreamReader(socket.getInputStream()) );
-      pw = new PrintWriter( new PrintWriter(socket.getOutputStream()), true );
-      //Send initial ID message
-      pw.println("netplot_version="+PlotFrame.NETPLOT_VERSION);
+      is = socket.getInputStream();
+      os = socket.getOutputStream();
+      connection.open(socket.getRemoteSocketAddress().toString());
+      sendResponses(os);
 
-      while(true)
+      while( !connection.isClosed() )
       {
-        line = br.readLine();
-        if( line == null )
+        ByteBuffer readBuffer = connection.getReadBuffer();
+        int byteCount = is.read(readBuffer.array(), readBuffer.arrayOffset()+readBuffer.position(), readBuffer.remaining());
+        if( byteCount < 0 )
+        {
+          connection.endOfInput();
+        }
+        else
         {
-          break;
+          readBuffer.position(readBuffer.position()+byteCount);
+          connection.process();
         }
-        lineProcessor.processLine(line);
-        pw.println("OK");
+        sendResponses(os);
       }
     }
-    catch(Exception e)
+    catch(IOException e)
     {
-      String m = e.getLocalizedMessage();
-      //If an error has occurred then send message back to source
-      if( m != null && m.length() > 0 )
-      {
-        pw.println("ERROR: "+m);
-      }
-      else
-      {
-        pw.println("ERROR: unknown");
-      }
       UO.Debug(e);
     }
     finally
     {
-      if( br != null )
-      {
-        try
-        {
-          br.close();
-          br=null;
-        }
-        catch(IOException e) {}
-      }
-      if( pw != null )
+      connection.close();
+      try
       {
-        pw.close();
-        pw=null;
+        socket.close();
       }
+      catch(IOException e) {}
+    }
+  }
+
+  /**
+   * Send all the responses held by the connection to the client.
+   */
+  private void sendResponses(OutputStream os) throws IOException
+  {
+    ByteBuffer writeBuffer = connection.getWriteBuffer();
+    if( writeBuffer.position() > 0 )
+    {
+      os.write(writeBuffer.array(), writeBuffer.arrayOffset(), writeBuffer.position());
+      os.flush();
+      writeBuffer.clear();
     }
   }
 }
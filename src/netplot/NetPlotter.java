@@ -33,6 +33,10 @@ public class NetPlotter
   private boolean   serverRunning;
   public static int basePort;
   public static int maxPlotCount;
+  public static boolean nioMode;
+  public static boolean headlessMode;
+  public static boolean sharedMode;
+  public static File imageFile;
   public Vector<NetPlotSocketHandler> netPlotSocketHandlers = new Vector<NetPlotSocketHandler>();
   
   /**
@@ -44,11 +48,17 @@ public class NetPlotter
   
   /**
    * Start the all the server threads. Each server thread is associated with the server port, which in turn is associated with a graph.
+   * In NIO mode a single thread serves all the server ports and all the connected clients.
    * 
    */
   public void startServers()
   {
-    class ServerThread extends Thread
+    if( nioMode )
+    {
+      startNioServer();
+      return;
+    }
+    class ServerThread implements Runnable
     {
       private int port;
       public ServerThread(int port)
@@ -63,11 +73,28 @@ public class NetPlotter
     UO.Info("You may connect netplot clients to TCP/IP ports "+basePort+"-"+(basePort+maxPlotCount-1));
     for( int i= 0 ; i<maxPlotCount ; i++ )
     {
-      ServerThread serverThread = new ServerThread(basePort+i);
-      serverThread.start();
+      VirtualThreads.Start(new ServerThread(basePort+i), "netplot server "+(basePort+i));
     }
   }
   
+  /**
+   * Start the single thread NIO server that serves all the chart ports.
+   */
+  public void startNioServer()
+  {
+    UO.Info("You may connect netplot clients to TCP/IP ports "+basePort+"-"+(basePort+maxPlotCount-1));
+    NetPlotNioServer nioServer = new NetPlotNioServer(basePort, maxPlotCount);
+    try
+    {
+      nioServer.open();
+      nioServer.start();
+    }
+    catch(IOException e)
+    {
+      UO.Error("Failed to start the NIO server: "+e);
+    }
+  }
+
   /**
    * When started the server thread will attempt to serve FileTransferHandlers the connected sockets.
    */
@@ -93,7 +120,10 @@ public class NetPlotter
     }
     catch(IOException e)
     {
-      UO.Debug("TCP port "+port+": "+e);
+      if( UO.IsDebugEnabled() )
+      {
+        UO.Debug("TCP port "+port+": "+e);
+      }
     }
   }
   
@@ -186,9 +216,67 @@ public class NetPlotter
     UO.Info("-p : Followed by the TCP/IP base port (default=9600).");
     UO.Info("     This is the TCP/IP port used to plot on the first chart");
     UO.Info("-m : Followed by the max number of charts (default=10). ");
+    UO.Info("-nio : Serve all the chart ports and clients from a single thread.");
+    UO.Info("-headless : Run without a display. The charts are only drawn when saved");
+    UO.Info("            to the -png file.");
+    UO.Info("-png : Followed by the file to save an image of the charts to (png or gif).");
+    UO.Info("       The capture command saves the image (default=netplot.png in headless mode).");
+    UO.Info("-png_period : Followed by the period in seconds at which the -png file is saved.");
+    UO.Info("-png_size : Followed by the <width>x<height> of the headless image (default=");
+    UO.Info("            "+HeadlessPlotFrame.DEFAULT_WIDTH+"x"+HeadlessPlotFrame.DEFAULT_HEIGHT+").");
+    UO.Info("-metrics_port : Followed by the TCP/IP port on which the metrics are served over");
+    UO.Info("                HTTP (http://127.0.0.1:<port>"+MetricsServer.PATH+") in the Prometheus text format.");
+    UO.Info("-shared : Many clients may add plots and values to the chart of a TCP/IP port.");
+    UO.Info("          The chart is kept when they disconnect. Plots added with the same");
+    UO.Info("          plot_name are shared by the clients.");
+    UO.Info("-virtual_threads : Serve each TCP/IP port and client on a virtual thread if");
+    UO.Info("                   supported by the Java runtime (Java 21 or later).");
+    UO.Info("-f : Followed by a file of netplot lines (commands and values) to load into a chart.");
+    UO.Info("-port : Followed by the TCP/IP port of the chart that the -f file is loaded into");
+    UO.Info("        (default=the base port).");
+    UO.Info("-record : Followed by the file to record the commands and values received on");
+    UO.Info("          all the TCP/IP ports to.");
+    UO.Info("-replay : Followed by a file recorded with -record to replay to the charts.");
+    UO.Info("-speed : Followed by the replay speed, 1 = as recorded (default), 0 = max speed.");
+    UO.Info("-replay_start : Followed by the time in seconds from the start of the recording");
+    UO.Info("                at which to start the replay (default=0).");
+    UO.Info("-status_history : Followed by the number of status messages held in the");
+    UO.Info("                  message history (default="+StatusBar.DEFAULT_HISTORY_LINES+").");
+    UO.Info("-d : Enable debug messages.");
     UO.Info("-h : This help text. ");
   }
   
+  /**
+   * Save an image of the charts to the image file periodically.
+   */
+  private static void StartImageTimer(int periodMillis)
+  {
+    UO.Info("Saving the charts to "+imageFile+" every "+periodMillis+" ms");
+    javax.swing.Timer imageTimer = new javax.swing.Timer(periodMillis, new java.awt.event.ActionListener()
+    {
+      private String lastError;
+      public void actionPerformed(java.awt.event.ActionEvent e)
+      {
+        try
+        {
+          UO.SaveImage(imageFile);
+          lastError=null;
+        }
+        catch(NetPlotException ex)
+        {
+          //Only report an error once rather than every period
+          if( !ex.getLocalizedMessage().equals(lastError) )
+          {
+            lastError=ex.getLocalizedMessage();
+            UO.Error(lastError);
+          }
+        }
+      }
+    });
+    imageTimer.setCoalesce(true);
+    imageTimer.start();
+  }
+
   public static void main(String args[])
   {
     boolean guiInputMode=false;
@@ -196,6 +284,28 @@ public class NetPlotter
     maxPlotCount=100;
     boolean readBasePort=false;
     boolean readMaxPlotCount=false;
+    boolean readImageFile=false;
+    boolean readImagePeriod=false;
+    boolean readImageSize=false;
+    boolean readMetricsPort=false;
+    int metricsPort=0;
+    boolean readStatusHistory=false;
+    boolean virtualThreads=false;
+    boolean readRecordFile=false;
+    boolean readReplayFile=false;
+    boolean readReplaySpeed=false;
+    boolean readReplayStart=false;
+    boolean readLoadFile=false;
+    boolean readLoadPort=false;
+    File loadFile=null;
+    int loadPort=0;
+    File recordFile=null;
+    File replayFile=null;
+    double replaySpeed=1;
+    double replayStartSeconds=0;
+    double imagePeriodSeconds=0;
+    int imageWidth=HeadlessPlotFrame.DEFAULT_WIDTH;
+    int imageHeight=HeadlessPlotFrame.DEFAULT_HEIGHT;
     
     UO.Info("Netplot server version "+PlotFrame.NETPLOT_VERSION);
     
@@ -225,6 +335,120 @@ public class NetPlotter
         }
         catch(NumberFormatException e) {}
       }
+      if( readImageFile )
+      {
+        imageFile = new File(arg);
+        readImageFile=false;
+        continue;
+      }
+      if( readLoadFile )
+      {
+        loadFile = new File(arg);
+        readLoadFile=false;
+        continue;
+      }
+      if( readLoadPort )
+      {
+        try
+        {
+          loadPort=Integer.parseInt(arg);
+          if( loadPort > 0 && loadPort < 65536 )
+          {
+            readLoadPort=false;
+          }
+        }
+        catch(NumberFormatException e) {}
+      }
+      if( readRecordFile )
+      {
+        recordFile = new File(arg);
+        readRecordFile=false;
+        continue;
+      }
+      if( readReplayFile )
+      {
+        replayFile = new File(arg);
+        readReplayFile=false;
+        continue;
+      }
+      if( readReplaySpeed )
+      {
+        try
+        {
+          replaySpeed=Double.parseDouble(arg);
+          if( replaySpeed >= 0 )
+          {
+            readReplaySpeed=false;
+          }
+        }
+        catch(NumberFormatException e) {}
+      }
+      if( readReplayStart )
+      {
+        try
+        {
+          replayStartSeconds=Double.parseDouble(arg);
+          if( replayStartSeconds >= 0 )
+          {
+            readReplayStart=false;
+          }
+        }
+        catch(NumberFormatException e) {}
+      }
+      if( readImagePeriod )
+      {
+        try
+        {
+          imagePeriodSeconds=Double.parseDouble(arg);
+          if( imagePeriodSeconds >= 0.001 )
+          {
+            readImagePeriod=false;
+          }
+        }
+        catch(NumberFormatException e) {}
+      }
+      if( readImageSize )
+      {
+        String size[] = arg.toLowerCase().split("x");
+        try
+        {
+          if( size.length == 2 )
+          {
+            imageWidth=Integer.parseInt(size[0]);
+            imageHeight=Integer.parseInt(size[1]);
+            if( imageWidth > 0 && imageHeight > 0 )
+            {
+              readImageSize=false;
+            }
+          }
+        }
+        catch(NumberFormatException e) {}
+      }
+      if( readMetricsPort )
+      {
+        try
+        {
+          metricsPort=Integer.parseInt(arg);
+          if( metricsPort > 0 && metricsPort < 65536 )
+          {
+            readMetricsPort=false;
+          }
+        }
+        catch(NumberFormatException e) {}
+      }
+      if( readStatusHistory )
+      {
+        try
+        {
+          int statusHistory=Integer.parseInt(arg);
+          if( statusHistory > 0 )
+          {
+            StatusBar.SetHistoryLines(statusHistory);
+            readStatusHistory=false;
+          }
+        }
+        catch(NumberFormatException e) {}
+      }
       if( arg.equals("-h") )
       {
         NetPlotter.Usage();
@@ -242,6 +466,70 @@ public class NetPlotter
       {
         readMaxPlotCount=true;
       }
+      if( arg.equals("-nio") )
+      {
+        nioMode=true;
+      }
+      if( arg.equals("-headless") )
+      {
+        headlessMode=true;
+      }
+      if( arg.equals("-png") )
+      {
+        readImageFile=true;
+      }
+      if( arg.equals("-png_period") )
+      {
+        readImagePeriod=true;
+      }
+      if( arg.equals("-png_size") )
+      {
+        readImageSize=true;
+      }
+      if( arg.equals("-metrics_port") )
+      {
+        readMetricsPort=true;
+      }
+      if( arg.equals("-shared") )
+      {
+        sharedMode=true;
+      }
+      if( arg.equals("-virtual_threads") )
+      {
+        virtualThreads=true;
+      }
+      if( arg.equals("-f") )
+      {
+        readLoadFile=true;
+      }
+      if( arg.equals("-port") )
+      {
+        readLoadPort=true;
+      }
+      if( arg.equals("-record") )
+      {
+        readRecordFile=true;
+      }
+      if( arg.equals("-replay") )
+      {
+        readReplayFile=true;
+      }
+      if( arg.equals("-speed") )
+      {
+        readReplaySpeed=true;
+      }
+      if( arg.equals("-replay_start") )
+      {
+        readReplayStart=true;
+      }
+      if( arg.equals("-status_history") )
+      {
+        readStatusHistory=true;
+      }
+      if( arg.equals("-d") )
+      {
+        UO.EnableDebug(true);
+      }
     }
     if( readBasePort )
     {
@@ -253,13 +541,110 @@ public class NetPlotter
       UO.Error("Unable to read a max chart count (1-1000).");
       System.exit(-1);
     }
-    UO.EnableDebug(true);
+    if( readImageFile )
+    {
+      UO.Error("Unable to read the image file.");
+      System.exit(-1);
+    }
+    if( readImagePeriod )
+    {
+      UO.Error("Unable to read a valid (>= 0.001 seconds) image save period.");
+      System.exit(-1);
+    }
+    if( readImageSize )
+    {
+      UO.Error("Unable to read a valid <width>x<height> image size.");
+      System.exit(-1);
+    }
+    if( readMetricsPort )
+    {
+      UO.Error("Unable to read a valid (1-65535) metrics TCP/IP port.");
+      System.exit(-1);
+    }
+    if( readLoadFile )
+    {
+      UO.Error("Unable to read the file to load.");
+      System.exit(-1);
+    }
+    if( readLoadPort )
+    {
+      UO.Error("Unable to read a valid (1-65535) TCP/IP port to load the file to.");
+      System.exit(-1);
+    }
+    if( readRecordFile )
+    {
+      UO.Error("Unable to read the record file.");
+      System.exit(-1);
+    }
+    if( readReplayFile )
+    {
+      UO.Error("Unable to read the replay file.");
+      System.exit(-1);
+    }
+    if( readReplaySpeed )
+    {
+      UO.Error("Unable to read a valid (>= 0) replay speed.");
+      System.exit(-1);
+    }
+    if( readReplayStart )
+    {
+      UO.Error("Unable to read a valid (>= 0 seconds) replay start time.");
+      System.exit(-1);
+    }
+    if( loadFile != null )
+    {
+      if( loadPort == 0 )
+      {
+        loadPort=basePort;
+      }
+      if( loadPort < basePort || loadPort >= basePort+maxPlotCount )
+      {
+        UO.Error("The -port option must be a TCP/IP port from "+basePort+" to "+(basePort+maxPlotCount-1)+".");
+        System.exit(-1);
+      }
+    }
+    if( recordFile != null && replayFile != null && recordFile.getAbsoluteFile().equals(replayFile.getAbsoluteFile()) )
+    {
+      UO.Error("Cannot record to the file being replayed.");
+      System.exit(-1);
+    }
+    if( readStatusHistory )
+    {
+      UO.Error("Unable to read a valid (> 0) number of status history messages.");
+      System.exit(-1);
+    }
+    if( headlessMode )
+    {
+      if( guiInputMode )
+      {
+        UO.Error("The -g and -headless options cannot be used together.");
+        System.exit(-1);
+      }
+      //Must be set before any AWT classes are used
+      System.setProperty("java.awt.headless", "true");
+      if( imageFile == null )
+      {
+        imageFile = new File("netplot.png");
+      }
+    }
+    if( imagePeriodSeconds > 0 && imageFile == null )
+    {
+      UO.Error("The -png_period option requires the -png option.");
+      System.exit(-1);
+    }
     NetPlotter networkPlotter = new NetPlotter();
     if( guiInputMode )
     {
       networkPlotter.userInputServer();
     }
-    UO.InitWindow();
+    if( headlessMode )
+    {
+      UO.InitHeadless(imageWidth, imageHeight);
+    }
+    else
+    {
+      UO.InitWindow();
+    }
     networkPlotter.setBasePort(basePort);
     
     //Check the basePort is available
@@ -271,10 +656,94 @@ public class NetPlotter
     }
     catch(IOException e)
     {
-        JOptionPane.showMessageDialog(null, "TCP port "+basePort+": "+e, "Error", JOptionPane.ERROR_MESSAGE);
+        if( headlessMode )
+        {
+          UO.Error("TCP port "+basePort+": "+e);
+        }
+        else
+        {
+          JOptionPane.showMessageDialog(null, "TCP port "+basePort+": "+e, "Error", JOptionPane.ERROR_MESSAGE);
+        }
 	System.exit(-1);
     }
+    if( virtualThreads && !nioMode )
+    {
+      if( VirtualThreads.Enable() )
+      {
+        UO.Info("Serving the TCP/IP ports and clients on virtual threads");
+      }
+      else
+      {
+        UO.Info("Virtual threads are not supported by this Java runtime, using platform threads");
+      }
+    }
+    Replayer replayer=null;
+    if( replayFile != null )
+    {
+      try
+      {
+        replayer = new Replayer(replayFile, replaySpeed, replayStartSeconds, maxPlotCount);
+      }
+      catch(IOException e)
+      {
+        UO.Error("Failed to open "+replayFile+": "+e.getLocalizedMessage());
+        System.exit(-1);
+      }
+      catch(NetPlotException e)
+      {
+        UO.Error(e.getLocalizedMessage());
+        System.exit(-1);
+      }
+    }
+    if( recordFile != null )
+    {
+      try
+      {
+        Recorder.Start(recordFile);
+        UO.Info("Recording to "+recordFile);
+      }
+      catch(IOException e)
+      {
+        UO.Error("Failed to record to "+recordFile+": "+e.getLocalizedMessage());
+        System.exit(-1);
+      }
+    }
     networkPlotter.startServers();
+    if( replayer != null )
+    {
+      new Thread(replayer, "Replay").start();
+    }
+    if( loadFile != null )
+    {
+      new Thread(new FileLoader(loadFile, loadPort-basePort), "FileLoader").start();
+    }
+    if( metricsPort > 0 )
+    {
+      try
+      {
+        MetricsServer.Start(metricsPort);
+      }
+      catch(IOException e)
+      {
+        UO.Error("Failed to start the metrics server on TCP port "+metricsPort+": "+e);
+      }
+    }
+    if( imagePeriodSeconds > 0 )
+    {
+      NetPlotter.StartImageTimer((int)Math.round(imagePeriodSeconds*1000));
+    }
+    //Virtual threads are daemon threads, so keep the JVM running as the platform server threads would
+    while( VirtualThreads.IsEnabled() )
+    {
+      try
+      {
+        Thread.sleep(Long.MAX_VALUE);
+      }
+      catch(InterruptedException e)
+      {
+        break;
+      }
+    }
   }
   
 }
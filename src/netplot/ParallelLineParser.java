@@ -0,0 +1,121 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Responsible for parsing blocks of lines on many threads while the results are
+ * taken in the order the blocks were submitted.
+ *
+ * The blocks are parsed on a pool of daemon threads, shared by all the
+ * ParallelLineParser objects, with a thread per processor. The ParsedLines
+ * objects are reused once they have been applied (see free()).
+ */
+public class ParallelLineParser
+{
+  private static ExecutorService                    Pool;
+  private static final int                          Parallelism=Runtime.getRuntime().availableProcessors();
+  private final LinkedList<Future<ParsedLines>>     pending = new LinkedList<Future<ParsedLines>>();
+  private final ConcurrentLinkedQueue<ParsedLines>  freeParsedLines = new ConcurrentLinkedQueue<ParsedLines>();
+
+  /**
+   * @return The pool that the lines are parsed on.
+   */
+  public synchronized static ExecutorService GetPool()
+  {
+    if( ParallelLineParser.Pool == null )
+    {
+      ParallelLineParser.Pool = Executors.newFixedThreadPool(ParallelLineParser.Parallelism, new ThreadFactory()
+      {
+        public Thread newThread(Runnable runnable)
+        {
+          //The pool must not stop the server from exiting
+          Thread thread = new Thread(runnable, "ParallelLineParser");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return ParallelLineParser.Pool;
+  }
+
+  /**
+   * @return The number of blocks that may be parsed at the same time.
+   */
+  public static int GetParallelism()
+  {
+    return ParallelLineParser.Parallelism;
+  }
+
+  /**
+   * Start parsing the lines held from buffer[start] up to but not including
+   * buffer[end]. The buffer must not be changed until the result has been taken.
+   */
+  public void submit(final ByteBuffer buffer, final int start, final int end)
+  {
+    ParsedLines parsedLines = freeParsedLines.poll();
+    if( parsedLines == null )
+    {
+      parsedLines = new ParsedLines();
+    }
+    final ParsedLines blockParsedLines = parsedLines;
+    pending.add( ParallelLineParser.GetPool().submit(new Callable<ParsedLines>()
+    {
+      public ParsedLines call()
+      {
+        blockParsedLines.parse(buffer, start, end);
+        return blockParsedLines;
+      }
+    }));
+  }
+
+  /**
+   * @return The number of blocks submitted whose result has not been taken.
+   */
+  public int getPendingCount()
+  {
+    return pending.size();
+  }
+
+  /**
+   * Wait for the oldest block submitted to be parsed.
+   *
+   * @return The result, to be passed to free() once it has been applied.
+   */
+  public ParsedLines take() throws InterruptedException
+  {
+    Future<ParsedLines> future = pending.removeFirst();
+    try
+    {
+      return future.get();
+    }
+    catch(ExecutionException e)
+    {
+      //Parse errors are held in the ParsedLines so this is not expected
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Allow a ParsedLines object to be reused.
+   */
+  public void free(ParsedLines parsedLines)
+  {
+    parsedLines.clear();
+    freeParsedLines.add(parsedLines);
+  }
+
+}
@@ -0,0 +1,23 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+/**
+ * Interface implemented by the objects that ParsedLines.apply() passes the
+ * result of each line to.
+ */
+public interface ParsedLineHandler
+{
+  //Called for a line that does not hold plot values, E.G a command.
+  public void processLine(long lineNumber, String line) throws Exception;
+  //Called when the plot values of a line (if any) have been added.
+  public void lineProcessed(long lineNumber);
+  //Called when a line could not be parsed or processed.
+  public void lineFailed(long lineNumber, Exception e);
+  //If true the remaining lines are not processed.
+  public boolean isClosed();
+}
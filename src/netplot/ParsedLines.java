@@ -0,0 +1,321 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Responsible for parsing a block of lines of text and holding the plot values
+ * they contain until they are added to a chart by apply().
+ *
+ * Parsing does not change any chart, so many blocks may be parsed at the same
+ * time on different threads (one ParsedLines object per block). The blocks are
+ * then applied one after another in the order they were read. The values are
+ * held in columns of primitives. Lines that are not plot values (E.G commands)
+ * are held as text and passed to a ParsedLineHandler when the block is applied,
+ * as are the lines that could not be parsed. As LineProcessor.processLine(),
+ * the lines that are not commands are ignored until a chart has been created.
+ */
+public class ParsedLines
+{
+  public static final int       INITIAL_LINE_CAPACITY=1024;
+  public static final int       INITIAL_VALUE_CAPACITY=4096;
+  public static final int       INITIAL_TEXT_CAPACITY=16;
+  private final ValueParser     valueParser = new ValueParser();
+  private final TimeStampParser timeStampParser = new TimeStampParser(valueParser);
+  private final ByteLine        byteLine = new ByteLine();
+  //The number of values held once each line had been parsed
+  int                           lineValueEnds[] = new int[ParsedLines.INITIAL_LINE_CAPACITY];
+  int                           lineCount;
+  //The values, valueTypes are GenericPlotPanel.Y_VALUES, XY_VALUES or TIME_VALUES
+  int                           valueTypes[] = new int[ParsedLines.INITIAL_VALUE_CAPACITY];
+  int                           plotIndexes[] = new int[ParsedLines.INITIAL_VALUE_CAPACITY];
+  long                          times[] = new long[ParsedLines.INITIAL_VALUE_CAPACITY];
+  double                        xValues[] = new double[ParsedLines.INITIAL_VALUE_CAPACITY];
+  double                        yValues[] = new double[ParsedLines.INITIAL_VALUE_CAPACITY];
+  int                           valueCount;
+  //The lines held as text, the index of the line and the text or the parse error
+  int                           textLineIndexes[] = new int[ParsedLines.INITIAL_TEXT_CAPACITY];
+  String                        texts[] = new String[ParsedLines.INITIAL_TEXT_CAPACITY];
+  Exception                     errors[] = new Exception[ParsedLines.INITIAL_TEXT_CAPACITY];
+  int                           textCount;
+
+  /**
+   * @return The number of lines parsed.
+   */
+  public int getLineCount()
+  {
+    return lineCount;
+  }
+
+  /**
+   * @return The number of plot values parsed.
+   */
+  public int getValueCount()
+  {
+    return valueCount;
+  }
+
+  /**
+   * Remove the lines parsed so that the object can be reused.
+   */
+  public void clear()
+  {
+    lineCount=0;
+    valueCount=0;
+    for( int i=0 ; i<textCount ; i++ )
+    {
+      texts[i]=null;
+      errors[i]=null;
+    }
+    textCount=0;
+  }
+
+  /**
+   * Parse the lines held from buffer[start] up to but not including buffer[end].
+   * The last line need not end with a new line character.
+   */
+  public void parse(ByteBuffer buffer, int start, int end)
+  {
+    int lineStart=start;
+    for( int i=start ; i<end ; i++ )
+    {
+      if( buffer.get(i) == '\n' )
+      {
+        parseLine(buffer, lineStart, i);
+        lineStart=i+1;
+      }
+    }
+    if( lineStart < end )
+    {
+      parseLine(buffer, lineStart, end);
+    }
+  }
+
+  /**
+   * Parse a single line, buffer[start] up to but not including buffer[end].
+   * The same lines are treated as values as by LineProcessor.processLine().
+   */
+  private void parseLine(ByteBuffer buffer, int start, int end)
+  {
+    //Remove the CR from CRLF line endings
+    if( end > start && buffer.get(end-1) == '\r' )
+    {
+      end--;
+    }
+    byteLine.set(buffer, start, end);
+    try
+    {
+      CharSequence line = byteLine;
+      char firstChar = ( end > start ) ? line.charAt(0) : 0;
+      if( Character.isLetter(firstChar) )
+      {
+        //A command, or NaN or Infinity
+        String text = line.toString();
+        if( LineProcessor.IsCommand(text) || text.equals(KeyWords.CAPTURE) )
+        {
+          addText(text, null);
+          return;
+        }
+        line=text;
+      }
+      if( end == start || firstChar == '#' || firstChar == '/' )
+      {
+        //Ignore empty lines and comments
+      }
+      else if( byteLine.indexOf(':') != -1 )
+      {
+        //If the line contains chars indicating it contains a time stamp
+        if( byteLine.indexOf(LineProcessor.TIMESTAMP_DELIM.charAt(0)) != -1 || byteLine.indexOf(TimeStampParser.EPOCH_PREFIX) != -1 )
+        {
+          timeStampParser.parse(line);
+          addValue(GenericPlotPanel.TIME_VALUES, timeStampParser.getPlotIndex(), timeStampParser.getEpochMillis(), 0, timeStampParser.getValue());
+        }
+        else
+        {
+          int count = valueParser.parse(line);
+          double values[] = valueParser.getValues();
+          if( count%3 != 0 )
+          {
+            throw new NetPlotException(line+" is invalid. Lines containing : must hold plot index:x value:y value");
+          }
+          for( int i=0 ; i<count ; i=i+3 )
+          {
+            addValue(GenericPlotPanel.XY_VALUES, (int)values[i], 0, values[i+1], values[i+2]);
+          }
+        }
+      }
+      else
+      {
+        int count = valueParser.parse(line);
+        double values[] = valueParser.getValues();
+        for( int plotIndex=0 ; plotIndex<count ; plotIndex++ )
+        {
+          addValue(GenericPlotPanel.Y_VALUES, plotIndex, 0, 0, values[plotIndex]);
+        }
+      }
+    }
+    catch(Exception e)
+    {
+      //Remove any values of the line added before the error
+      valueCount = ( lineCount > 0 ) ? lineValueEnds[lineCount-1] : 0;
+      addText(byteLine.toString(), e);
+      return;
+    }
+    endLine();
+  }
+
+  private void endLine()
+  {
+    if( lineCount == lineValueEnds.length )
+    {
+      int newLineValueEnds[] = new int[lineCount*2];
+      System.arraycopy(lineValueEnds, 0, newLineValueEnds, 0, lineCount);
+      lineValueEnds=newLineValueEnds;
+    }
+    lineValueEnds[lineCount++]=valueCount;
+  }
+
+  /**
+   * Hold a line as text.
+   *
+   * @param error The error parsing the line or null if the line is to be processed as text.
+   */
+  private void addText(String text, Exception error)
+  {
+    if( textCount == texts.length )
+    {
+      int capacity = textCount*2;
+      int newTextLineIndexes[] = new int[capacity];
+      String newTexts[] = new String[capacity];
+      Exception newErrors[] = new Exception[capacity];
+      System.arraycopy(textLineIndexes, 0, newTextLineIndexes, 0, textCount);
+      System.arraycopy(texts, 0, newTexts, 0, textCount);
+      System.arraycopy(errors, 0, newErrors, 0, textCount);
+      textLineIndexes=newTextLineIndexes;
+      texts=newTexts;
+      errors=newErrors;
+    }
+    textLineIndexes[textCount]=lineCount;
+    texts[textCount]=text;
+    errors[textCount]=error;
+    textCount++;
+    endLine();
+  }
+
+  private void addValue(int valueType, int plotIndex, long time, double xValue, double yValue)
+  {
+    if( valueCount == yValues.length )
+    {
+      int capacity = valueCount*2;
+      int newValueTypes[] = new int[capacity];
+      int newPlotIndexes[] = new int[capacity];
+      long newTimes[] = new long[capacity];
+      double newXValues[] = new double[capacity];
+      double newYValues[] = new double[capacity];
+      System.arraycopy(valueTypes, 0, newValueTypes, 0, valueCount);
+      System.arraycopy(plotIndexes, 0, newPlotIndexes, 0, valueCount);
+      System.arraycopy(times, 0, newTimes, 0, valueCount);
+      System.arraycopy(xValues, 0, newXValues, 0, valueCount);
+      System.arraycopy(yValues, 0, newYValues, 0, valueCount);
+      valueTypes=newValueTypes;
+      plotIndexes=newPlotIndexes;
+      times=newTimes;
+      xValues=newXValues;
+      yValues=newYValues;
+    }
+    valueTypes[valueCount]=valueType;
+    plotIndexes[valueCount]=plotIndex;
+    times[valueCount]=time;
+    xValues[valueCount]=xValue;
+    yValues[valueCount]=yValue;
+    valueCount++;
+  }
+
+  /**
+   * Add the values parsed to a LineProcessor and pass the lines held as text to
+   * the handler, in the order the lines were read. If an error occurs adding the
+   * values of a line the rest of the values of that line are not added. Stops
+   * if the handler is closed.
+   *
+   * @param firstLineNumber The line number of the first line parsed.
+   */
+  public void apply(LineProcessor lineProcessor, long firstLineNumber, ParsedLineHandler handler)
+  {
+    int valueIndex=0;
+    int textIndex=0;
+    for( int lineIndex=0 ; lineIndex<lineCount && !handler.isClosed() ; lineIndex++ )
+    {
+      long lineNumber = firstLineNumber+lineIndex;
+      try
+      {
+        if( textIndex < textCount && textLineIndexes[textIndex] == lineIndex )
+        {
+          String text = texts[textIndex];
+          Exception error = errors[textIndex];
+          textIndex++;
+          if( error != null && !lineProcessor.hasChart() )
+          {
+            //As LineProcessor.processLine(), a line that is not a command is ignored until a chart is created
+            handler.lineProcessed(lineNumber);
+          }
+          else if( error != null )
+          {
+            handler.lineFailed(lineNumber, error);
+          }
+          else
+          {
+            handler.processLine(lineNumber, text);
+          }
+          continue;
+        }
+        int lineValueEnd = lineValueEnds[lineIndex];
+        if( !lineProcessor.hasChart() )
+        {
+          //As LineProcessor.processLine(), values are ignored until a chart is created
+          valueIndex=lineValueEnd;
+          handler.lineProcessed(lineNumber);
+          continue;
+        }
+        try
+        {
+          if( lineProcessor.isRowChart() && valueIndex < lineValueEnd && valueTypes[valueIndex] == GenericPlotPanel.Y_VALUES )
+          {
+            //All the values of the line are a row of a waterfall chart
+            lineProcessor.addRow(yValues, valueIndex, lineValueEnd-valueIndex);
+            valueIndex=lineValueEnd;
+          }
+          for( ; valueIndex<lineValueEnd ; valueIndex++ )
+          {
+            if( valueTypes[valueIndex] == GenericPlotPanel.TIME_VALUES )
+            {
+              lineProcessor.addTimePlotValue(plotIndexes[valueIndex], times[valueIndex], yValues[valueIndex]);
+            }
+            else if( valueTypes[valueIndex] == GenericPlotPanel.XY_VALUES )
+            {
+              lineProcessor.addXYPlotValue(plotIndexes[valueIndex], xValues[valueIndex], yValues[valueIndex]);
+            }
+            else
+            {
+              lineProcessor.addPlotValue(plotIndexes[valueIndex], yValues[valueIndex]);
+            }
+          }
+        }
+        finally
+        {
+          valueIndex=lineValueEnd;
+        }
+        handler.lineProcessed(lineNumber);
+      }
+      catch(Exception e)
+      {
+        handler.lineFailed(lineNumber, e);
+      }
+    }
+  }
+
+}
@@ -27,6 +27,7 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.Container;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
@@ -34,6 +35,66 @@ import javax.imageio.ImageIO;
 /*
  * Change log
  *
+ * 2.6
+ * - Add -nio command line option. A single thread using a NIO Selector then serves
+ *   all the chart ports and connected clients rather than a thread per port and a
+ *   thread per connection.
+ * - Add set ack_mode=line|none|batch|N and enable_ack 0|1 so that clients do not
+ *   have to wait for an OK response to every line sent.
+ * - Add a binary protocol. A client may send the 0xB7 byte at the start of a line to 
+ *   switch the connection to binary frames holding raw double values. The Java 
+ *   client supports this via NetplotClient.enableBinaryMode().
+ * - Parse time stamped lines without using Scanner or Calendar objects and add the 
+ *   plot index:@epoch milliseconds:value time stamp format.
+ * - Hold time series points in bounded primitive ring buffers. max_age_seconds is
+ *   now enforced and the new max_point_count attribute limits the points per plot.
+ * - Redraw the charts from a timer on the EDT (set max_fps=N, default 25) rather
+ *   than from the socket threads for every value received.
+ * - Add the values received in a block of data to each plot in a single call when
+ *   the client is not waiting for the response to every line.
+ * - Only draw the first, min, max and last points in each pixel column of time and
+ *   xy plots with more points than can be seen (set enable_decimation=false to disable).
+ * - Add -headless, -png, -png_period and -png_size command line options to run without
+ *   a display and save images of the charts, and the capture command to save an image.
+ * - Record the lines, values, bytes and errors received and the parse, apply and render
+ *   times of each TCP/IP port and connection. These are shown by the File/Metrics menu
+ *   option and served in the Prometheus text format when -metrics_port is used.
+ * - Status messages are queued and shown by a single thread so that the threads
+ *   receiving data do not wait on each other. Lines received are no longer shown by
+ *   default, use set echo_lines=true on a port to show them and -d for debug messages.
+ * - Hold the status message history in a fixed size ring (-status_history N messages)
+ *   shown in batches by a timer on the EDT. Repeated messages are counted rather than
+ *   each being shown.
+ * - Only change the charts and the frame on the EDT. Commands are run on the EDT and
+ *   values received are held per chart and added to the chart datasets on the EDT
+ *   before the chart is redrawn.
+ * - Add -virtual_threads command line option to serve each TCP/IP port and client on
+ *   a virtual thread when run on Java 21 or later.
+ * - Add -shared command line option. Many clients may then add plots and values to
+ *   the chart of a TCP/IP port without replacing it. Each client uses its own plot
+ *   indexes and plots with the same plot_name are shared.
+ * - Add -record command line option to record the commands and values received to a
+ *   file of blocks of primitive values, and -replay, -speed and -replay_start to replay
+ *   a recording to the charts at the recorded rate, faster or as fast as possible.
+ * - Add -f and -port command line options to load a file of netplot lines into a chart.
+ *   The file is memory mapped and parsed in parallel chunks.
+ * - When ack_mode is not line, large blocks of lines received are parsed in parallel
+ *   chunks and then processed in the order of the lines.
+ * - Hold the points of xy plots in arrays of doubles sorted by x value. After a replot
+ *   each point replaces the point at the same position without searching for it and
+ *   the y range of each plot is held rather than found from every point.
+ * - Track the y range of time series and xy plots as points are added and removed so
+ *   that the y axis auto range does not read every point when all points are visible.
+ * - Add set bars=... command and the 'B' binary frame to replace all the bars of a bar
+ *   chart at once. The bars are held in an array of doubles that the frame replaces on
+ *   the EDT so the chart is redrawn once per frame. NetplotClient.setBars() sends them.
+ * - Add set graph=histogram. The samples sent are counted in fixed width bins
+ *   (set bin_count, bin_min and bin_max) or log bins (set enable_log_bins=true) on
+ *   the server so clients do not have to bin them.
+ * - Add set graph=waterfall. Each line of values (or 'R' binary frame) is a row of
+ *   pixels added to the top of the chart, coloured by value. The rows are held in the
+ *   pixels of an image used as a ring rather than drawn by JFreeChart.
+ *
  * 2.5
  * - Use the latest jfreechart 1.0.19
  * - Add check for the netplot baseport
@@ -131,10 +192,10 @@ import javax.imageio.ImageIO;
  * This status bar may be double clicked to get the help text
  * for commands that may be used to plot data.
  */
-public class PlotFrame extends JFrame implements ActionListener
+public class PlotFrame extends JFrame implements ActionListener, PlotFrameInterface
 {
   static final long serialVersionUID=5;
-  public static final double NETPLOT_VERSION=2.5;
+  public static final double NETPLOT_VERSION=2.6;
   String helpLines[] = {
       "* All netplot commands are text strings which makes the client code simple to implement.",
       "* Java and python clients are supplied by default but you may implement you own clients",
@@ -152,6 +213,13 @@ public class PlotFrame extends JFrame implements ActionListener
       "* set "+KeyWords.FRAME_TITLE+"=The Frame Title",
       "* Sets the text in the title bar of the window holding the charts.",
       "* ",
+      "* set "+KeyWords.MAX_FPS+"="+RenderScheduler.DEFAULT_MAX_FPS,
+      "* Sets the max number of times a second that the charts are redrawn (default="+RenderScheduler.DEFAULT_MAX_FPS+").",
+      "* Values received between redraws are all shown when the chart is next redrawn.",
+      "* ",
+      "* set "+KeyWords.ECHO_LINES+"=true",
+      "* Show every line received on this TCP/IP port as a status message (default=false).",
+      "* ",
       "* ",
       "*** CHART SPECIFIC ATTRIBUTES ***",
       "* ",
@@ -164,6 +232,16 @@ public class PlotFrame extends JFrame implements ActionListener
       "* set graph=xy",
       "* Init an X/Y plot graph. Plot may include lines and shapes.",
       "* ",
+      "* set graph="+KeyWords.HISTOGRAM,
+      "* Init a histogram graph. Each value added to a plot is a sample that is counted in the bins",
+      "* of the plot. The chart shows the count of samples in each bin.",
+      "* ",
+      "* set graph="+KeyWords.WATERFALL,
+      "* Init a waterfall graph. Each line of values (E.G the bins of a spectrum) is added as a row at",
+      "* the top of the chart and the rows scroll down. The colour of each pixel shows the size of",
+      "* the value. The colours are scaled from min_scale_value to max_scale_value if autoscale is",
+      "* disabled, else they are scaled from the min to the max value received.",
+      "* ",
       "* init",
       "* Init the graph. This should be called after the set graph= command has been issued.",
       "* ",
@@ -175,6 +253,18 @@ public class PlotFrame extends JFrame implements ActionListener
       "* status messages in the GUI. The messages will not then be shown in the status message history window.",
       "* This may speed up the plotting of data if CPU bound.",
       "* ",
+      "* set "+KeyWords.ACK_MODE+"="+KeyWords.ACK_MODE_LINE,
+      "* Sets when the server acknowledges the lines it receives on this connection.",
+      "* "+KeyWords.ACK_MODE_LINE+"  : OK is sent after every line (default). An error closes the connection.",
+      "* "+KeyWords.ACK_MODE_NONE+"  : Only errors are sent, as ERROR: line <line number>: <message>.",
+      "* "+KeyWords.ACK_MODE_BATCH+" : OK <line count> is sent after each block of data received.",
+      "* N     : OK is sent after every N lines.",
+      "* In all but the line mode errors are sent with the line number and processing continues.",
+      "* In these modes the plot values of many lines are added to the plots together. If this fails",
+      "* (E.G the plot index does not exist) the error is reported against the last line received.",
+      "* This command is always acknowledged with OK. "+KeyWords.ENABLE_ACK+" 0 and "+KeyWords.ENABLE_ACK+" 1",
+      "* may also be used to set the "+KeyWords.ACK_MODE_NONE+" and "+KeyWords.ACK_MODE_LINE+" modes.",
+      "* ",
       "* ",
       "*** PLOT SPECIFIC ATTRIBUTES ***",
       "* ",
@@ -182,7 +272,8 @@ public class PlotFrame extends JFrame implements ActionListener
       "* Set the chart title.",
       "* ",
       "* set "+KeyWords.PLOT_NAME+"=The plot name",
-      "* Set the name of a plot",
+      "* Set the name of a plot. When the server is started with -shared, clients that add",
+      "* plots with the same name add their values to the same plot.",
       "* ",
       "* set "+KeyWords.X_AXIS_NAME+"=X axis name",
       "* Set the name of the x axis. All plots on a graph have the same X axis.",
@@ -210,6 +301,11 @@ public class PlotFrame extends JFrame implements ActionListener
       "* ",
       "* set "+KeyWords.MAX_AGE_SECONDS+"=60",
       "* Only valid on time plots. Sets the max age of the plot. After this period the plot slides off the left side of the chart.",
+      "* Points older than this (relative to the newest point) are removed from the plot.",
+      "* ",
+      "* set "+KeyWords.MAX_POINT_COUNT+"="+GenericPlotPanel.DEFAULT_MAX_POINT_COUNT,
+      "* Only valid on time plots. Sets the max number of points held in each plot. When",
+      "* exceeded the oldest points are removed (default="+GenericPlotPanel.DEFAULT_MAX_POINT_COUNT+").",
       "* ",
       "* set "+KeyWords.ENABLE_LOG_Y_AXIS+"=true",
       "* true/false, enables/disables a logarithmic Y scale. The min and max Y scales values are used.",
@@ -220,6 +316,10 @@ public class PlotFrame extends JFrame implements ActionListener
       "* set "+KeyWords.ENABLE_ZERO_ON_Y_SCALE+"=true",
       "* true/false, enables/disables the inclusion of the value 0 the Y scale when autoscale is enabled.",
       "* ",
+      "* set "+KeyWords.ENABLE_DECIMATION+"=true",
+      "* Only valid on time and xy plots. true/false, enables/disables drawing only the first, min,",
+      "* max and last point in each pixel column when a plot has more points than can be seen (default=true).",
+      "* ",
       "* set "+KeyWords.TICK_COUNT+"=0",
       "* Sets the tick count on the Y axis. A tick will occur at this interval on the Y axis of time, bar and xy charts.",
       "* The default is 0 which will automatically set the Y axis tick count.",
@@ -231,6 +331,32 @@ public class PlotFrame extends JFrame implements ActionListener
       "* Restarts the plotting of plot 0 at the first plot point. The next plot point added will replace the first",
       "* plot point, the next the second, and so on.",
       "* ",
+      "* set "+KeyWords.BARS+"=1.2,3.4,5.6",
+      "* Only valid on bar plots. Replaces all the bars with the values given (one per bar) in a",
+      "* single change, so the chart is redrawn once for the frame rather than once per bar.",
+      "* ",
+      "* set "+KeyWords.BIN_COUNT+"=100",
+      "* Only valid on histogram plots. The number of bins of the plots added after this (default=100),",
+      "* or the number of bins per power of two when log bins are enabled (default=16).",
+      "* ",
+      "* set "+KeyWords.BIN_MIN+"=0",
+      "* set "+KeyWords.BIN_MAX+"=100",
+      "* Only valid on histogram plots. The range of the bins of the plots added after this",
+      "* (default=0 to 100). Samples below the range are counted in the first bin and samples",
+      "* above the range in the last bin.",
+      "* ",
+      "* set "+KeyWords.ENABLE_LOG_BINS+"=false",
+      "* Only valid on histogram plots. true/false, if true each power of two is divided into",
+      "* bin_count bins so all samples above 0 are counted with the same relative precision",
+      "* and shown on a log axis. Samples of 0 or less are ignored (default=false).",
+      "* ",
+      "* set "+KeyWords.ROW_COUNT+"="+WaterfallPlotPanel.DEFAULT_ROW_COUNT,
+      "* Only valid on waterfall plots. The number of rows shown, the oldest row is removed when",
+      "* a row is added to a full chart (default="+WaterfallPlotPanel.DEFAULT_ROW_COUNT+").",
+      "* ",
+      "* "+KeyWords.CAPTURE,
+      "* Saves an image of all the charts to the file given by the -png command line option.",
+      "* ",
       "*** ADDING NUMBERS TO PLOTS ***",
       "* ",
       "* Adding plot points to all plots except xy plots can be done as follows.",
@@ -260,15 +386,36 @@ public class PlotFrame extends JFrame implements ActionListener
       "*  Timestamp=Jan 02 2013 23:10:05 and 587 microseconds",
       "*  value=1.234",
       "* ",
+      "* or, with the time stamp in milliseconds since 1 Jan 1970 UTC",
+      "* 0:@1357168205587:1.234",
+      "* ",
+      "* When plotting to a waterfall plot each line holds all the values of a row, E.G",
+      "* 1.2,3.4,5.6",
+      "* adds a row of three values to the top of the chart.",
+      "* ",
+      "*** BINARY PROTOCOL ***",
+      "* ",
+      "* Sending the byte 0xB7 at the start of a line switches the connection to binary frames",
+      "* (the server responds with OK). All values are big endian. Each frame starts with a type byte.",
+      "* 'L' int byte count, text bytes            : A text line (commands such as set graph=xy).",
+      "* 'V' int plot index, int count, doubles    : Values for plot index, plot index+1, etc.",
+      "* 'X' int plot index, int count, x,y doubles: X/Y values for a plot.",
+      "* 'T' int plot index, int count, long epoch ms,double value pairs: Time series values for a plot.",
+      "* 'B' int count, doubles                    : All the bars of a bar plot (as set "+KeyWords.BARS+"=).",
+      "* 'R' int count, doubles                    : A row of a waterfall plot (as a line of values).",
+      "* Each frame is acknowledged as a line would be in the current "+KeyWords.ACK_MODE+".",
+      "* ",
       };
 
   StatusBar statusBar;
   private final JPanel mainPanel = new JPanel( new BorderLayout() );
   private final JPanel chartPanel = new JPanel();
-  private boolean showStatusMessages=true;
+  private volatile boolean showStatusMessages=true;
   private JMenuBar menuBar;
   private JMenu fileMenu;
   private JMenuItem savePlotsMenuItem;
+  private JMenuItem metricsMenuItem;
+  private MetricsDialog metricsDialog;
   private JFileChooser saveImageJFC = new JFileChooser();
   
   public PlotFrame()
@@ -294,8 +441,12 @@ public class PlotFrame extends JFrame implements ActionListener
     savePlotsMenuItem = new JMenuItem("Save Image", KeyEvent.VK_S);
     savePlotsMenuItem.getAccessibleContext().setAccessibleDescription("Save plots as an image file");
     fileMenu.add(savePlotsMenuItem);
+    metricsMenuItem = new JMenuItem("Metrics", KeyEvent.VK_M);
+    metricsMenuItem.getAccessibleContext().setAccessibleDescription("Show the data received on each TCP/IP port");
+    fileMenu.add(metricsMenuItem);
     setJMenuBar(menuBar);
     savePlotsMenuItem.addActionListener(this);
+    metricsMenuItem.addActionListener(this);
     saveImageJFC.setToolTipText("Save window to a PNG image file.");
     
     try {
@@ -323,6 +474,7 @@ public class PlotFrame extends JFrame implements ActionListener
   public void addPanel(Component panel, int index)
   {
     chartPanel.add(panel,index);
+    chartPanel.revalidate();
   }
 
   public void removePanel(int index)
@@ -401,6 +553,12 @@ public class PlotFrame extends JFrame implements ActionListener
 	  if( e.getSource() == savePlotsMenuItem ) {
 		  captureFrame();
 	  }
+	  else if( e.getSource() == metricsMenuItem ) {
+		  if( metricsDialog == null ) {
+			  metricsDialog = new MetricsDialog(this);
+		  }
+		  metricsDialog.showMetrics();
+	  }
 	  
   }
   
@@ -411,27 +569,12 @@ public class PlotFrame extends JFrame implements ActionListener
       
       try {
     	  int retVal = saveImageJFC.showSaveDialog(null);
-		  int width  = chartPanel.getWidth();
-		  int height = chartPanel.getHeight();
+		  BufferedImage im = createImage();
 		  
-		  if( height > 0  && height > 0 ) {
+		  if( im != null ) {
 			  
 			  if(retVal==JFileChooser.APPROVE_OPTION){
-		          BufferedImage im = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-		          chartPanel.paint(im.getGraphics());
-		          String filename = saveImageJFC.getSelectedFile().getAbsolutePath();
-		          
-		          String fileSuffix = "";
-		          if( filename.toLowerCase().endsWith(".gif") ) {
-		        	  fileSuffix="GIF";
-		          } else if( filename.toLowerCase().endsWith(".png") ) {
-		        	  fileSuffix="PNG";
-		          }
-		          
-		          if( fileSuffix.length() > 0 ) {
-		        	  ImageIO.write(im, fileSuffix, saveImageJFC.getSelectedFile());
-		          }
-		          else {
+		          if( !PlotFrame.WriteImage(im, saveImageJFC.getSelectedFile()) ) {
 		        	  JOptionPane.showMessageDialog(this, "Invalid image file type. File extension must be gif or png.", "Error", JOptionPane.ERROR_MESSAGE);
 		          }
     		  }
@@ -445,4 +588,38 @@ public class PlotFrame extends JFrame implements ActionListener
       }
   }
 
+  /**
+   * @brief Create an image of all the plots in the window.
+   * @return The image or null if the window is to small.
+   */
+  public BufferedImage createImage() {
+	  int width  = chartPanel.getWidth();
+	  int height = chartPanel.getHeight();
+	  if( width <= 0  || height <= 0 ) {
+		  return null;
+	  }
+	  BufferedImage im = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	  chartPanel.paint(im.getGraphics());
+	  return im;
+  }
+
+  /**
+   * @brief Write an image to a file. The file extension (gif or png) sets the image format.
+   * @return false if the file extension is not gif or png.
+   */
+  public static boolean WriteImage(BufferedImage im, File file) throws IOException {
+	  String filename = file.getName().toLowerCase();
+	  String fileSuffix = "";
+	  if( filename.endsWith(".gif") ) {
+		  fileSuffix="GIF";
+	  } else if( filename.endsWith(".png") ) {
+		  fileSuffix="PNG";
+	  }
+	  if( fileSuffix.length() == 0 ) {
+		  return false;
+	  }
+	  ImageIO.write(im, fileSuffix, file);
+	  return true;
+  }
+
 }
@@ -0,0 +1,29 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.awt.Component;
+import java.awt.image.BufferedImage;
+
+/**
+ * Implemented by the objects that hold the charts. This is either a window
+ * (PlotFrame) or, in headless mode, a HeadlessPlotFrame that only draws the
+ * charts into images.
+ */
+public interface PlotFrameInterface
+{
+  public void setTitle(String title);
+  public void addPanel(Component panel, int index);
+  public void removePanel(int index);
+  public int  getPanelCount();
+  public void setChartLayout(int rows, int columns);
+  public void addStatusMessage(String line);
+  public void SetEnableStatusMessages(boolean enabled);
+
+  //Create an image of all the charts. Called on the EDT. Returns null if there is nothing to draw.
+  public BufferedImage createImage();
+}
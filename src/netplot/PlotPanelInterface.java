@@ -20,6 +20,15 @@ public interface PlotPanelInterface
   public abstract void addPlotValue(double xValue, double yValue) throws NetPlotException;
   public abstract void addPlotValue(int plotIndex, double xValue, double yValue) throws NetPlotException;
   public abstract void addPlotValue(int plotIndex, Millisecond ms, double yValue) throws NetPlotException;
+  //epochMillis is the number of milliseconds since 1 Jan 1970 UTC
+  public abstract void addTimePlotValue(int plotIndex, long epochMillis, double yValue) throws NetPlotException;
+
+  //These are called to add values[offset] to values[offset+length-1] to a plot. 
+  //The chart is notified of the change once for all the values.
+  //On time plots the values added by addPlotValues() are given the time they were received.
+  public abstract void addPlotValues(int plotIndex, double yValues[], int offset, int length) throws NetPlotException;
+  public abstract void addPlotValues(int plotIndex, double xValues[], double yValues[], int offset, int length) throws NetPlotException;
+  public abstract void addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) throws NetPlotException;
 
   public abstract void init();
   public abstract int  getPlotCount();
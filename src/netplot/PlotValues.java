@@ -0,0 +1,46 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+/**
+ * Responsible for holding the values received for a single plot until they
+ * are added to the plot in a single call. Depending upon the type of the
+ * values the time stamps or the x values are not used.
+ */
+public class PlotValues
+{
+  public static final int INITIAL_CAPACITY=64;
+  long                    times[] = new long[PlotValues.INITIAL_CAPACITY];
+  double                  xValues[] = new double[PlotValues.INITIAL_CAPACITY];
+  double                  yValues[] = new double[PlotValues.INITIAL_CAPACITY];
+  int                     count;
+
+  /**
+   * Add a value to the end of the list.
+   */
+  public void add(long time, double xValue, double yValue)
+  {
+    if( count == yValues.length )
+    {
+      int capacity = count*2;
+      long newTimes[] = new long[capacity];
+      double newXValues[] = new double[capacity];
+      double newYValues[] = new double[capacity];
+      System.arraycopy(times, 0, newTimes, 0, count);
+      System.arraycopy(xValues, 0, newXValues, 0, count);
+      System.arraycopy(yValues, 0, newYValues, 0, count);
+      times=newTimes;
+      xValues=newXValues;
+      yValues=newYValues;
+    }
+    times[count]=time;
+    xValues[count]=xValue;
+    yValues[count]=yValue;
+    count++;
+  }
+
+}
@@ -0,0 +1,82 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.List;
+
+import org.jfree.data.Range;
+import org.jfree.data.xy.XYDataset;
+
+/**
+ * Responsible for finding the y range of the points of a single series dataset,
+ * sorted by x value, that are visible in an x range.
+ *
+ * JFreeChart finds the y axis auto range from the visible points (see
+ * XYRangeInfo). When all the points are visible (the x axis is auto ranged) the
+ * y range tracked by the dataset is used so the points are not read. Otherwise
+ * only the visible points are read.
+ */
+public class RangeBounds
+{
+
+  /**
+   * @param dataset            The dataset, a single series sorted by x value.
+   * @param visibleSeriesKeys  The keys of the visible series.
+   * @param xRange             The visible x range.
+   * @param minY               The min y value of all the points held by the dataset.
+   * @param maxY               The max y value of all the points held by the dataset.
+   * @return The y range of the visible points or null if there are none.
+   */
+  @SuppressWarnings("rawtypes")
+  public static Range Find(XYDataset dataset, List visibleSeriesKeys, Range xRange, double minY, double maxY)
+  {
+    int count = dataset.getItemCount(0);
+    if( count == 0 || !visibleSeriesKeys.contains(dataset.getSeriesKey(0)) )
+    {
+      return null;
+    }
+    if( xRange.contains(dataset.getXValue(0, 0)) && xRange.contains(dataset.getXValue(0, count-1)) )
+    {
+      return Double.isNaN(minY) ? null : new Range(minY, maxY);
+    }
+    //Binary search for the first visible point
+    int low=0;
+    int high=count;
+    while( low < high )
+    {
+      int mid = (low+high)>>>1;
+      if( dataset.getXValue(0, mid) < xRange.getLowerBound() )
+      {
+        low=mid+1;
+      }
+      else
+      {
+        high=mid;
+      }
+    }
+    double lower=Double.NaN;
+    double upper=Double.NaN;
+    for( int i=low ; i<count && dataset.getXValue(0, i) <= xRange.getUpperBound() ; i++ )
+    {
+      double y = dataset.getYValue(0, i);
+      if( Double.isNaN(y) )
+      {
+        continue;
+      }
+      if( Double.isNaN(lower) || y < lower )
+      {
+        lower=y;
+      }
+      if( Double.isNaN(upper) || y > upper )
+      {
+        upper=y;
+      }
+    }
+    return Double.isNaN(lower) ? null : new Range(lower, upper);
+  }
+
+}
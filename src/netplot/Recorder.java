@@ -0,0 +1,329 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Responsible for recording the data received on all the TCP/IP ports to a
+ * file (-record) so that it can be replayed later (-replay, see Replayer).
+ *
+ * The file starts with a header followed by blocks. Each block holds a command
+ * line that changed a chart, the values added to a single plot of a chart in one
+ * call or a frame of values (E.G all the bars of a bar chart or a row of a
+ * waterfall chart), the values being held in columns of primitives rather than
+ * as text. Every block starts with the chart (panel) index and the time the
+ * block was recorded. Block times never decrease so the blocks may be found by
+ * time.
+ *
+ * Header : int MAGIC, int VERSION, int base TCP/IP port, long start time (epoch ms)
+ * Block  : byte type, int panel index, long time (epoch ms) followed by
+ *          COMMAND_BLOCK : int length, length bytes of UTF-8 text
+ *          VALUES_BLOCK  : byte values type (GenericPlotPanel.Y_VALUES, XY_VALUES or
+ *                          TIME_VALUES), int plot index, int count, count long times
+ *                          (TIME_VALUES only), count double x values (XY_VALUES only),
+ *                          count double y values.
+ *          FRAME_BLOCK   : byte frame type (NetPlotConnection.FRAME_BARS or FRAME_ROW),
+ *                          int count, count double values.
+ *
+ * Values added to a time series chart without a time stamp are recorded with the
+ * time they were received so that they are shown at the same times when replayed.
+ * Each block is built by the thread that received the data and queued to a
+ * single writer thread, so the threads of different connections don't wait for
+ * each other to record. The writer writes the blocks through a buffer that is
+ * flushed every FLUSH_MILLIS. If the file can't be written as fast as the data
+ * is received the threads wait once QUEUE_CAPACITY blocks are queued.
+ */
+public class Recorder
+{
+  public static final int       MAGIC=0x4e50524b;   //NPRK
+  public static final int       VERSION=2;
+  public static final int       HEADER_SIZE=20;
+  public static final int       BLOCK_HEADER_SIZE=13;
+  public static final byte      COMMAND_BLOCK='C';
+  public static final byte      VALUES_BLOCK='V';
+  public static final byte      FRAME_BLOCK='F';
+  public static final int       BUFFER_SIZE=65536;
+  public static final long      FLUSH_MILLIS=1000;
+  public static final int       QUEUE_CAPACITY=4096;
+  //The offset of the time in a block
+  private static final int      BLOCK_MILLIS_OFFSET=5;
+  private static volatile BlockWriter Writer;
+  private static boolean        ShutdownHookAdded;
+
+  /**
+   * Start recording to a file. Any existing file is overwritten.
+   */
+  public synchronized static void Start(File file) throws IOException
+  {
+    Recorder.Stop();
+    DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(file), Recorder.BUFFER_SIZE) );
+    long startMillis = System.currentTimeMillis();
+    out.writeInt(Recorder.MAGIC);
+    out.writeInt(Recorder.VERSION);
+    out.writeInt(NetPlotter.basePort);
+    out.writeLong(startMillis);
+    out.flush();
+    BlockWriter writer = new BlockWriter(file, out, startMillis);
+    writer.start();
+    Recorder.Writer=writer;
+    if( !Recorder.ShutdownHookAdded )
+    {
+      Recorder.ShutdownHookAdded=true;
+      Runtime.getRuntime().addShutdownHook( new Thread("Recorder")
+      {
+        public void run()
+        {
+          Recorder.Stop();
+        }
+      });
+    }
+  }
+
+  /**
+   * @return True if the data received is being recorded.
+   */
+  public static boolean IsRecording()
+  {
+    return Recorder.Writer != null;
+  }
+
+  /**
+   * Record a command line that changed a chart.
+   */
+  public static void RecordCommand(int panelIndex, String line)
+  {
+    BlockWriter writer = Recorder.Writer;
+    if( writer == null )
+    {
+      return;
+    }
+    byte text[];
+    try
+    {
+      text = line.getBytes("UTF-8");
+    }
+    catch(IOException e)
+    {
+      //UTF-8 is always supported
+      throw new RuntimeException(e);
+    }
+    ByteBuffer block = Recorder.CreateBlock(Recorder.COMMAND_BLOCK, panelIndex, 4+text.length);
+    block.putInt(text.length);
+    block.put(text);
+    writer.add(block.array());
+  }
+
+  /**
+   * Record the values added to a plot.
+   *
+   * @param valuesType GenericPlotPanel.Y_VALUES, XY_VALUES or TIME_VALUES.
+   */
+  public static void RecordValues(int panelIndex, int valuesType, int plotIndex, PlotValues plotValues)
+  {
+    BlockWriter writer = Recorder.Writer;
+    if( writer == null || plotValues.count == 0 )
+    {
+      return;
+    }
+    int columnCount = ( valuesType == GenericPlotPanel.Y_VALUES ) ? 1 : 2;
+    ByteBuffer block = Recorder.CreateBlock(Recorder.VALUES_BLOCK, panelIndex, 9+plotValues.count*8*columnCount);
+    block.put((byte)valuesType);
+    block.putInt(plotIndex);
+    block.putInt(plotValues.count);
+    if( valuesType == GenericPlotPanel.TIME_VALUES )
+    {
+      for( int i=0 ; i<plotValues.count ; i++ )
+      {
+        block.putLong(plotValues.times[i]);
+      }
+    }
+    if( valuesType == GenericPlotPanel.XY_VALUES )
+    {
+      for( int i=0 ; i<plotValues.count ; i++ )
+      {
+        block.putDouble(plotValues.xValues[i]);
+      }
+    }
+    for( int i=0 ; i<plotValues.count ; i++ )
+    {
+      block.putDouble(plotValues.yValues[i]);
+    }
+    writer.add(block.array());
+  }
+
+  /**
+   * Record a frame of values, values[offset] to values[offset+count-1].
+   *
+   * @param frameType NetPlotConnection.FRAME_BARS or NetPlotConnection.FRAME_ROW.
+   */
+  public static void RecordFrame(int panelIndex, byte frameType, double values[], int offset, int count)
+  {
+    BlockWriter writer = Recorder.Writer;
+    if( writer == null )
+    {
+      return;
+    }
+    ByteBuffer block = Recorder.CreateBlock(Recorder.FRAME_BLOCK, panelIndex, 5+count*8);
+    block.put(frameType);
+    block.putInt(count);
+    for( int i=offset ; i<offset+count ; i++ )
+    {
+      block.putDouble(values[i]);
+    }
+    writer.add(block.array());
+  }
+
+  /**
+   * @param length The number of bytes of the block after the block header.
+   * @return A block holding the block header, positioned after it.
+   */
+  private static ByteBuffer CreateBlock(byte blockType, int panelIndex, int length)
+  {
+    ByteBuffer block = ByteBuffer.allocate(Recorder.BLOCK_HEADER_SIZE+length);
+    block.put(blockType);
+    block.putInt(panelIndex);
+    block.putLong(System.currentTimeMillis());
+    return block;
+  }
+
+  /**
+   * Stop recording, writing the queued blocks to the file.
+   */
+  public synchronized static void Stop()
+  {
+    BlockWriter writer = Recorder.Writer;
+    if( writer == null )
+    {
+      return;
+    }
+    Recorder.Writer=null;
+    writer.add(BlockWriter.STOP_BLOCK);
+    try
+    {
+      writer.join();
+    }
+    catch(InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Writes the queued blocks to the file.
+   */
+  private static class BlockWriter extends Thread
+  {
+    //Queued to stop the writer once the blocks before it are written
+    static final byte                          STOP_BLOCK[] = new byte[0];
+    private final File                         file;
+    private final DataOutputStream             out;
+    private final LinkedBlockingQueue<byte[]>  queue = new LinkedBlockingQueue<byte[]>(Recorder.QUEUE_CAPACITY);
+    private volatile boolean                   stopped;
+    private long                               lastBlockMillis;
+
+    BlockWriter(File file, DataOutputStream out, long startMillis)
+    {
+      super("Recorder");
+      setDaemon(true);
+      this.file=file;
+      this.out=out;
+      lastBlockMillis=startMillis;
+    }
+
+    /**
+     * Queue a block to be written, waiting while the queue is full. The block
+     * is dropped if the writer has stopped.
+     */
+    void add(byte block[])
+    {
+      try
+      {
+        while( !stopped )
+        {
+          if( queue.offer(block, Recorder.FLUSH_MILLIS, TimeUnit.MILLISECONDS) )
+          {
+            return;
+          }
+        }
+      }
+      catch(InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    public void run()
+    {
+      try
+      {
+        long flushMillis = System.currentTimeMillis()+Recorder.FLUSH_MILLIS;
+        while( true )
+        {
+          byte block[] = queue.poll(Recorder.FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+          if( block == BlockWriter.STOP_BLOCK )
+          {
+            break;
+          }
+          if( block != null )
+          {
+            write(block);
+          }
+          if( block == null || System.currentTimeMillis() >= flushMillis )
+          {
+            out.flush();
+            flushMillis = System.currentTimeMillis()+Recorder.FLUSH_MILLIS;
+          }
+        }
+      }
+      catch(IOException e)
+      {
+        UO.Error("Recording to "+file+" stopped: "+e.getLocalizedMessage());
+      }
+      catch(InterruptedException e) {}
+      finally
+      {
+        stopped=true;
+        queue.clear();
+        if( Recorder.Writer == this )
+        {
+          Recorder.Writer=null;
+        }
+        try
+        {
+          out.close();
+        }
+        catch(IOException e)
+        {
+          UO.Error("Failed to close "+file+": "+e.getLocalizedMessage());
+        }
+      }
+    }
+
+    /**
+     * Write a block. The time of the block is never before the time of the
+     * previous block, as blocks from different threads may be queued out of
+     * time order.
+     */
+    private void write(byte block[]) throws IOException
+    {
+      ByteBuffer buffer = ByteBuffer.wrap(block);
+      long millis = Math.max(buffer.getLong(Recorder.BLOCK_MILLIS_OFFSET), lastBlockMillis);
+      buffer.putLong(Recorder.BLOCK_MILLIS_OFFSET, millis);
+      lastBlockMillis=millis;
+      out.write(block);
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.swing.Timer;
+
+/**
+ * Responsible for deciding when the charts are redrawn.
+ *
+ * The threads that receive plot values only change the chart data and mark the
+ * plot panel as dirty. The dataset change notifications (which cause JFreeChart
+ * to recalculate the axes and redraw the chart) are sent for each dirty panel
+ * from a single Swing timer on the EDT, no more than max_fps times a second.
+ * Many values received between timer events therefore cost one redraw.
+ *
+ * In headless mode there is no timer, the dirty panels are updated only when
+ * an image of the charts is created.
+ */
+public class RenderScheduler
+{
+  public static final int                                 DEFAULT_MAX_FPS=25;
+  private static final ConcurrentLinkedQueue<GenericPlotPanel> DirtyPanels = new ConcurrentLinkedQueue<GenericPlotPanel>();
+  private static int                                      MaxFPS=RenderScheduler.DEFAULT_MAX_FPS;
+  private static Timer                                    RenderTimer;
+  private static boolean                                  RenderOnDemand;
+
+  /**
+   * Set the max number of times a second that the charts are redrawn.
+   */
+  public synchronized static void SetMaxFPS(int maxFPS) throws NetPlotException
+  {
+    if( maxFPS < 1 || maxFPS > 1000 )
+    {
+      throw new NetPlotException(maxFPS+" is an invalid value for "+KeyWords.MAX_FPS+", must be 1 - 1000");
+    }
+    RenderScheduler.MaxFPS=maxFPS;
+    if( RenderScheduler.RenderTimer != null )
+    {
+      RenderScheduler.RenderTimer.setDelay(1000/maxFPS);
+    }
+  }
+
+  public synchronized static int GetMaxFPS() { return RenderScheduler.MaxFPS; }
+
+  /**
+   * If true the timer is not used and the dirty panels are only updated when RenderDirtyPanels() is called.
+   */
+  public synchronized static void SetRenderOnDemand(boolean renderOnDemand) { RenderScheduler.RenderOnDemand=renderOnDemand; }
+
+  /**
+   * Add a panel that has changed to the list of panels to be redrawn.
+   * Called from any thread, this does not block or redraw the chart.
+   */
+  static void MarkDirty(GenericPlotPanel genericPlotPanel)
+  {
+    RenderScheduler.DirtyPanels.add(genericPlotPanel);
+    RenderScheduler.Start();
+  }
+
+  /**
+   * Start the timer if not already running.
+   */
+  private synchronized static void Start()
+  {
+    if( RenderScheduler.RenderTimer == null && !RenderScheduler.RenderOnDemand )
+    {
+      RenderScheduler.RenderTimer = new Timer(1000/RenderScheduler.MaxFPS, new ActionListener()
+      {
+        public void actionPerformed(ActionEvent e)
+        {
+          RenderScheduler.RenderDirtyPanels();
+        }
+      });
+      RenderScheduler.RenderTimer.setCoalesce(true);
+      RenderScheduler.RenderTimer.start();
+    }
+  }
+
+  /**
+   * Called on the EDT to redraw the panels that have changed since the last call.
+   */
+  static void RenderDirtyPanels()
+  {
+    GenericPlotPanel genericPlotPanel;
+    while( (genericPlotPanel=RenderScheduler.DirtyPanels.poll()) != null )
+    {
+      try
+      {
+        genericPlotPanel.render();
+      }
+      catch(RuntimeException e)
+      {
+        UO.Debug(e);
+      }
+    }
+  }
+
+}
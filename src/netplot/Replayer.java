@@ -0,0 +1,454 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Vector;
+
+/**
+ * Responsible for replaying a file recorded with the -record option (see
+ * Recorder) to the charts (-replay).
+ *
+ * The file is memory mapped and an index of the start and time of every block
+ * is built when it is opened. The blocks are then passed to a LineProcessor
+ * per chart in the same way as the data received from a client, at the rate
+ * they were recorded multiplied by the speed (0 = as fast as possible).
+ * Replay may start part way through the recording, in which case the command
+ * and bar frame blocks before the start are replayed (to set up the charts) but
+ * the values and waterfall rows are not.
+ *
+ * The plot indexes recorded are those of the chart, so a recording made with
+ * the -shared option may not replay as it was shown when many clients added
+ * plots to the same chart.
+ */
+public class Replayer implements Runnable
+{
+  //The max number of bytes of the file mapped at a time
+  public static final long      MAX_MAP_BYTES=1<<30;
+  public static final int       INITIAL_INDEX_CAPACITY=1024;
+  private final File            file;
+  private final double          speed;
+  private final int             panelCount;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel     fileChannel;
+  private final long            fileSize;
+  private MappedByteBuffer      mappedBuffer;
+  private long                  mappedOffset;
+  private int                   basePort;
+  private long                  startMillis;
+  //The index, the file offset and time of each block
+  private long                  blockOffsets[] = new long[Replayer.INITIAL_INDEX_CAPACITY];
+  private long                  blockMillis[] = new long[Replayer.INITIAL_INDEX_CAPACITY];
+  private int                   blockCount;
+  private long                  replayStartMillis;
+  private final Vector<LineProcessor> lineProcessors = new Vector<LineProcessor>();
+  //The values of the last frame block replayed
+  private double                frameValues[] = new double[0];
+
+  /**
+   * Open a recorded file and build the index of its blocks.
+   *
+   * @param file         The file recorded with the -record option.
+   * @param speed        The replay speed, 1 = the rate recorded, 0 = as fast as possible.
+   * @param startSeconds The time in the recording at which to start the replay.
+   * @param panelCount   The number of charts (TCP/IP ports). A block for any other chart is corrupt.
+   */
+  public Replayer(File file, double speed, double startSeconds, int panelCount) throws IOException, NetPlotException
+  {
+    this.file=file;
+    this.speed=speed;
+    this.panelCount=panelCount;
+    randomAccessFile = new RandomAccessFile(file, "r");
+    fileChannel = randomAccessFile.getChannel();
+    fileSize = fileChannel.size();
+    try
+    {
+      readHeader();
+      buildIndex();
+    }
+    catch(NetPlotException e)
+    {
+      randomAccessFile.close();
+      throw e;
+    }
+    replayStartMillis = startMillis+(long)(startSeconds*1000);
+  }
+
+  public int  getBasePort()    { return basePort; }
+  public long getStartMillis() { return startMillis; }
+  public int  getBlockCount()  { return blockCount; }
+
+  /**
+   * @return The duration of the recording in seconds.
+   */
+  public double getSeconds()
+  {
+    if( blockCount == 0 )
+    {
+      return 0;
+    }
+    return (blockMillis[blockCount-1]-startMillis)/1000.0;
+  }
+
+  /**
+   * Get a buffer with the bytes of the file from the given offset, mapping the
+   * part of the file that holds them if not already mapped.
+   *
+   * @return The buffer, positioned at the offset.
+   */
+  private MappedByteBuffer map(long offset, int length) throws IOException, NetPlotException
+  {
+    if( mappedBuffer == null || offset < mappedOffset || offset+length > mappedOffset+mappedBuffer.capacity() )
+    {
+      long size = Math.min(fileSize-offset, Replayer.MAX_MAP_BYTES);
+      if( length > size )
+      {
+        throw new NetPlotException(file+" is truncated or not a netplot recording.");
+      }
+      mappedBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+      mappedOffset = offset;
+    }
+    mappedBuffer.limit(mappedBuffer.capacity());
+    mappedBuffer.position((int)(offset-mappedOffset));
+    return mappedBuffer;
+  }
+
+  private void readHeader() throws NetPlotException
+  {
+    try
+    {
+      MappedByteBuffer buffer = map(0, Recorder.HEADER_SIZE);
+      if( buffer.getInt() != Recorder.MAGIC )
+      {
+        throw new NetPlotException(file+" is not a netplot recording.");
+      }
+      int version = buffer.getInt();
+      //Version 1 recordings do not hold frame blocks so may also be replayed
+      if( version < 1 || version > Recorder.VERSION )
+      {
+        throw new NetPlotException(file+" is a version "+version+" recording, only version "+Recorder.VERSION+" or earlier is supported.");
+      }
+      basePort = buffer.getInt();
+      startMillis = buffer.getLong();
+    }
+    catch(IOException e)
+    {
+      throw new NetPlotException("Failed to read "+file+": "+e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Read the header of every block to find its start and time. A partly written
+   * block at the end of the file is ignored.
+   */
+  private void buildIndex() throws NetPlotException
+  {
+    long offset = Recorder.HEADER_SIZE;
+    try
+    {
+      while( offset < fileSize )
+      {
+        MappedByteBuffer buffer = mapBlockHeader(offset);
+        long blockSize = -1;
+        if( buffer.remaining() >= Recorder.BLOCK_HEADER_SIZE )
+        {
+          byte blockType = buffer.get();
+          int panelIndex = buffer.getInt();
+          long millis = buffer.getLong();
+          if( panelIndex < 0 || panelIndex >= panelCount )
+          {
+            throw new NetPlotException(file+" is corrupt at byte "+offset+" (chart "+panelIndex+" is not one of the "+panelCount+" charts).");
+          }
+          if( blockType == Recorder.COMMAND_BLOCK && buffer.remaining() >= 4 )
+          {
+            int length = buffer.getInt();
+            if( length < 0 )
+            {
+              throw new NetPlotException(file+" is corrupt at byte "+offset);
+            }
+            blockSize = Recorder.BLOCK_HEADER_SIZE+4+length;
+          }
+          else if( blockType == Recorder.VALUES_BLOCK && buffer.remaining() >= 9 )
+          {
+            int valuesType = buffer.get();
+            buffer.getInt();
+            int count = buffer.getInt();
+            if( count < 0 || ( valuesType != GenericPlotPanel.Y_VALUES && valuesType != GenericPlotPanel.XY_VALUES && valuesType != GenericPlotPanel.TIME_VALUES ) )
+            {
+              throw new NetPlotException(file+" is corrupt at byte "+offset);
+            }
+            blockSize = Recorder.BLOCK_HEADER_SIZE+9+(long)count*8*Replayer.GetColumnCount(valuesType);
+          }
+          else if( blockType == Recorder.FRAME_BLOCK && buffer.remaining() >= 5 )
+          {
+            byte frameType = buffer.get();
+            int count = buffer.getInt();
+            if( count < 0 || ( frameType != NetPlotConnection.FRAME_BARS && frameType != NetPlotConnection.FRAME_ROW ) )
+            {
+              throw new NetPlotException(file+" is corrupt at byte "+offset);
+            }
+            blockSize = Recorder.BLOCK_HEADER_SIZE+5+(long)count*8;
+          }
+          else if( blockType != Recorder.COMMAND_BLOCK && blockType != Recorder.VALUES_BLOCK && blockType != Recorder.FRAME_BLOCK )
+          {
+            throw new NetPlotException(file+" is corrupt at byte "+offset);
+          }
+          if( blockSize > 0 && offset+blockSize <= fileSize )
+          {
+            addBlock(offset, millis);
+            offset += blockSize;
+            continue;
+          }
+        }
+        UO.Info(file+": the last block is incomplete and is not replayed.");
+        break;
+      }
+    }
+    catch(IOException e)
+    {
+      throw new NetPlotException("Failed to read "+file+": "+e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * @return A buffer positioned at the start of a block holding the block header
+   *         and the fields that follow it, less at the end of the file.
+   */
+  private MappedByteBuffer mapBlockHeader(long offset) throws IOException, NetPlotException
+  {
+    int length = (int)Math.min(Recorder.BLOCK_HEADER_SIZE+9, fileSize-offset);
+    MappedByteBuffer buffer = map(offset, length);
+    buffer.limit(buffer.position()+length);
+    return buffer;
+  }
+
+  /**
+   * @return The number of columns of values in a block of the given values type.
+   */
+  private static int GetColumnCount(int valuesType)
+  {
+    return ( valuesType == GenericPlotPanel.Y_VALUES ) ? 1 : 2;
+  }
+
+  private void addBlock(long offset, long millis)
+  {
+    if( blockCount == blockOffsets.length )
+    {
+      long newBlockOffsets[] = new long[blockCount*2];
+      long newBlockMillis[] = new long[blockCount*2];
+      System.arraycopy(blockOffsets, 0, newBlockOffsets, 0, blockCount);
+      System.arraycopy(blockMillis, 0, newBlockMillis, 0, blockCount);
+      blockOffsets=newBlockOffsets;
+      blockMillis=newBlockMillis;
+    }
+    blockOffsets[blockCount]=offset;
+    blockMillis[blockCount]=millis;
+    blockCount++;
+  }
+
+  /**
+   * @return The index of the first block recorded at or after the given time.
+   */
+  public int getBlockIndex(long millis)
+  {
+    int low=0;
+    int high=blockCount;
+    while( low < high )
+    {
+      int mid = (low+high)>>>1;
+      if( blockMillis[mid] < millis )
+      {
+        low=mid+1;
+      }
+      else
+      {
+        high=mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return The LineProcessor that the blocks of a chart are passed to.
+   */
+  private LineProcessor getLineProcessor(int panelIndex)
+  {
+    while( lineProcessors.size() <= panelIndex )
+    {
+      LineProcessor lineProcessor = new LineProcessor(lineProcessors.size(), NetPlotter.maxPlotCount);
+      //Don't record the replay
+      lineProcessor.setRecordingEnabled(false);
+      lineProcessors.add(lineProcessor);
+    }
+    return lineProcessors.get(panelIndex);
+  }
+
+  public void run()
+  {
+    UO.Info("Replaying "+file+" ("+blockCount+" blocks, "+getSeconds()+" seconds) at "+(speed > 0 ? speed+"x speed" : "max speed"));
+    int firstBlockIndex = getBlockIndex(replayStartMillis);
+    long startNanos = System.nanoTime();
+    try
+    {
+      for( int blockIndex=0 ; blockIndex<blockCount ; blockIndex++ )
+      {
+        boolean replayValues = blockIndex >= firstBlockIndex;
+        if( replayValues && speed > 0 )
+        {
+          long waitNanos = startNanos+(long)((blockMillis[blockIndex]-replayStartMillis)*1000000L/speed)-System.nanoTime();
+          if( waitNanos > 0 )
+          {
+            flush();
+            Thread.sleep(waitNanos/1000000L, (int)(waitNanos%1000000L));
+          }
+        }
+        replayBlock(blockOffsets[blockIndex], replayValues);
+      }
+      flush();
+      UO.Info("Replay of "+file+" complete");
+    }
+    catch(InterruptedException e)
+    {
+      UO.Info("Replay of "+file+" stopped");
+    }
+    catch(IOException e)
+    {
+      UO.Error("Failed to read "+file+": "+e.getLocalizedMessage());
+    }
+    catch(NetPlotException e)
+    {
+      UO.Error(e.getLocalizedMessage());
+    }
+    finally
+    {
+      try
+      {
+        randomAccessFile.close();
+      }
+      catch(IOException e) {}
+    }
+  }
+
+  /**
+   * Pass a block to the LineProcessor of its chart. An error adding the block to
+   * a chart is shown and the replay continues.
+   *
+   * @param replayValues If false values blocks and row frame blocks are skipped.
+   */
+  private void replayBlock(long offset, boolean replayValues) throws IOException, NetPlotException
+  {
+    MappedByteBuffer buffer = mapBlockHeader(offset);
+    byte blockType = buffer.get();
+    int panelIndex = buffer.getInt();
+    buffer.getLong();
+    if( blockType == Recorder.VALUES_BLOCK && !replayValues )
+    {
+      return;
+    }
+    LineProcessor lineProcessor = getLineProcessor(panelIndex);
+    try
+    {
+      if( blockType == Recorder.COMMAND_BLOCK )
+      {
+        int length = buffer.getInt();
+        byte text[] = new byte[length];
+        map(offset+Recorder.BLOCK_HEADER_SIZE+4, length).get(text);
+        lineProcessor.processLine(new String(text, "UTF-8"));
+        return;
+      }
+      if( blockType == Recorder.FRAME_BLOCK )
+      {
+        byte frameType = buffer.get();
+        if( frameType == NetPlotConnection.FRAME_ROW && !replayValues )
+        {
+          return;
+        }
+        replayFrame(lineProcessor, offset, frameType, buffer.getInt());
+        return;
+      }
+      int valuesType = buffer.get();
+      int plotIndex = buffer.getInt();
+      int count = buffer.getInt();
+      int columnSize = count*8;
+      buffer = map(offset+Recorder.BLOCK_HEADER_SIZE+9, columnSize*Replayer.GetColumnCount(valuesType));
+      int timesPos = buffer.position();
+      int xValuesPos = buffer.position();
+      int yValuesPos = buffer.position()+columnSize*(Replayer.GetColumnCount(valuesType)-1);
+      for( int i=0 ; i<count ; i++ )
+      {
+        if( valuesType == GenericPlotPanel.TIME_VALUES )
+        {
+          lineProcessor.addTimePlotValue(plotIndex, buffer.getLong(timesPos+i*8), buffer.getDouble(yValuesPos+i*8));
+        }
+        else if( valuesType == GenericPlotPanel.XY_VALUES )
+        {
+          lineProcessor.addXYPlotValue(plotIndex, buffer.getDouble(xValuesPos+i*8), buffer.getDouble(yValuesPos+i*8));
+        }
+        else
+        {
+          lineProcessor.addPlotValue(plotIndex, buffer.getDouble(yValuesPos+i*8));
+        }
+      }
+    }
+    catch(NetPlotException e)
+    {
+      UO.Error((basePort+panelIndex)+": "+e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Pass the values of a frame block to the LineProcessor of its chart.
+   */
+  private void replayFrame(LineProcessor lineProcessor, long offset, byte frameType, int count) throws IOException, NetPlotException
+  {
+    if( frameValues.length < count )
+    {
+      frameValues = new double[count];
+    }
+    MappedByteBuffer buffer = map(offset+Recorder.BLOCK_HEADER_SIZE+5, count*8);
+    int valuesPos = buffer.position();
+    for( int i=0 ; i<count ; i++ )
+    {
+      frameValues[i]=buffer.getDouble(valuesPos+i*8);
+    }
+    if( frameType == NetPlotConnection.FRAME_BARS )
+    {
+      lineProcessor.setBars(frameValues, 0, count);
+    }
+    else if( frameType == NetPlotConnection.FRAME_ROW )
+    {
+      lineProcessor.addRow(frameValues, 0, count);
+    }
+    else
+    {
+      throw new NetPlotException(frameType+" is an unknown frame type");
+    }
+  }
+
+  /**
+   * Add the values held by the LineProcessors to the charts.
+   */
+  private void flush()
+  {
+    for( int panelIndex=0 ; panelIndex<lineProcessors.size() ; panelIndex++ )
+    {
+      try
+      {
+        lineProcessors.get(panelIndex).flush();
+      }
+      catch(NetPlotException e)
+      {
+        UO.Error((basePort+panelIndex)+": "+e.getLocalizedMessage());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.Vector;
+
+/**
+ * Responsible for holding the chart of a TCP/IP port in shared mode (-shared).
+ *
+ * In shared mode the chart of a port is not replaced when a client connects
+ * and sets the same graph type, so many clients may add values to one chart
+ * and the chart remains when they disconnect. Each add_plot either adds a new
+ * plot or, if a plot with the same plot_name has already been added by any
+ * client, uses that plot. Each client refers to its plots by its own plot
+ * indexes (0 = the first plot it added), which the LineProcessor maps to the
+ * plot indexes of the shared chart.
+ *
+ * A different graph type may only be set when no other client is using the
+ * chart. SharedChart objects are only used on the EDT.
+ */
+public class SharedChart
+{
+  private static final Vector<SharedChart> Charts = new Vector<SharedChart>();
+  private String                graphType;
+  private PlotPanelInterface    plotPanelInterface;
+  private boolean               initialized;
+  private int                   clientCount;
+  //The plot_name of each plot of the chart, "" if not named
+  private final Vector<String>  plotNames = new Vector<String>();
+
+  /**
+   * @return The shared chart of a TCP/IP port.
+   */
+  public static SharedChart Get(int panelIndex)
+  {
+    while( SharedChart.Charts.size() <= panelIndex )
+    {
+      SharedChart.Charts.add( new SharedChart() );
+    }
+    return SharedChart.Charts.get(panelIndex);
+  }
+
+  public String             getGraphType()    { return graphType; }
+  public PlotPanelInterface getPlotPanel()    { return plotPanelInterface; }
+  public boolean            isInitialized()   { return initialized; }
+  public int                getClientCount()  { return clientCount; }
+
+  /**
+   * Set a new chart of the given graph type. The chart has no plots until it is initialised.
+   */
+  public void setPlotPanel(String graphType, PlotPanelInterface plotPanelInterface)
+  {
+    this.graphType=graphType;
+    this.plotPanelInterface=plotPanelInterface;
+    initialized=false;
+    plotNames.removeAllElements();
+  }
+
+  /**
+   * Called when the chart has been initialised, removing all its plots.
+   */
+  public void setInitialized()
+  {
+    initialized=true;
+    plotNames.removeAllElements();
+  }
+
+  public void addClient()    { clientCount++; }
+  public void removeClient() { clientCount--; }
+
+  /**
+   * @return The index of the plot with the given name or -1 if not found or the name is empty.
+   */
+  public int getPlotIndex(String plotName)
+  {
+    if( plotName.length() == 0 )
+    {
+      return -1;
+    }
+    return plotNames.indexOf(plotName);
+  }
+
+  /**
+   * Called when a plot has been added to the chart.
+   *
+   * @return The index of the plot.
+   */
+  public int plotAdded(String plotName)
+  {
+    plotNames.add(plotName);
+    return plotNames.size()-1;
+  }
+
+}
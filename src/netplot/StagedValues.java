@@ -0,0 +1,79 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+/**
+ * Responsible for holding the values added to a chart by the threads receiving
+ * data until they are added to the chart datasets on the EDT. The values are
+ * held in the order they were added as runs of values of the same type for
+ * the same plot.
+ *
+ * This class is not thread safe, see GenericPlotPanel.stageValues().
+ */
+public class StagedValues
+{
+  public static final int INITIAL_RUN_CAPACITY=16;
+  final PlotValues        values = new PlotValues();
+  int                     runTypes[] = new int[StagedValues.INITIAL_RUN_CAPACITY];
+  int                     runPlotIndexes[] = new int[StagedValues.INITIAL_RUN_CAPACITY];
+  int                     runOffsets[] = new int[StagedValues.INITIAL_RUN_CAPACITY];
+  int                     runLengths[] = new int[StagedValues.INITIAL_RUN_CAPACITY];
+  int                     runCount;
+
+  /**
+   * Add a value to the end of the list.
+   *
+   * @param type GenericPlotPanel.Y_VALUES, XY_VALUES or TIME_VALUES.
+   */
+  public void add(int type, int plotIndex, long time, double xValue, double yValue)
+  {
+    if( runCount == 0 || runTypes[runCount-1] != type || runPlotIndexes[runCount-1] != plotIndex )
+    {
+      if( runCount == runTypes.length )
+      {
+        int capacity = runCount*2;
+        int newRunTypes[] = new int[capacity];
+        int newRunPlotIndexes[] = new int[capacity];
+        int newRunOffsets[] = new int[capacity];
+        int newRunLengths[] = new int[capacity];
+        System.arraycopy(runTypes, 0, newRunTypes, 0, runCount);
+        System.arraycopy(runPlotIndexes, 0, newRunPlotIndexes, 0, runCount);
+        System.arraycopy(runOffsets, 0, newRunOffsets, 0, runCount);
+        System.arraycopy(runLengths, 0, newRunLengths, 0, runCount);
+        runTypes=newRunTypes;
+        runPlotIndexes=newRunPlotIndexes;
+        runOffsets=newRunOffsets;
+        runLengths=newRunLengths;
+      }
+      runTypes[runCount]=type;
+      runPlotIndexes[runCount]=plotIndex;
+      runOffsets[runCount]=values.count;
+      runLengths[runCount]=0;
+      runCount++;
+    }
+    values.add(time, xValue, yValue);
+    runLengths[runCount-1]++;
+  }
+
+  /**
+   * @return The number of values held.
+   */
+  public int getCount()
+  {
+    return values.count;
+  }
+
+  /**
+   * Remove all the values.
+   */
+  public void clear()
+  {
+    values.count=0;
+    runCount=0;
+  }
+
+}
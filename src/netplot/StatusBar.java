@@ -10,29 +10,57 @@ package netplot;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import javax.swing.text.BadLocationException;
 
 /**
  * Responsible for displaying the status line (typically at the bottom of a frame)
  * Maybe double clicked to show the history.
- * 
+ *
+ * Messages may be added from any thread. They are held in a fixed size ring
+ * (the last HistoryLines messages) and shown in batches by a timer on the EDT, so
+ * adding a message takes the same time however many messages have been shown.
+ * A message that is the same as the previous message is only counted, the count
+ * is shown at most once every REPEAT_REPORT_MILLIS or when a different message
+ * is added.
+ *
  * @author Paul Austen
  */
 public class StatusBar extends JPanel implements ActionListener, MouseListener
 {
   static final long serialVersionUID=6;
+  public  static final int      DEFAULT_HISTORY_LINES=1000;
+  public  static final int      UPDATE_MILLIS=200;
+  public  static final int      CLEAR_DOWN_MILLIS=3000;
+  //The min time between the messages that show how many times a message was repeated
+  public  static final int      REPEAT_REPORT_MILLIS=1000;
+  //The number of messages held in the history
+  private static int            HistoryLines=StatusBar.DEFAULT_HISTORY_LINES;
   private JLabel statusBarLabel = new JLabel();
   private JFrame historyFrame;
   private JTextArea messageField;
-  public  static String ToolTip="Double click for message history"; 
+  public  static String ToolTip="Double click for message history";
   private Timer t;
-  
+  //The ring of messages, guarded by this.messages
+  private final String          messages[];
+  //The number of messages added since the StatusBar was created
+  private long                  messageCount;
+  //The number of these messages that have been shown in the history
+  private long                  shownMessageCount;
+  private String                lastMessage;
+  private int                   repeatCount;
+  private long                  repeatReportMillis;
+  private boolean               clearDown;
+  private long                  lastMessageMillis;
+  private boolean               statusChanged;
+
   public StatusBar()
   {
+    messages = new String[StatusBar.HistoryLines];
     this.setLayout(new FlowLayout(FlowLayout.LEFT));
     add(statusBarLabel);
     setBorder( BorderFactory.createLoweredBevelBorder());
-    status(" ",false);
-    
+    statusBarLabel.setText(" ");
+
     historyFrame = new JFrame("Status message history");
     messageField = new JTextArea(40,132);
     messageField.setFont( new Font("Monospaced", Font.PLAIN, 11) );
@@ -42,53 +70,151 @@ public class StatusBar extends JPanel implements ActionListener, MouseListener
     statusBarLabel.addMouseListener(this);
     statusBarLabel.setToolTipText(ToolTip);
     this.setToolTipText(ToolTip);
+    t = new Timer(StatusBar.UPDATE_MILLIS,this);
+    t.start();
+  }
+
+  /**
+   * Set the number of messages held in the message history. Must be called
+   * before the StatusBar is created.
+   */
+  public static void SetHistoryLines(int historyLines)
+  {
+    StatusBar.HistoryLines=historyLines;
   }
-  
+
   private void status(String line, boolean clearDown)
   {
-    statusBarLabel.setText(line);
-    if( messageField != null )
+    synchronized(messages)
     {
-      messageField.append(line+"\n");
-      if( messageField.getText().length() > 65536 )
+      if( line.equals(lastMessage) )
       {
-        //Chop it down so we don't use to much memory
-        messageField.replaceRange("", 0, 32768);
+        repeatCount++;
+        return;
       }
+      addRepeatCount();
+      add(line);
+      lastMessage=line;
+      this.clearDown=clearDown;
+      lastMessageMillis=System.currentTimeMillis();
+      statusChanged=true;
     }
-    if( clearDown )
+  }
+
+  /**
+   * Add a message to the ring. Must be called holding the messages lock.
+   */
+  private void add(String line)
+  {
+    messages[(int)(messageCount%messages.length)]=line;
+    messageCount++;
+  }
+
+  /**
+   * Add the number of times the last message was repeated to the ring. Must be
+   * called holding the messages lock.
+   */
+  private void addRepeatCount()
+  {
+    if( repeatCount > 0 )
     {
-      if( t == null )
-      {
-        t = new Timer(3000,this);
-      }
-      t.restart();
+      add("Last message repeated "+repeatCount+" times");
+      repeatCount=0;
+      repeatReportMillis=System.currentTimeMillis();
     }
   }
-  
+
   public void println(String line)
   {
     status(line, true);
   }
-  
+
   public void println_persistent(String line)
   {
     status(line, false);
   }
-  
-  //Called to clear down the last message
-  public void actionPerformed(ActionEvent e) 
+
+  //Called by the timer on the EDT to show the messages added since it was last called
+  public void actionPerformed(ActionEvent e)
   {
-    //Clear status text, keep space as this ensures that the vertical size of the status bar does not change.
-    statusBarLabel.setText(" ");
+    String statusText=null;
+    StringBuffer newText=null;
+    boolean replaceText=false;
+    synchronized(messages)
+    {
+      if( statusChanged )
+      {
+        statusText=messages[(int)((messageCount-1)%messages.length)];
+        statusChanged=false;
+      }
+      else if( clearDown && System.currentTimeMillis()-lastMessageMillis > StatusBar.CLEAR_DOWN_MILLIS )
+      {
+        //Clear status text, keep space as this ensures that the vertical size of the status bar does not change.
+        statusText=" ";
+        clearDown=false;
+      }
+      if( repeatCount > 0 && System.currentTimeMillis()-repeatReportMillis >= StatusBar.REPEAT_REPORT_MILLIS )
+      {
+        addRepeatCount();
+      }
+      //The history is only updated while it is visible
+      if( historyFrame.isVisible() && shownMessageCount < messageCount )
+      {
+        long first = shownMessageCount;
+        if( messageCount-first >= messages.length )
+        {
+          first = messageCount-messages.length;
+          replaceText=true;
+        }
+        newText = new StringBuffer();
+        for( long i=first ; i<messageCount ; i++ )
+        {
+          newText.append(messages[(int)(i%messages.length)]);
+          newText.append('\n');
+        }
+        shownMessageCount=messageCount;
+      }
+    }
+    if( statusText != null )
+    {
+      statusBarLabel.setText(statusText);
+    }
+    if( newText != null )
+    {
+      showHistory(newText.toString(), replaceText);
+    }
   }
-  
-  public void mouseClicked(MouseEvent e) 
+
+  /**
+   * Add text to the history, removing the oldest lines so that no more than
+   * HistoryLines are shown.
+   */
+  private void showHistory(String text, boolean replaceText)
   {
-    //If double click 
+    if( replaceText )
+    {
+      messageField.setText(text);
+      return;
+    }
+    messageField.append(text);
+    //The last line is empty as each message ends with a new line
+    int excessLines = messageField.getLineCount()-1-messages.length;
+    if( excessLines > 0 )
+    {
+      try
+      {
+        messageField.replaceRange("", 0, messageField.getLineStartOffset(excessLines));
+      }
+      catch(BadLocationException e) {}
+    }
+  }
+
+  public void mouseClicked(MouseEvent e)
+  {
+    //If double click
     if( e.getClickCount() == 2 )
     {
-      //Display the history frame
+      //Display the history frame, the messages are added to it by the timer
       historyFrame.setVisible(true);
     }
   }
@@ -96,5 +222,5 @@ public class StatusBar extends JPanel implements ActionListener, MouseListener
   public void mouseExited(MouseEvent e) {}
   public void mousePressed(MouseEvent e) {}
   public void mouseReleased(MouseEvent e) {}
- 
+
 }
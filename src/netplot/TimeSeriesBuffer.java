@@ -0,0 +1,278 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+/**
+ * Responsible for holding the points of a single time series plot.
+ *
+ * The time stamps (milliseconds since the epoch) and values are held in
+ * primitive circular buffers, sorted by time. Points are removed from the
+ * start of the buffer when they are older than the max age (relative to the
+ * newest point) or when the max point count is exceeded, so the memory used
+ * by a plot is bounded no matter how long the server runs.
+ *
+ * The min and max values of the points held are tracked as points are added
+ * and removed (see MonotonicDeque) so that the y axis auto range does not read
+ * every point. They are only found from every point after a point has been
+ * inserted or a min/max point replaced.
+ */
+public class TimeSeriesBuffer
+{
+  public static final int   INITIAL_CAPACITY=1024;
+  private long              times[];
+  private double            values[];
+  private int               mask;
+  private int               head;   //The physical index of the oldest point
+  private int               count;
+  private int               maxCount;
+  private long              maxAgeMillis;
+  private long              modificationCount;
+  //The sequence number of the oldest point, increased as points are removed from the start
+  private long              firstSequence;
+  private MonotonicDeque    minValues = new MonotonicDeque(false);
+  private MonotonicDeque    maxValues = new MonotonicDeque(true);
+  private boolean           rangeValid=true;
+
+  /**
+   * @param maxCount     The max number of points held.
+   * @param maxAgeMillis The max age of a point relative to the newest point.
+   *                     If 0 or less points are not removed because of their age.
+   */
+  public TimeSeriesBuffer(int maxCount, long maxAgeMillis)
+  {
+    this.maxCount=Math.max(1, maxCount);
+    this.maxAgeMillis=maxAgeMillis;
+    //The buffers start small and grow (up to the max count) as points are added
+    int capacity=1;
+    while( capacity < this.maxCount && capacity < TimeSeriesBuffer.INITIAL_CAPACITY )
+    {
+      capacity=capacity*2;
+    }
+    times = new long[capacity];
+    values = new double[capacity];
+    mask = capacity-1;
+  }
+
+  public int    getCount()       { return count; }
+  public long   getTime(int i)   { return times[(head+i)&mask]; }
+  public double getValue(int i)  { return values[(head+i)&mask]; }
+
+  /**
+   * @return The number of times a point (other than the newest) has been changed 
+   *         or inserted, or the buffer has been cleared.
+   */
+  public long   getModificationCount() { return modificationCount; }
+
+  /**
+   * @return The min value of the points held or NaN if there are no (non NaN) values.
+   */
+  public double getMinValue()
+  {
+    validateRange();
+    return minValues.getValue();
+  }
+
+  /**
+   * @return The max value of the points held or NaN if there are no (non NaN) values.
+   */
+  public double getMaxValue()
+  {
+    validateRange();
+    return maxValues.getValue();
+  }
+
+  /**
+   * Find the min and max values from all the points if required.
+   */
+  private void validateRange()
+  {
+    if( rangeValid )
+    {
+      return;
+    }
+    rangeValid=true;
+    minValues.clear();
+    maxValues.clear();
+    for( int i=0 ; i<count ; i++ )
+    {
+      minValues.add(firstSequence+i, getValue(i));
+      maxValues.add(firstSequence+i, getValue(i));
+    }
+  }
+
+  /**
+   * Add a point. If a point with the same time is held its value is replaced.
+   * Points are normally added in time order, which is O(1). A point older than
+   * the newest point is inserted in time order.
+   */
+  public void add(long time, double value)
+  {
+    add(time, value, false);
+  }
+
+  /**
+   * Add a point.
+   *
+   * @param keepEqualTime If true a point with the same time as the newest point
+   *                      is added after it rather than replacing its value.
+   */
+  public void add(long time, double value, boolean keepEqualTime)
+  {
+    if( count > 0 )
+    {
+      long newestTime = getTime(count-1);
+      if( time == newestTime && !keepEqualTime )
+      {
+        values[(head+count-1)&mask]=value;
+        if( rangeValid )
+        {
+          long sequence = firstSequence+count-1;
+          rangeValid = minValues.replaceLast(sequence, value) && maxValues.replaceLast(sequence, value);
+        }
+        return;
+      }
+      if( time < newestTime )
+      {
+        insert(time, value);
+        removeOldPoints();
+        return;
+      }
+    }
+    if( count == times.length )
+    {
+      if( count >= maxCount )
+      {
+        //Full, overwrite the oldest point
+        removeFirst();
+      }
+      else
+      {
+        grow();
+      }
+    }
+    int index = (head+count)&mask;
+    times[index]=time;
+    values[index]=value;
+    if( rangeValid )
+    {
+      minValues.add(firstSequence+count, value);
+      maxValues.add(firstSequence+count, value);
+    }
+    count++;
+    removeOldPoints();
+  }
+
+  /**
+   * Insert a point that is older than the newest point.
+   */
+  private void insert(long time, double value)
+  {
+    modificationCount++;
+    rangeValid=false;
+    //Binary search for the first point with a time >= time
+    int low=0;
+    int high=count;
+    while( low < high )
+    {
+      int mid = (low+high)>>>1;
+      if( getTime(mid) < time )
+      {
+        low=mid+1;
+      }
+      else
+      {
+        high=mid;
+      }
+    }
+    if( low < count && getTime(low) == time )
+    {
+      values[(head+low)&mask]=value;
+      return;
+    }
+    if( low == 0 && count >= maxCount )
+    {
+      //Older than all the points in a full buffer, it would be removed immediately.
+      return;
+    }
+    if( count == times.length )
+    {
+      grow();
+    }
+    for( int i=count ; i>low ; i-- )
+    {
+      times[(head+i)&mask]=times[(head+i-1)&mask];
+      values[(head+i)&mask]=values[(head+i-1)&mask];
+    }
+    times[(head+low)&mask]=time;
+    values[(head+low)&mask]=value;
+    count++;
+  }
+
+  /**
+   * Remove the points that are older than the max age or above the max count.
+   */
+  private void removeOldPoints()
+  {
+    while( count > maxCount )
+    {
+      removeFirst();
+    }
+    if( maxAgeMillis > 0 && count > 0 )
+    {
+      long oldestAllowed = getTime(count-1)-maxAgeMillis;
+      while( count > 0 && times[head] < oldestAllowed )
+      {
+        removeFirst();
+      }
+    }
+  }
+
+  private void removeFirst()
+  {
+    head=(head+1)&mask;
+    count--;
+    firstSequence++;
+    if( rangeValid )
+    {
+      minValues.removeBefore(firstSequence);
+      maxValues.removeBefore(firstSequence);
+    }
+  }
+
+  /**
+   * Double the size of the buffers.
+   */
+  private void grow()
+  {
+    int capacity = times.length*2;
+    long newTimes[] = new long[capacity];
+    double newValues[] = new double[capacity];
+    for( int i=0 ; i<count ; i++ )
+    {
+      newTimes[i]=getTime(i);
+      newValues[i]=getValue(i);
+    }
+    times=newTimes;
+    values=newValues;
+    mask=capacity-1;
+    head=0;
+  }
+
+  /**
+   * Remove all points.
+   */
+  public void clear()
+  {
+    modificationCount++;
+    head=0;
+    count=0;
+    minValues.clear();
+    maxValues.clear();
+    rangeValid=true;
+  }
+
+}
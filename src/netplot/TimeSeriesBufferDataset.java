@@ -0,0 +1,169 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Responsible for presenting a single TimeSeriesBuffer to JFreeChart.
+ *
+ * The X values are the time stamps in milliseconds since the epoch, as
+ * expected by the DateAxis of a time series chart. The values are read
+ * directly from the primitive buffers so no objects are held for each point.
+ * The y range is tracked by the TimeSeriesBuffer as points are added and
+ * removed so the y axis auto range does not read every point.
+ */
+public class TimeSeriesBufferDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, XYRangeInfo, ModificationCounter
+{
+  static final long serialVersionUID=1;
+  private String                      seriesName;
+  private TimeSeriesBuffer            timeSeriesBuffer;
+
+  public TimeSeriesBufferDataset(String seriesName, TimeSeriesBuffer timeSeriesBuffer)
+  {
+    this.seriesName=seriesName;
+    this.timeSeriesBuffer=timeSeriesBuffer;
+  }
+
+  public TimeSeriesBuffer getTimeSeriesBuffer() { return timeSeriesBuffer; }
+
+  /**
+   * Add a point. The listeners (the chart) are not notified until notifyChanged() is called.
+   *
+   * @param keepEqualTime See TimeSeriesBuffer.add().
+   */
+  public void add(long epochMillis, double value, boolean keepEqualTime)
+  {
+    timeSeriesBuffer.add(epochMillis, value, keepEqualTime);
+  }
+
+  /**
+   * Remove all points. The listeners (the chart) are not notified until notifyChanged() is called.
+   */
+  public void clear()
+  {
+    timeSeriesBuffer.clear();
+  }
+
+  /**
+   * Notify the listeners (the chart) that the points have changed.
+   */
+  public void notifyChanged()
+  {
+    fireDatasetChanged();
+  }
+
+  public int getSeriesCount()
+  {
+    return 1;
+  }
+
+  @SuppressWarnings("rawtypes")
+  public Comparable getSeriesKey(int series)
+  {
+    return seriesName;
+  }
+
+  /**
+   * The points are held in time order which allows JFreeChart to find the
+   * visible points quickly.
+   */
+  @Override
+  public DomainOrder getDomainOrder()
+  {
+    return DomainOrder.ASCENDING;
+  }
+
+  public long getModificationCount()
+  {
+    return timeSeriesBuffer.getModificationCount();
+  }
+
+  /**
+   * As the points are in time order the first and last points give the domain bounds.
+   */
+  public double getDomainLowerBound(boolean includeInterval)
+  {
+    return timeSeriesBuffer.getCount() == 0 ? Double.NaN : timeSeriesBuffer.getTime(0);
+  }
+
+  public double getDomainUpperBound(boolean includeInterval)
+  {
+    int count = timeSeriesBuffer.getCount();
+    return count == 0 ? Double.NaN : timeSeriesBuffer.getTime(count-1);
+  }
+
+  public Range getDomainBounds(boolean includeInterval)
+  {
+    int count = timeSeriesBuffer.getCount();
+    if( count == 0 )
+    {
+      return null;
+    }
+    return new Range(timeSeriesBuffer.getTime(0), timeSeriesBuffer.getTime(count-1));
+  }
+
+  public double getRangeLowerBound(boolean includeInterval)
+  {
+    return timeSeriesBuffer.getMinValue();
+  }
+
+  public double getRangeUpperBound(boolean includeInterval)
+  {
+    return timeSeriesBuffer.getMaxValue();
+  }
+
+  public Range getRangeBounds(boolean includeInterval)
+  {
+    double minValue = timeSeriesBuffer.getMinValue();
+    return Double.isNaN(minValue) ? null : new Range(minValue, timeSeriesBuffer.getMaxValue());
+  }
+
+  /**
+   * Used by the renderer to find the y axis auto range.
+   */
+  @SuppressWarnings("rawtypes")
+  public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval)
+  {
+    return RangeBounds.Find(this, visibleSeriesKeys, xRange, timeSeriesBuffer.getMinValue(), timeSeriesBuffer.getMaxValue());
+  }
+
+  public int getItemCount(int series)
+  {
+    return timeSeriesBuffer.getCount();
+  }
+
+  @Override
+  public double getXValue(int series, int item)
+  {
+    return timeSeriesBuffer.getTime(item);
+  }
+
+  @Override
+  public double getYValue(int series, int item)
+  {
+    return timeSeriesBuffer.getValue(item);
+  }
+
+  public Number getX(int series, int item)
+  {
+    return Long.valueOf( timeSeriesBuffer.getTime(item) );
+  }
+
+  public Number getY(int series, int item)
+  {
+    return Double.valueOf( timeSeriesBuffer.getValue(item) );
+  }
+
+}
@@ -14,8 +14,6 @@ import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.*;
 import org.jfree.data.time.Millisecond;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.data.xy.XYDataset;
 import java.util.*;
 
@@ -23,7 +21,8 @@ public class TimeSeriesPlotPanel extends GenericPlotPanel implements PlotPanelIn
 {
   static final long serialVersionUID=7;
   private JFreeChart                    chart;
-  private Vector<TimeSeries>            timeSeriesList;
+  private Vector<TimeSeriesBufferDataset> datasetList;
+  private ChartPanel                    chartPanel;
   
   public TimeSeriesPlotPanel() {
      super(new BorderLayout());
@@ -33,10 +32,12 @@ public class TimeSeriesPlotPanel extends GenericPlotPanel implements PlotPanelIn
    public void init()
    {
      finalize();
-     timeSeriesList = new Vector<TimeSeries>();
+     setAddedPlotCount(0);
+     datasetList = new Vector<TimeSeriesBufferDataset>();
      chart = createChart(null);
-     ChartPanel chartPanel = new ChartPanel(chart);
+     chartPanel = new ChartPanel(chart);
      chartPanel.setPreferredSize(new java.awt.Dimension(500, 270));
+     addDecimationListener((XYPlot)chart.getPlot(), chartPanel);
      add(chartPanel);
   }
    
@@ -59,24 +60,26 @@ public class TimeSeriesPlotPanel extends GenericPlotPanel implements PlotPanelIn
      return chart;
  }
 
-  @SuppressWarnings("deprecation")
   public void addPlot()
   {
-    int plotIndex=timeSeriesList.size();
-    TimeSeries timeSeries = new TimeSeries(plotName, Millisecond.class);
-    timeSeriesList.add(timeSeries);
+    int plotIndex=datasetList.size();
+    //The points are held in a bounded buffer, older points are removed once
+    //they are older than max_age_seconds or there are more than max_point_count.
+    TimeSeriesBuffer timeSeriesBuffer = new TimeSeriesBuffer(maxPointCount, maxAgeSeconds*1000L);
+    TimeSeriesBufferDataset dataset = new TimeSeriesBufferDataset(plotName, timeSeriesBuffer);
+    datasetList.add(dataset);
     
-    TimeSeriesCollection dataset = new TimeSeriesCollection();
-    dataset.addSeries( timeSeries );
-    ((XYPlot)chart.getPlot()).setDataset(plotIndex, dataset);
+    ((XYPlot)chart.getPlot()).setDataset(plotIndex, getPlotDataset(dataset, (XYPlot)chart.getPlot(), chartPanel));
     genericConfig(chart, (XYPlot)chart.getPlot(), plotIndex);  
+    setAddedPlotCount(datasetList.size());
   }
   
   public int getPlotCount() { return ((XYPlot)chart.getPlot()).getSeriesCount(); }
    
-  public void addPlotValue(double plotIndex, double yValue)
+  public void addPlotValue(double plotIndex, double yValue) throws NetPlotException
   {
-    timeSeriesList.get((int)plotIndex).addOrUpdate(new Millisecond(), yValue);
+    checkPlotIndex((int)plotIndex);
+    stageValue(GenericPlotPanel.TIME_VALUES, (int)plotIndex, System.currentTimeMillis(), 0, yValue);
   }
   
   public void addPlotValue(int plotIndex, double xValue, double yValue) throws NetPlotException 
@@ -86,7 +89,53 @@ public class TimeSeriesPlotPanel extends GenericPlotPanel implements PlotPanelIn
 
   public void addPlotValue(int plotIndex, Millisecond ms, double yValue) throws NetPlotException 
   { 
-    timeSeriesList.get((int)plotIndex).addOrUpdate(ms, yValue);
+    checkPlotIndex(plotIndex);
+    stageValue(GenericPlotPanel.TIME_VALUES, plotIndex, ms.getFirstMillisecond(), 0, yValue);
+  }
+
+  public void addTimePlotValue(int plotIndex, long epochMillis, double yValue) throws NetPlotException 
+  { 
+    checkPlotIndex(plotIndex);
+    stageValue(GenericPlotPanel.TIME_VALUES, plotIndex, epochMillis, 0, yValue);
+  }
+
+  public void addPlotValues(int plotIndex, double yValues[], int offset, int length) throws NetPlotException
+  {
+    checkPlotIndex(plotIndex);
+    stageValues(GenericPlotPanel.TIME_VALUES, plotIndex, System.currentTimeMillis(), null, null, yValues, offset, length);
+  }
+
+  public void addPlotValues(int plotIndex, double xValues[], double yValues[], int offset, int length) throws NetPlotException 
+  { 
+    throw new NetPlotException("addPlotValues(int plotIndex, double xValues[], double yValues[], int offset, int length) should not be used on TimeSeriesPlotPanel"); 
+  }
+
+  public void addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) throws NetPlotException
+  {
+    checkPlotIndex(plotIndex);
+    stageValues(GenericPlotPanel.TIME_VALUES, plotIndex, 0, epochMillis, null, yValues, offset, length);
+  }
+
+  /**
+   * A value with the same time as the previous value added in the same call is
+   * added as another point, so that the values of many lines received in the
+   * same millisecond are all shown. Otherwise a value with the same time as the
+   * newest point replaces it.
+   */
+  void applyValues(int type, int plotIndex, long times[], double xValues[], double yValues[], int offset, int length)
+  {
+    TimeSeriesBufferDataset dataset = datasetList.get(plotIndex);
+    for( int i=offset ; i<offset+length ; i++ ) {
+      dataset.add(times[i], yValues[i], i > offset && times[i] == times[i-1]);
+    }
+  }
+
+  void fireDatasetChanged(int plotIndex)
+  {
+    Vector<TimeSeriesBufferDataset> datasets = datasetList;
+    if( datasets != null && plotIndex < datasets.size() ) {
+      datasets.get(plotIndex).notifyChanged();
+    }
   }
 
   public void removePlots()
@@ -97,8 +146,8 @@ public class TimeSeriesPlotPanel extends GenericPlotPanel implements PlotPanelIn
   
   public void finalize()
   {
-    if( timeSeriesList != null ) {
-      timeSeriesList.removeAllElements();
+    if( datasetList != null ) {
+      datasetList.removeAllElements();
     }
     removeAll();
     chart=null;
@@ -107,11 +156,12 @@ public class TimeSeriesPlotPanel extends GenericPlotPanel implements PlotPanelIn
   
   public void clear(int plotIndex) throws NetPlotException {
     boolean cleared=false;
-    if( timeSeriesList != null ) {
+    if( datasetList != null ) {
       try {
-        TimeSeries timeSeries = timeSeriesList.get(plotIndex);
-        if( timeSeries != null ) {
-          timeSeries.clear();
+        TimeSeriesBufferDataset dataset = datasetList.get(plotIndex);
+        if( dataset != null ) {
+          dataset.clear();
+          plotChanged(plotIndex);
           cleared=true;
         }
       }
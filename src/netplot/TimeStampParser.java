@@ -0,0 +1,186 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.TimeZone;
+
+/**
+ * Responsible for parsing time series lines that include a time stamp.
+ *
+ * Two formats are supported
+ *
+ * plot index:YEAR;MONTH;DAY;HOUR;MINUTE;SECOND;MILLISECOND:value
+ * E.G 0:2013;1;2;23;10;5;587:1.234
+ * The time stamp is local time (as sent by the netplot clients).
+ *
+ * plot index:@epoch milliseconds:value
+ * E.G 0:@1357168205587:1.234
+ * The time stamp is the number of milliseconds since 1 Jan 1970 UTC.
+ *
+ * The fields are read in a single pass over the line and the time stamp is
+ * converted directly to milliseconds since the epoch, without creating a
+ * Scanner or Calendar for each line.
+ */
+public class TimeStampParser
+{
+  public static final char      EPOCH_PREFIX='@';
+  private static final long     MS_PER_DAY=86400000L;
+  private final ValueParser     valueParser;
+  private final TimeZone        timeZone = TimeZone.getDefault();
+  private int                   position;
+  private int                   plotIndex;
+  private long                  epochMillis;
+  private double                value;
+
+  public TimeStampParser(ValueParser valueParser)
+  {
+    this.valueParser=valueParser;
+  }
+
+  /**
+   * Parse a time stamped line. The results are available from getPlotIndex(),
+   * getEpochMillis() and getValue().
+   */
+  public void parse(CharSequence line) throws NetPlotException, NumberFormatException
+  {
+    int end = line.length();
+    position=0;
+    plotIndex = (int)parseLong(line, ':');
+    if( position < end && line.charAt(position) == TimeStampParser.EPOCH_PREFIX )
+    {
+      position++;
+      epochMillis = parseLong(line, ':');
+    }
+    else
+    {
+      char delim = LineProcessor.TIMESTAMP_DELIM.charAt(0);
+      int year        = (int)parseLong(line, delim);
+      int month       = (int)parseLong(line, delim);
+      int day         = (int)parseLong(line, delim);
+      int hour        = (int)parseLong(line, delim);
+      int minute      = (int)parseLong(line, delim);
+      int second      = (int)parseLong(line, delim);
+      int fieldStart  = position;
+      int fieldEnd    = fieldEnd(line, ':');
+      int milliSecond = (int)valueParser.parseDouble(line, fieldStart, fieldEnd);
+      position = fieldEnd+1;
+      if( month < 1 || month > 12 || day < 1 || day > TimeStampParser.DaysInMonth(year, month) ||
+          hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 ||
+          milliSecond < 0 || milliSecond > 999 )
+      {
+        throw new NetPlotException(line+" contains an invalid time stamp");
+      }
+      long localMillis = TimeStampParser.DaysFromEpoch(year, month, day)*TimeStampParser.MS_PER_DAY +
+                         ((hour*60L+minute)*60L+second)*1000L+milliSecond;
+      epochMillis = toUTC(localMillis);
+    }
+    if( position >= end || valueParser.parse(line, position, end) != 1 )
+    {
+      throw new NetPlotException(line+" is an invalid time stamped line. Expected a single value after the time stamp");
+    }
+    value = valueParser.getValues()[0];
+  }
+
+  public int    getPlotIndex()   { return plotIndex; }
+  public long   getEpochMillis() { return epochMillis; }
+  public double getValue()       { return value; }
+
+  /**
+   * Find the end of the field starting at position.
+   */
+  private int fieldEnd(CharSequence line, char delim) throws NetPlotException
+  {
+    int end = line.length();
+    for( int i=position ; i<end ; i++ )
+    {
+      if( line.charAt(i) == delim )
+      {
+        return i;
+      }
+    }
+    throw new NetPlotException(line+" is an invalid time stamped line. Expected plot index:time stamp:value");
+  }
+
+  /**
+   * Read the integer field starting at position and ending with delim.
+   * position is moved past the delimiter.
+   */
+  private long parseLong(CharSequence line, char delim) throws NetPlotException
+  {
+    int end = fieldEnd(line, delim);
+    int i = position;
+    boolean negative=false;
+    if( i < end && line.charAt(i) == '-' )
+    {
+      negative=true;
+      i++;
+    }
+    if( i == end )
+    {
+      throw new NumberFormatException("For input string: \""+line.subSequence(position, end)+"\"");
+    }
+    long result=0;
+    for( ; i<end ; i++ )
+    {
+      char c = line.charAt(i);
+      if( c < '0' || c > '9' )
+      {
+        throw new NumberFormatException("For input string: \""+line.subSequence(position, end)+"\"");
+      }
+      result=result*10+(c-'0');
+    }
+    position=end+1;
+    return negative ? -result : result;
+  }
+
+  /**
+   * Convert a local time in milliseconds to UTC using the default time zone.
+   */
+  private long toUTC(long localMillis)
+  {
+    int offset = timeZone.getOffset(localMillis-timeZone.getRawOffset());
+    long utcMillis = localMillis-offset;
+    //Check that we have the right side of a daylight saving change
+    int utcOffset = timeZone.getOffset(utcMillis);
+    if( utcOffset != offset )
+    {
+      utcMillis = localMillis-utcOffset;
+    }
+    return utcMillis;
+  }
+
+  /**
+   * @return The number of days from 1 Jan 1970 to the date (proleptic Gregorian calendar).
+   */
+  public static long DaysFromEpoch(int year, int month, int day)
+  {
+    long y = month <= 2 ? year-1 : year;
+    long era = (y >= 0 ? y : y-399)/400;
+    long yearOfEra = y-era*400;
+    long dayOfYear = (153*(month > 2 ? month-3 : month+9)+2)/5+day-1;
+    long dayOfEra = yearOfEra*365+yearOfEra/4-yearOfEra/100+dayOfYear;
+    return era*146097+dayOfEra-719468;
+  }
+
+  /**
+   * @return The number of days in the month (1-12) of the year.
+   */
+  public static int DaysInMonth(int year, int month)
+  {
+    if( month == 2 )
+    {
+      boolean leapYear = (year%4 == 0 && year%100 != 0) || year%400 == 0;
+      return leapYear ? 29 : 28;
+    }
+    if( month == 4 || month == 6 || month == 9 || month == 11 )
+    {
+      return 30;
+    }
+    return 31;
+  }
+
+}
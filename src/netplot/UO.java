@@ -7,45 +7,171 @@
 package netplot;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
 
 /**
  * Responsible for sending information to the user (UO=USerOutput, but quicker to type)
  * 
+ * Messages are not written by the calling thread. They are added to a bounded
+ * lock free queue and written (to the frame status bar or stdout) by a single
+ * output thread, so threads receiving data never wait for each other or for
+ * the status bar. If the queue is full messages are dropped and the number
+ * dropped is reported. Debug messages are only created when debug is enabled.
  */
 public class UO
 {
-  private static boolean    Debug=true;
-  private static PlotFrame  PlotFrame;
+  public static final int   MAX_QUEUED_MESSAGES=10000;
+  private static volatile boolean Debug=false;
+  private static volatile PlotFrameInterface  PlotFrame;
+  private static final ConcurrentLinkedQueue<String> Messages = new ConcurrentLinkedQueue<String>();
+  private static final AtomicInteger QueuedMessageCount = new AtomicInteger();
+  private static final AtomicLong DroppedMessageCount = new AtomicLong();
+  private static volatile Thread OutputThread;
+  private static volatile boolean OutputThreadWaiting;
   
   /**
    * Responsible for creating the single frame to hold the graphs.
    * 
    * @param plotPanel This should be a JPanel that has a PlotPanelInterface
    */
-  public synchronized static void InitWindow()
+  public static void InitWindow()
   {
-    PlotFrame = new PlotFrame();
-    UO.PlotFrame.setVisible(true);
+    try
+    {
+      EDTCommand.RunAndWait(new EDTCommand()
+      {
+        public void execute()
+        {
+          PlotFrame plotFrame = new PlotFrame();
+          plotFrame.setVisible(true);
+          UO.PlotFrame = plotFrame;
+        }
+      });
+    }
+    catch(NetPlotException e)
+    {
+      UO.Error(e.getLocalizedMessage());
+    }
+    UO.StartOutputThread();
+  }
+
+  /**
+   * Responsible for creating the object to hold the graphs when there is no display.
+   * The charts are only drawn when an image is saved.
+   * 
+   * @param width  The width of the images saved.
+   * @param height The height of the images saved.
+   */
+  public static void InitHeadless(int width, int height)
+  {
+    PlotFrame = new HeadlessPlotFrame(width, height);
+    RenderScheduler.SetRenderOnDemand(true);
+    UO.StartOutputThread();
   }
 
-  public synchronized static void SetFrameTitle(String title)
+  /**
+   * Save an image of all the charts to a file. The file extension (png or gif) sets the image format.
+   * This is not synchronized as the image is created on the EDT, which may be waiting to 
+   * display a message.
+   * 
+   * @param file The file to save the image to.
+   */
+  public static void SaveImage(final File file) throws NetPlotException
   {
-    UO.PlotFrame.setTitle(title);
+    final PlotFrameInterface frame = UO.PlotFrame;
+    final String errorMessage[] = new String[1];
+    Runnable saveImage = new Runnable()
+    {
+      public void run()
+      {
+        //Update the charts with any values not yet drawn
+        RenderScheduler.RenderDirtyPanels();
+        BufferedImage image = frame.createImage();
+        if( image == null )
+        {
+          errorMessage[0]="No charts to save to "+file;
+          return;
+        }
+        try
+        {
+          if( !netplot.PlotFrame.WriteImage(image, file) )
+          {
+            errorMessage[0]=file+": Invalid image file type. File extension must be gif or png.";
+          }
+        }
+        catch(IOException e)
+        {
+          errorMessage[0]=file+": "+e.getLocalizedMessage();
+        }
+      }
+    };
+    if( frame == null )
+    {
+      throw new NetPlotException("No charts to save to "+file);
+    }
+    if( SwingUtilities.isEventDispatchThread() )
+    {
+      saveImage.run();
+    }
+    else
+    {
+      try
+      {
+        SwingUtilities.invokeAndWait(saveImage);
+      }
+      catch(InterruptedException e)
+      {
+        throw new NetPlotException("Interrupted while saving "+file);
+      }
+      catch(InvocationTargetException e)
+      {
+        throw new NetPlotException(file+": "+e.getCause());
+      }
+    }
+    if( errorMessage[0] != null )
+    {
+      throw new NetPlotException(errorMessage[0]);
+    }
+  }
+
+  public static void SetFrameTitle(final String title)
+  {
+    EDTCommand.RunLater(new EDTCommand()
+    {
+      public void execute()
+      {
+        UO.PlotFrame.setTitle(title);
+      }
+    });
   }
   
   /**
-   * Add a component to the output frame
+   * Add a component to the output frame. The frame is changed on the EDT.
    * 
    * @param comp
    * @param index
    */
-  public synchronized static void Set(Component comp, int index)
+  public static void Set(final Component comp, final int index)
   {
-    UO.Remove(index);
-    UO.PlotFrame.addPanel(comp, index);
+    EDTCommand.RunLater(new EDTCommand()
+    {
+      public void execute()
+      {
+        UO.Remove(index);
+        UO.PlotFrame.addPanel(comp, index);
+      }
+    });
   }
   
-  private synchronized static void Remove(int index)
+  private static void Remove(int index)
   {
     if( index < UO.PlotFrame.getPanelCount()  )
     {
@@ -61,9 +187,15 @@ public class UO
    * @param rows
    * @param columns
    */
-  public synchronized static void SetRowsColumns(int rows, int columns)
+  public static void SetRowsColumns(final int rows, final int columns)
   {
-    UO.PlotFrame.setChartLayout( rows, columns );
+    EDTCommand.RunLater(new EDTCommand()
+    {
+      public void execute()
+      {
+        UO.PlotFrame.setChartLayout( rows, columns );
+      }
+    });
   }
   
   /**
@@ -71,29 +203,28 @@ public class UO
    * By default debugging is disabled.
    * @param debug True if debugging is to be enabled.
    */
-  public synchronized static void EnableDebug(boolean debug) { UO.Debug=debug; }
+  public static void EnableDebug(boolean debug) { UO.Debug=debug; }
   
   /**
    * Return the debug state.
    * @return True if debugging is enabled.
    */
-  public synchronized static boolean IsDebugEnabled() { return UO.Debug; }
+  public static boolean IsDebugEnabled() { return UO.Debug; }
   
   /**
    * Will display a stack trace of the exception on stdout if debug is enabled.
    * 
    * @param exception The exception to be used for debugging purposes.
    */
-  public synchronized static void Debug(Exception exception)
+  public static void Debug(Exception exception)
   {
-    if( UO.Debug )
+    if( !UO.Debug )
     {
-      if( exception != null ) {
-    	  exception.printStackTrace();
-      }
+      return;
     }
     if( exception != null )
     {
+      exception.printStackTrace();
       String message = exception.getLocalizedMessage();
       if( message != null && message.length() > 0 )
       {
@@ -107,7 +238,7 @@ public class UO
    * 
    * @param message The message to be used for debugging purposes.
    */
-  public synchronized static void Debug(String line)
+  public static void Debug(String line)
   {
     if( UO.Debug )
     {
@@ -120,7 +251,7 @@ public class UO
    * 
    * @param message The line of text to be displayed
    */
-  public synchronized static void Info(String line)
+  public static void Info(String line)
   {
     UO.Println("INFO:  "+line);
   }
@@ -130,29 +261,94 @@ public class UO
    * 
    * @param message The line of text to be displayed
    */
-  public synchronized static void Error(String line)
+  public static void Error(String line)
   {
     UO.Println("ERROR: "+line);
   }
 
   /**
-   * Print a line of test to stdout
+   * Print a line of text to stdout, or queue it to be shown in the frame once the frame has been created.
    * 
    * @param line
    */
-  private synchronized static void Println(String line)
+  private static void Println(String line)
   {
-    if( UO.PlotFrame == null )
+    if( UO.OutputThread == null )
     {
       System.out.println(line);
+      return;
     }
-    else
+    if( UO.QueuedMessageCount.incrementAndGet() > UO.MAX_QUEUED_MESSAGES )
     {
+      UO.QueuedMessageCount.decrementAndGet();
+      UO.DroppedMessageCount.incrementAndGet();
+      return;
+    }
+    UO.Messages.add(line);
+    if( UO.OutputThreadWaiting )
+    {
+      LockSupport.unpark(UO.OutputThread);
+    }
+  }
+
+  /**
+   * Start the thread that outputs the queued messages. The queued messages are
+   * also output when the program exits.
+   */
+  private synchronized static void StartOutputThread()
+  {
+    if( UO.OutputThread != null )
+    {
+      return;
+    }
+    Thread outputThread = new Thread("UO")
+    {
+      public void run()
+      {
+        while(true)
+        {
+          UO.OutputThreadWaiting=true;
+          //Check again after setting the flag so that a message added before it was set is not left waiting
+          if( UO.Messages.isEmpty() )
+          {
+            LockSupport.park();
+          }
+          UO.OutputThreadWaiting=false;
+          UO.OutputMessages();
+        }
+      }
+    };
+    outputThread.setDaemon(true);
+    UO.OutputThread=outputThread;
+    outputThread.start();
+    Runtime.getRuntime().addShutdownHook( new Thread()
+    {
+      public void run()
+      {
+        UO.OutputMessages();
+      }
+    });
+  }
+
+  /**
+   * Output all the queued messages.
+   */
+  private synchronized static void OutputMessages()
+  {
+    String line;
+    while( (line=UO.Messages.poll()) != null )
+    {
+      UO.QueuedMessageCount.decrementAndGet();
       UO.PlotFrame.addStatusMessage(line);
     }
+    long droppedMessageCount = UO.DroppedMessageCount.getAndSet(0);
+    if( droppedMessageCount > 0 )
+    {
+      UO.PlotFrame.addStatusMessage("ERROR: "+droppedMessageCount+" messages were dropped as they were produced faster than they could be shown.");
+    }
   }
   
-  public synchronized static void SetEnableStatusMessages(boolean enabled)
+  public static void SetEnableStatusMessages(boolean enabled)
   {
     UO.PlotFrame.SetEnableStatusMessages( enabled );
   }
@@ -0,0 +1,220 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+/**
+ * Responsible for parsing the numbers held in a line of text.
+ *
+ * The characters of the line are scanned once and the values are written into
+ * a double array that is reused for every line, so no objects are created for
+ * each value. Numbers may be separated by spaces, tabs, commas or colons.
+ *
+ * Numbers with up to 18 significant digits and a decimal exponent of up to 22
+ * are converted exactly without calling Double.parseDouble(). Any other token
+ * (E.G NaN, Infinity or 1e300) is passed to Double.parseDouble() so the result
+ * is always the same as Double.parseDouble() would return.
+ */
+public class ValueParser
+{
+  public static final int       INITIAL_VALUE_COUNT=64;
+  private static final int      MAX_DIGITS=18;
+  private static final long     MAX_EXACT_MANTISSA=1L<<53;
+  private static final double   POWERS_OF_TEN[] = { 1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,
+                                                    1e8,  1e9,  1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+                                                    1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+  private double                values[] = new double[ValueParser.INITIAL_VALUE_COUNT];
+  private int                   tokenEnd;
+
+  /**
+   * Parse all the numbers in a line.
+   *
+   * @param line The line of text.
+   * @return The number of values read. The values are held in getValues().
+   */
+  public int parse(CharSequence line) throws NumberFormatException
+  {
+    return parse(line, 0, line.length());
+  }
+
+  /**
+   * Parse all the numbers held between line[start] and line[end-1].
+   *
+   * @return The number of values read. The values are held in getValues().
+   */
+  public int parse(CharSequence line, int start, int end) throws NumberFormatException
+  {
+    int count=0;
+    int i=start;
+    while( i < end )
+    {
+      if( ValueParser.IsDelimiter(line.charAt(i)) )
+      {
+        i++;
+        continue;
+      }
+      if( count == values.length )
+      {
+        double newValues[] = new double[values.length*2];
+        System.arraycopy(values, 0, newValues, 0, count);
+        values=newValues;
+      }
+      values[count++] = parseToken(line, i, end);
+      i=tokenEnd;
+    }
+    return count;
+  }
+
+  /**
+   * @return The values read by the last call to parse(). This array is reused
+   *         by the next call to parse().
+   */
+  public double[] getValues()
+  {
+    return values;
+  }
+
+  /**
+   * Parse a single number.
+   *
+   * @return The value of the number held between line[start] and line[end-1].
+   */
+  public double parseDouble(CharSequence line, int start, int end) throws NumberFormatException
+  {
+    double value = parseToken(line, start, end);
+    if( tokenEnd != end )
+    {
+      throw new NumberFormatException("For input string: \""+line.subSequence(start, end)+"\"");
+    }
+    return value;
+  }
+
+  /**
+   * Parse the number starting at line[start] and ending at the next delimiter
+   * or line[end-1]. tokenEnd is set to the index after the number.
+   */
+  private double parseToken(CharSequence line, int start, int end) throws NumberFormatException
+  {
+    int     i=start;
+    boolean negative=false;
+    long    mantissa=0;
+    int     digitCount=0;
+    int     exponent=0;
+    boolean exact=true;
+    boolean haveDigits=false;
+    char    c = line.charAt(i);
+
+    if( c == '-' || c == '+' )
+    {
+      negative = c == '-';
+      i++;
+    }
+    //Integer part
+    while( i < end && (c=line.charAt(i)) >= '0' && c <= '9' )
+    {
+      haveDigits=true;
+      if( mantissa != 0 || c != '0' )
+      {
+        mantissa=mantissa*10+(c-'0');
+        digitCount++;
+      }
+      i++;
+    }
+    //Fraction part
+    if( i < end && line.charAt(i) == '.' )
+    {
+      i++;
+      while( i < end && (c=line.charAt(i)) >= '0' && c <= '9' )
+      {
+        haveDigits=true;
+        if( mantissa != 0 || c != '0' )
+        {
+          mantissa=mantissa*10+(c-'0');
+          digitCount++;
+        }
+        exponent--;
+        i++;
+      }
+    }
+    //Exponent part
+    if( haveDigits && i < end && ( (c=line.charAt(i)) == 'e' || c == 'E' ) )
+    {
+      i++;
+      boolean negativeExponent=false;
+      if( i < end && ( (c=line.charAt(i)) == '-' || c == '+' ) )
+      {
+        negativeExponent = c == '-';
+        i++;
+      }
+      int exponentValue=0;
+      boolean haveExponentDigits=false;
+      while( i < end && (c=line.charAt(i)) >= '0' && c <= '9' )
+      {
+        haveExponentDigits=true;
+        if( exponentValue < 1000 )
+        {
+          exponentValue=exponentValue*10+(c-'0');
+        }
+        i++;
+      }
+      if( !haveExponentDigits )
+      {
+        exact=false;
+      }
+      exponent += negativeExponent ? -exponentValue : exponentValue;
+    }
+    if( digitCount > ValueParser.MAX_DIGITS || !haveDigits || ( i < end && !ValueParser.IsDelimiter(line.charAt(i)) ) )
+    {
+      exact=false;
+    }
+    if( exact )
+    {
+      double value;
+      if( mantissa == 0 )
+      {
+        value=0;
+      }
+      else if( mantissa <= ValueParser.MAX_EXACT_MANTISSA && exponent >= 0 && exponent < ValueParser.POWERS_OF_TEN.length )
+      {
+        value = (double)mantissa * ValueParser.POWERS_OF_TEN[exponent];
+      }
+      else if( mantissa <= ValueParser.MAX_EXACT_MANTISSA && exponent < 0 && -exponent < ValueParser.POWERS_OF_TEN.length )
+      {
+        value = (double)mantissa / ValueParser.POWERS_OF_TEN[-exponent];
+      }
+      else
+      {
+        return parseSlow(line, start, end);
+      }
+      tokenEnd=i;
+      return negative ? -value : value;
+    }
+    return parseSlow(line, start, end);
+  }
+
+  /**
+   * Use Double.parseDouble() for numbers that can't be converted exactly by parseToken().
+   */
+  private double parseSlow(CharSequence line, int start, int end) throws NumberFormatException
+  {
+    int i=start;
+    while( i < end && !ValueParser.IsDelimiter(line.charAt(i)) )
+    {
+      i++;
+    }
+    tokenEnd=i;
+    return Double.parseDouble( line.subSequence(start, i).toString() );
+  }
+
+  /**
+   * @return True if c separates the numbers in a line.
+   */
+  public static boolean IsDelimiter(char c)
+  {
+    return c == ',' || c == ' ' || c == ':' || c == '\t';
+  }
+
+}
@@ -0,0 +1,96 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.lang.reflect.Method;
+
+/**
+ * Responsible for starting the threads that serve the TCP/IP ports and the
+ * connected clients.
+ *
+ * When virtual threads are enabled (-virtual_threads) and the Java runtime
+ * supports them (Java 21 or later) each thread is a virtual thread, so many
+ * mostly idle client connections do not each hold an OS thread. Virtual
+ * threads are created by reflection as netplot is built for older Java
+ * versions. On older runtimes platform threads are used.
+ */
+public class VirtualThreads
+{
+  //Thread.Builder.OfVirtual, created by Thread.ofVirtual(), or null if not used
+  private static Object   VirtualThreadBuilder;
+  //Thread.Builder.unstarted(Runnable)
+  private static Method   UnstartedMethod;
+  //Thread.Builder.name(String)
+  private static Method   NameMethod;
+
+  /**
+   * Use virtual threads for the threads started from now on if the Java runtime supports them.
+   *
+   * @return True if virtual threads are used.
+   */
+  public synchronized static boolean Enable()
+  {
+    try
+    {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      VirtualThreads.NameMethod = builderClass.getMethod("name", String.class);
+      VirtualThreads.UnstartedMethod = builderClass.getMethod("unstarted", Runnable.class);
+      VirtualThreads.VirtualThreadBuilder = builder;
+      return true;
+    }
+    catch(Exception e)
+    {
+      //Not supported before Java 21
+      UO.Debug(e);
+      return false;
+    }
+  }
+
+  /**
+   * @return True if virtual threads are used.
+   */
+  public synchronized static boolean IsEnabled()
+  {
+    return VirtualThreads.VirtualThreadBuilder != null;
+  }
+
+  /**
+   * Start a thread.
+   *
+   * @param runnable Run by the thread.
+   * @param name     The name of the thread.
+   * @return The thread started, a virtual thread if enabled.
+   */
+  public static Thread Start(Runnable runnable, String name)
+  {
+    Thread thread = null;
+    synchronized(VirtualThreads.class)
+    {
+      if( VirtualThreads.VirtualThreadBuilder != null )
+      {
+        try
+        {
+          //Thread.Builder is not thread safe
+          VirtualThreads.NameMethod.invoke(VirtualThreads.VirtualThreadBuilder, name);
+          thread = (Thread)VirtualThreads.UnstartedMethod.invoke(VirtualThreads.VirtualThreadBuilder, runnable);
+        }
+        catch(Exception e)
+        {
+          UO.Debug(e);
+        }
+      }
+    }
+    if( thread == null )
+    {
+      thread = new Thread(runnable, name);
+    }
+    thread.start();
+    return thread;
+  }
+
+}
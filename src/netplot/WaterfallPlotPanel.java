@@ -0,0 +1,428 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+
+import org.jfree.data.time.Millisecond;
+
+/**
+ * Responsible for showing a waterfall chart. Each row of values received (E.G
+ * the bins of a spectrum) is drawn as a row of pixels at the top of the chart
+ * and the previous rows scroll down, the colour of each pixel showing the size
+ * of the value.
+ *
+ * JFreeChart is not used. The pixels are held in the int array of a
+ * BufferedImage used as a ring of rows, so adding a row only sets the pixels
+ * of one row and the image is drawn (scaled to the size of the chart) in two
+ * parts, the newest rows first. The rows received from the connection threads
+ * are held until the chart is next redrawn, at most row_count rows are held as
+ * older rows would be scrolled off the chart.
+ */
+public class WaterfallPlotPanel extends GenericPlotPanel implements PlotPanelInterface
+{
+  static final long serialVersionUID=1;
+  public static final int     DEFAULT_ROW_COUNT=512;
+  //The max size of the image (int pixels) so that a large row_count does not use all the memory
+  public static final long    MAX_PIXEL_COUNT=1<<25;
+  public static final int     BORDER=5;
+  //The colours from the lowest to the highest value
+  private static final Color  SCALE_COLOURS[] = { Color.BLACK, Color.BLUE, Color.CYAN, Color.YELLOW, Color.RED };
+  public static final int     PALETTE[] = WaterfallPlotPanel.CreatePalette(256);
+  //The palette as an image of one row, drawn as the colour scale
+  private static final BufferedImage PALETTE_IMAGE = WaterfallPlotPanel.CreatePaletteImage();
+  private WaterfallComponent  waterfallComponent;
+  //The rows received but not yet drawn, oldest first, and rows no longer used, guarded by rowLock
+  private final Object              rowLock = new Object();
+  private ArrayDeque<double[]>      stagedRows = new ArrayDeque<double[]>();
+  private final ArrayDeque<double[]> freeRows = new ArrayDeque<double[]>();
+  //Only used on the EDT, swapped with stagedRows
+  private ArrayDeque<double[]>      appliedRows = new ArrayDeque<double[]>();
+  //The image holding a ring of rows. The newest row is at imageRow, the next row is drawn above it.
+  private BufferedImage       image;
+  private int                 pixels[];
+  private int                 columns;
+  private int                 imageRowCount;
+  private int                 imageRow;
+  //The values shown by the first and last colours
+  private double              lowValue;
+  private double              highValue;
+
+  public WaterfallPlotPanel()
+  {
+    super(new BorderLayout());
+    init();
+  }
+
+  public void init()
+  {
+    removeAll();
+    clearImage();
+    waterfallComponent = new WaterfallComponent();
+    waterfallComponent.setPreferredSize(new Dimension(500, 270));
+    add(waterfallComponent);
+  }
+
+  /**
+   * @return The colours from the lowest to the highest value, blended between SCALE_COLOURS.
+   */
+  private static int[] CreatePalette(int size)
+  {
+    int palette[] = new int[size];
+    int steps = WaterfallPlotPanel.SCALE_COLOURS.length-1;
+    for( int i=0 ; i<size ; i++ )
+    {
+      double position = (double)i*steps/(size-1);
+      int colourIndex = Math.min(steps-1, (int)position);
+      double fraction = position-colourIndex;
+      Color low = WaterfallPlotPanel.SCALE_COLOURS[colourIndex];
+      Color high = WaterfallPlotPanel.SCALE_COLOURS[colourIndex+1];
+      int red = (int)Math.round(low.getRed()+(high.getRed()-low.getRed())*fraction);
+      int green = (int)Math.round(low.getGreen()+(high.getGreen()-low.getGreen())*fraction);
+      int blue = (int)Math.round(low.getBlue()+(high.getBlue()-low.getBlue())*fraction);
+      palette[i] = (red<<16)|(green<<8)|blue;
+    }
+    return palette;
+  }
+
+  private static BufferedImage CreatePaletteImage()
+  {
+    BufferedImage paletteImage = new BufferedImage(WaterfallPlotPanel.PALETTE.length, 1, BufferedImage.TYPE_INT_RGB);
+    paletteImage.setRGB(0, 0, WaterfallPlotPanel.PALETTE.length, 1, WaterfallPlotPanel.PALETTE, 0, WaterfallPlotPanel.PALETTE.length);
+    return paletteImage;
+  }
+
+  /**
+   * The attributes set (row_count, enable_autoscale, min_scale_value and
+   * max_scale_value) are used from the next row added.
+   */
+  public void addPlot()
+  {
+    clearImage();
+    setAddedPlotCount(1);
+  }
+
+  public int getPlotCount()
+  {
+    //We only ever have one plot on the waterfall graph
+    return 1;
+  }
+
+  /**
+   * Add a row to the top of the chart. The values are copied and the row is
+   * drawn on the EDT when the chart is next redrawn. Called from any thread.
+   */
+  public void addRow(double values[], int offset, int length) throws NetPlotException
+  {
+    if( length < 1 )
+    {
+      throw new NetPlotException("A row of a waterfall plot must hold at least one value.");
+    }
+    if( (long)length*rowCount > WaterfallPlotPanel.MAX_PIXEL_COUNT )
+    {
+      throw new NetPlotException("A row of "+length+" values is too long for a waterfall plot of "+rowCount+" rows, reduce "+KeyWords.ROW_COUNT+".");
+    }
+    synchronized(rowLock)
+    {
+      double row[];
+      if( stagedRows.size() >= rowCount )
+      {
+        //The oldest row would be scrolled off the chart before it is seen
+        row = stagedRows.poll();
+      }
+      else
+      {
+        row = freeRows.poll();
+      }
+      if( row == null || row.length != length )
+      {
+        row = new double[length];
+      }
+      System.arraycopy(values, offset, row, 0, length);
+      stagedRows.add(row);
+    }
+    plotChanged(0);
+  }
+
+  /**
+   * Draw the rows received into the image. Must be called on the EDT.
+   */
+  public void applyStagedValues()
+  {
+    super.applyStagedValues();
+    ArrayDeque<double[]> rows;
+    synchronized(rowLock)
+    {
+      rows=stagedRows;
+      stagedRows=appliedRows;
+      appliedRows=rows;
+    }
+    if( rows.isEmpty() )
+    {
+      return;
+    }
+    for( double row[] : rows )
+    {
+      drawRow(row);
+    }
+    synchronized(rowLock)
+    {
+      while( !rows.isEmpty() && freeRows.size() < rowCount )
+      {
+        freeRows.add(rows.poll());
+      }
+    }
+    rows.clear();
+  }
+
+  /**
+   * Set the pixels of the next row of the image from the values of a row.
+   */
+  private void drawRow(double row[])
+  {
+    if( image == null || row.length != columns )
+    {
+      //The first row or the length of the rows has changed
+      createImage(row.length);
+    }
+    if( autoScaleEnabled )
+    {
+      //The colour scale includes all values received. Rows already drawn keep their colours.
+      for( int i=0 ; i<row.length ; i++ )
+      {
+        double value = row[i];
+        if( Double.isNaN(value) || Double.isInfinite(value) )
+        {
+          continue;
+        }
+        if( Double.isNaN(lowValue) || value < lowValue )
+        {
+          lowValue=value;
+        }
+        if( Double.isNaN(highValue) || value > highValue )
+        {
+          highValue=value;
+        }
+      }
+    }
+    imageRow = imageRow == 0 ? imageRowCount-1 : imageRow-1;
+    int pixelIndex = imageRow*columns;
+    int maxColour = WaterfallPlotPanel.PALETTE.length-1;
+    double scale = highValue > lowValue ? maxColour/(highValue-lowValue) : 0;
+    for( int i=0 ; i<row.length ; i++ )
+    {
+      double value = row[i];
+      int colour = 0;
+      if( value >= highValue )
+      {
+        colour = highValue > lowValue ? maxColour : 0;
+      }
+      else if( value > lowValue )
+      {
+        colour = (int)((value-lowValue)*scale);
+      }
+      pixels[pixelIndex+i] = WaterfallPlotPanel.PALETTE[colour];
+    }
+  }
+
+  /**
+   * Create an image of rowCount rows holding no values.
+   */
+  private void createImage(int columnCount)
+  {
+    columns=columnCount;
+    imageRowCount=rowCount;
+    imageRow=0;
+    image = new BufferedImage(columns, imageRowCount, BufferedImage.TYPE_INT_RGB);
+    pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+    Arrays.fill(pixels, WaterfallPlotPanel.PALETTE[0]);
+  }
+
+  /**
+   * Remove the image and the colour scale. They are created from the next row drawn.
+   */
+  private void clearImage()
+  {
+    image=null;
+    pixels=null;
+    columns=0;
+    if( autoScaleEnabled )
+    {
+      lowValue=Double.NaN;
+      highValue=Double.NaN;
+    }
+    else
+    {
+      lowValue=minScaleValue;
+      highValue=maxScaleValue;
+    }
+  }
+
+  void fireDatasetChanged(int plotIndex)
+  {
+    WaterfallComponent component = waterfallComponent;
+    if( component != null )
+    {
+      component.repaint();
+    }
+  }
+
+  /**
+   * Draw the chart (without Swing painting the panel). Used when there is no display.
+   */
+  void drawChart(Graphics2D g2, Rectangle2D area)
+  {
+    drawWaterfall(g2, (int)area.getX(), (int)area.getY(), (int)area.getWidth(), (int)area.getHeight());
+  }
+
+  /**
+   * Draw the title, the rows (newest at the top) and the colour scale.
+   */
+  private void drawWaterfall(Graphics2D g2, int x, int y, int width, int height)
+  {
+    g2.setColor(Color.WHITE);
+    g2.fillRect(x, y, width, height);
+    FontMetrics fontMetrics = g2.getFontMetrics();
+    int textHeight = fontMetrics.getHeight();
+    int top = y+WaterfallPlotPanel.BORDER;
+    int bottom = y+height-WaterfallPlotPanel.BORDER;
+    int left = x+WaterfallPlotPanel.BORDER;
+    int right = x+width-WaterfallPlotPanel.BORDER;
+    g2.setColor(Color.BLACK);
+    if( plotTitle.length() > 0 )
+    {
+      Font font = g2.getFont();
+      g2.setFont( font.deriveFont(Font.BOLD, font.getSize2D()*1.5f) );
+      FontMetrics titleMetrics = g2.getFontMetrics();
+      g2.drawString(plotTitle, x+(width-titleMetrics.stringWidth(plotTitle))/2, top+titleMetrics.getAscent());
+      top+=titleMetrics.getHeight()+WaterfallPlotPanel.BORDER;
+      g2.setFont(font);
+    }
+    //The colour scale with the low value on the left and the high value on the right
+    String lowText = Double.isNaN(lowValue) ? "" : String.format("%.4g", lowValue);
+    String highText = Double.isNaN(highValue) ? "" : String.format("%.4g", highValue);
+    int baseline = bottom-fontMetrics.getDescent();
+    g2.drawString(lowText, left, baseline);
+    g2.drawString(highText, right-fontMetrics.stringWidth(highText), baseline);
+    if( xAxisName.length() > 0 )
+    {
+      g2.drawString(xAxisName, x+(width-fontMetrics.stringWidth(xAxisName))/2, baseline);
+    }
+    bottom-=textHeight;
+    int scaleHeight = textHeight/2;
+    g2.drawImage(WaterfallPlotPanel.PALETTE_IMAGE, left, bottom-scaleHeight, right-left, scaleHeight, null);
+    bottom-=scaleHeight+WaterfallPlotPanel.BORDER;
+    if( bottom <= top || right <= left )
+    {
+      return;
+    }
+    if( image == null )
+    {
+      g2.setColor( new Color(WaterfallPlotPanel.PALETTE[0]) );
+      g2.fillRect(left, top, right-left, bottom-top);
+      return;
+    }
+    //The rows from the newest row to the end of the image then from the start of the image to the oldest row
+    int split = top+(int)((long)(bottom-top)*(imageRowCount-imageRow)/imageRowCount);
+    g2.drawImage(image, left, top, right, split, 0, imageRow, columns, imageRowCount, null);
+    if( imageRow > 0 )
+    {
+      g2.drawImage(image, left, split, right, bottom, 0, 0, columns, imageRow, null);
+    }
+  }
+
+  /**
+   * The component that shows the waterfall in the panel.
+   */
+  private class WaterfallComponent extends JComponent
+  {
+    static final long serialVersionUID=1;
+
+    protected void paintComponent(Graphics g)
+    {
+      drawWaterfall((Graphics2D)g, 0, 0, getWidth(), getHeight());
+    }
+  }
+
+  public void addPlotValues(int plotIndex, double yValues[], int offset, int length) throws NetPlotException
+  {
+    throw new NetPlotException("Values are added to a waterfall plot a row at a time. Send all the values of a row on one line (E.G 1.2,3.4,5.6).");
+  }
+
+  public void addPlotValue(double xValue, double yValue) throws NetPlotException
+  {
+    throw new NetPlotException("addPlotValue(double xValue, double yValue) is invalid for WaterfallPlotPanel");
+  }
+
+  public void addPlotValue(int plotIndex, double xValue, double yValue) throws NetPlotException
+  {
+    throw new NetPlotException("x/y values are invalid for a waterfall plot. Send all the values of a row on one line (E.G 1.2,3.4,5.6).");
+  }
+
+  public void addPlotValues(int plotIndex, double xValues[], double yValues[], int offset, int length) throws NetPlotException
+  {
+    throw new NetPlotException("x/y values are invalid for a waterfall plot. Send all the values of a row on one line (E.G 1.2,3.4,5.6).");
+  }
+
+  public void addPlotValue(int plotIndex, Millisecond ms, double yValue) throws NetPlotException
+  {
+    throw new NetPlotException("addPlotValue(int plotIndex, Millisecond ms, double yValue) should not be used on WaterfallPlotPanel");
+  }
+
+  public void addTimePlotValue(int plotIndex, long epochMillis, double yValue) throws NetPlotException
+  {
+    throw new NetPlotException("Time stamped values are invalid for a waterfall plot. Send all the values of a row on one line (E.G 1.2,3.4,5.6).");
+  }
+
+  public void addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) throws NetPlotException
+  {
+    throw new NetPlotException("Time stamped values are invalid for a waterfall plot. Send all the values of a row on one line (E.G 1.2,3.4,5.6).");
+  }
+
+  public void removePlots()
+  {
+    init();
+    validate();
+  }
+
+  public void clear(int plotIndex) throws NetPlotException
+  {
+    if( plotIndex != 0 )
+    {
+      throw new NetPlotException("clear "+plotIndex+" is invalid for a waterfall plot. A waterfall plot can only contain a single plot. Try clear 0 instead.");
+    }
+    synchronized(rowLock)
+    {
+      freeRows.addAll(stagedRows);
+      stagedRows.clear();
+    }
+    clearImage();
+    plotChanged(0);
+  }
+
+  /**
+   * The rows of a waterfall plot always scroll so this removes the rows shown, as clear does.
+   */
+  public void replot(int plotIndex) throws NetPlotException
+  {
+    clear(plotIndex);
+  }
+
+}
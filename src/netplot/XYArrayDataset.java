@@ -0,0 +1,328 @@
+/*****************************************************************************************
+ *                             Copyright 2009 Paul Austen                                *
+ *                                                                                       *
+ * This program is distributed under the terms of the GNU Lesser General Public License  *
+ *****************************************************************************************/
+
+package netplot;
+
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Responsible for holding the points of a single xy plot.
+ *
+ * The points are held in primitive arrays sorted by x value, as an XYSeries
+ * would hold them, so no objects are held for each point. Adding a point with
+ * an x value at or after the last point is O(1), other points are inserted in
+ * x order.
+ *
+ * After replot() the points added replace the points held, from the first
+ * point onwards. The point at the write position is replaced directly (O(1))
+ * if it has the same x value, which is the case when the same x values are
+ * sent on every sweep. Otherwise the point with the same x value is found by
+ * binary search and its y value replaced, or the point is inserted if there
+ * is none.
+ *
+ * The min and max y values are held so that the y axis auto range does not
+ * read every point. They are only recalculated when the min or max point is
+ * replaced.
+ */
+public class XYArrayDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, XYRangeInfo, ModificationCounter
+{
+  static final long serialVersionUID=1;
+  public static final int INITIAL_CAPACITY=1024;
+  private String          seriesName;
+  private double          xValues[] = new double[XYArrayDataset.INITIAL_CAPACITY];
+  private double          yValues[] = new double[XYArrayDataset.INITIAL_CAPACITY];
+  private int             count;
+  //The index of the point replaced by the next point added, count if not replotting
+  private int             writeIndex;
+  private long            modificationCount;
+  //The y range of the points, NaN if there are no (non NaN) y values
+  private double          minY=Double.NaN;
+  private double          maxY=Double.NaN;
+  private boolean         rangeValid=true;
+
+  public XYArrayDataset(String seriesName)
+  {
+    this.seriesName=seriesName;
+  }
+
+  /**
+   * Add a point, or replace a point after replot(). The listeners (the chart)
+   * are not notified until notifyChanged() is called.
+   */
+  public void add(double x, double y)
+  {
+    if( writeIndex < count )
+    {
+      if( xValues[writeIndex] == x )
+      {
+        setY(writeIndex, y);
+      }
+      else
+      {
+        int index = findIndex(x);
+        if( index < count && xValues[index] == x )
+        {
+          setY(index, y);
+        }
+        else
+        {
+          insert(index, x, y);
+        }
+      }
+      writeIndex++;
+      return;
+    }
+    if( count == 0 || x >= xValues[count-1] )
+    {
+      insert(count, x, y);
+    }
+    else
+    {
+      //Insert after any points with the same x value
+      insert(findIndex(Math.nextUp(x)), x, y);
+    }
+    writeIndex=count;
+  }
+
+  /**
+   * Replace the points held with the points added from now on, starting with the first point.
+   */
+  public void replot()
+  {
+    writeIndex=0;
+  }
+
+  /**
+   * Remove all points. The listeners (the chart) are not notified until notifyChanged() is called.
+   */
+  public void clear()
+  {
+    modificationCount++;
+    count=0;
+    writeIndex=0;
+    minY=Double.NaN;
+    maxY=Double.NaN;
+    rangeValid=true;
+  }
+
+  /**
+   * Notify the listeners (the chart) that the points have changed.
+   */
+  public void notifyChanged()
+  {
+    fireDatasetChanged();
+  }
+
+  /**
+   * @return The index of the first point with an x value >= x, or count if there is none.
+   */
+  private int findIndex(double x)
+  {
+    int low=0;
+    int high=count;
+    while( low < high )
+    {
+      int mid = (low+high)>>>1;
+      if( xValues[mid] < x )
+      {
+        low=mid+1;
+      }
+      else
+      {
+        high=mid;
+      }
+    }
+    return low;
+  }
+
+  private void insert(int index, double x, double y)
+  {
+    if( count == xValues.length )
+    {
+      double newXValues[] = new double[count*2];
+      double newYValues[] = new double[count*2];
+      System.arraycopy(xValues, 0, newXValues, 0, count);
+      System.arraycopy(yValues, 0, newYValues, 0, count);
+      xValues=newXValues;
+      yValues=newYValues;
+    }
+    if( index < count )
+    {
+      modificationCount++;
+      System.arraycopy(xValues, index, xValues, index+1, count-index);
+      System.arraycopy(yValues, index, yValues, index+1, count-index);
+    }
+    xValues[index]=x;
+    yValues[index]=y;
+    count++;
+    includeInRange(y);
+  }
+
+  private void setY(int index, double y)
+  {
+    if( index < count-1 )
+    {
+      modificationCount++;
+    }
+    double oldY = yValues[index];
+    yValues[index]=y;
+    if( rangeValid && ( oldY == minY || oldY == maxY ) && y != oldY )
+    {
+      //The min or max point may have been replaced
+      rangeValid=false;
+    }
+    includeInRange(y);
+  }
+
+  private void includeInRange(double y)
+  {
+    if( !rangeValid || Double.isNaN(y) )
+    {
+      return;
+    }
+    if( Double.isNaN(minY) || y < minY )
+    {
+      minY=y;
+    }
+    if( Double.isNaN(maxY) || y > maxY )
+    {
+      maxY=y;
+    }
+  }
+
+  /**
+   * Recalculate the y range from all the points if required.
+   */
+  private void validateRange()
+  {
+    if( rangeValid )
+    {
+      return;
+    }
+    rangeValid=true;
+    minY=Double.NaN;
+    maxY=Double.NaN;
+    for( int i=0 ; i<count ; i++ )
+    {
+      includeInRange(yValues[i]);
+    }
+  }
+
+  public int getSeriesCount()
+  {
+    return 1;
+  }
+
+  @SuppressWarnings("rawtypes")
+  public Comparable getSeriesKey(int series)
+  {
+    return seriesName;
+  }
+
+  /**
+   * The points are held in x order which allows JFreeChart to find the
+   * visible points quickly.
+   */
+  @Override
+  public DomainOrder getDomainOrder()
+  {
+    return DomainOrder.ASCENDING;
+  }
+
+  public long getModificationCount()
+  {
+    return modificationCount;
+  }
+
+  /**
+   * As the points are in x order the first and last points give the domain bounds.
+   */
+  public double getDomainLowerBound(boolean includeInterval)
+  {
+    return count == 0 ? Double.NaN : xValues[0];
+  }
+
+  public double getDomainUpperBound(boolean includeInterval)
+  {
+    return count == 0 ? Double.NaN : xValues[count-1];
+  }
+
+  public Range getDomainBounds(boolean includeInterval)
+  {
+    if( count == 0 )
+    {
+      return null;
+    }
+    return new Range(xValues[0], xValues[count-1]);
+  }
+
+  public double getRangeLowerBound(boolean includeInterval)
+  {
+    validateRange();
+    return minY;
+  }
+
+  public double getRangeUpperBound(boolean includeInterval)
+  {
+    validateRange();
+    return maxY;
+  }
+
+  public Range getRangeBounds(boolean includeInterval)
+  {
+    validateRange();
+    if( Double.isNaN(minY) )
+    {
+      return null;
+    }
+    return new Range(minY, maxY);
+  }
+
+  /**
+   * Used by the renderer to find the y axis auto range.
+   */
+  @SuppressWarnings("rawtypes")
+  public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval)
+  {
+    validateRange();
+    return RangeBounds.Find(this, visibleSeriesKeys, xRange, minY, maxY);
+  }
+
+  public int getItemCount(int series)
+  {
+    return count;
+  }
+
+  @Override
+  public double getXValue(int series, int item)
+  {
+    return xValues[item];
+  }
+
+  @Override
+  public double getYValue(int series, int item)
+  {
+    return yValues[item];
+  }
+
+  public Number getX(int series, int item)
+  {
+    return Double.valueOf( xValues[item] );
+  }
+
+  public Number getY(int series, int item)
+  {
+    return Double.valueOf( yValues[item] );
+  }
+
+}
@@ -15,8 +15,6 @@ import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.data.time.Millisecond;
 import org.jfree.data.xy.XYDataset;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 import java.util.*;
 import java.awt.*;
 
@@ -24,8 +22,8 @@ public class XYPlotPanel extends GenericPlotPanel implements PlotPanelInterface
 {
   static final long serialVersionUID=8;
   private JFreeChart            chart;
-  private Vector<XYSeries>      xySeriesList;
-  private Vector<Integer>       itemCountList;
+  private Vector<XYArrayDataset> xySeriesList;
+  private ChartPanel            chartPanel;
   
   public XYPlotPanel() {
      super(new BorderLayout());
@@ -34,11 +32,12 @@ public class XYPlotPanel extends GenericPlotPanel implements PlotPanelInterface
      
    public void init()
    {
-     xySeriesList = new Vector<XYSeries>();
+     setAddedPlotCount(0);
+     xySeriesList = new Vector<XYArrayDataset>();
      chart = createChart(null);
-     ChartPanel chartPanel = new ChartPanel(chart);
+     chartPanel = new ChartPanel(chart);
      chartPanel.setPreferredSize(new java.awt.Dimension(500, 270));
-     itemCountList = new Vector<Integer>();
+     addDecimationListener((XYPlot)chart.getPlot(), chartPanel);
      add(chartPanel);
   }
    
@@ -64,30 +63,54 @@ public class XYPlotPanel extends GenericPlotPanel implements PlotPanelInterface
   public void addPlot()
   {
     int plotIndex=xySeriesList.size();
-    XYSeries xySeries = new XYSeries(plotName);
-    xySeriesList.add(xySeries);
+    //The chart is notified of changes by the RenderScheduler
+    XYArrayDataset dataset = new XYArrayDataset(plotName);
+    xySeriesList.add(dataset);
     
-    XYSeriesCollection dataset = new XYSeriesCollection();
-    dataset.addSeries( xySeries );
-    ((XYPlot)chart.getPlot()).setDataset(plotIndex, (XYDataset)dataset);  
+    ((XYPlot)chart.getPlot()).setDataset(plotIndex, getPlotDataset(dataset, (XYPlot)chart.getPlot(), chartPanel));  
     genericConfig(chart, (XYPlot)chart.getPlot(), plotIndex); 
-    itemCountList.add( new Integer(0) );
+    setAddedPlotCount(xySeriesList.size());
   }
   
   public int getPlotCount() { return ((XYPlot)chart.getPlot()).getSeriesCount(); }
   
-  public void addPlotValue(int plotIndex, double xValue, double yValue)
+  public void addPlotValue(int plotIndex, double xValue, double yValue) throws NetPlotException
   {   
-    int curentItemCount = itemCountList.get(plotIndex);
-    //If we want to change a plot point that should have already been plotted
-    if( curentItemCount < xySeriesList.get((int)plotIndex).getItemCount() ) {
-      xySeriesList.get((int)plotIndex).update(xValue, yValue);
+    checkPlotIndex(plotIndex);
+    stageValue(GenericPlotPanel.XY_VALUES, plotIndex, 0, xValue, yValue);
+  }
+
+  public void addPlotValues(int plotIndex, double xValues[], double yValues[], int offset, int length) throws NetPlotException
+  {
+    checkPlotIndex(plotIndex);
+    stageValues(GenericPlotPanel.XY_VALUES, plotIndex, 0, null, xValues, yValues, offset, length);
+  }
+
+  void applyValues(int type, int plotIndex, long times[], double xValues[], double yValues[], int offset, int length)
+  {
+    XYArrayDataset dataset = xySeriesList.get(plotIndex);
+    for( int i=offset ; i<offset+length ; i++ ) {
+      //Replaces a plot point that has already been plotted after a replot
+      dataset.add(xValues[i], yValues[i]);
     }
-    else {
-      xySeriesList.get((int)plotIndex).add(xValue, yValue);
+  }
+
+  public void addPlotValues(int plotIndex, double yValues[], int offset, int length) throws NetPlotException 
+  { 
+    throw new NetPlotException("addPlotValues(int plotIndex, double yValues[], int offset, int length) is invalid for XYPlotPanel"); 
+  }
+
+  public void addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) throws NetPlotException 
+  { 
+    throw new NetPlotException("addTimePlotValues(int plotIndex, long epochMillis[], double yValues[], int offset, int length) should not be used on XYPlotPanel"); 
+  }
+
+  void fireDatasetChanged(int plotIndex)
+  {
+    Vector<XYArrayDataset> seriesList = xySeriesList;
+    if( seriesList != null && plotIndex < seriesList.size() ) {
+      seriesList.get(plotIndex).notifyChanged();
     }
-    curentItemCount++;
-    itemCountList.set(plotIndex, curentItemCount );
   }
 
   public void addPlotValue(double xValue, double yValue) throws NetPlotException 
@@ -100,11 +123,15 @@ public class XYPlotPanel extends GenericPlotPanel implements PlotPanelInterface
     throw new NetPlotException("addPlotValue(int plotIndex, Millisecond ms, double yValue) should not be used on XYPlotPanel"); 
   }
 
+  public void addTimePlotValue(int plotIndex, long epochMillis, double yValue) throws NetPlotException 
+  { 
+    throw new NetPlotException("addTimePlotValue(int plotIndex, long epochMillis, double yValue) should not be used on XYPlotPanel"); 
+  }
+
   public void removePlots()
   {
     init();
     validate();
-    itemCountList.removeAllElements();
   }
   
   public void finalize()
@@ -112,7 +139,6 @@ public class XYPlotPanel extends GenericPlotPanel implements PlotPanelInterface
     if( xySeriesList != null ) {
       xySeriesList.removeAllElements();
     }
-    itemCountList.removeAllElements();
     removeAll();
     chart=null;
     //System.out.println("PJA: XYPlotPanel FreeMem="+Runtime.getRuntime().freeMemory());
@@ -122,9 +148,10 @@ public class XYPlotPanel extends GenericPlotPanel implements PlotPanelInterface
     boolean cleared=false;
     if( xySeriesList != null ) {
       try {
-        XYSeries xySeries = xySeriesList.get(plotIndex);
-        if( xySeries != null ) {
-          xySeries.clear();
+        XYArrayDataset dataset = xySeriesList.get(plotIndex);
+        if( dataset != null ) {
+          dataset.clear();
+          plotChanged(plotIndex);
           cleared=true;
         }
       }
@@ -139,7 +166,10 @@ public class XYPlotPanel extends GenericPlotPanel implements PlotPanelInterface
    * Reset the current plot point count to 0 so that we rewrite the previously entered plot points
    */
   public void replot(int plotIndex) throws NetPlotException {
-    itemCountList.set(plotIndex, new Integer(0) );
+    if( xySeriesList == null || plotIndex < 0 || plotIndex >= xySeriesList.size() ) {
+      throw new NetPlotException("Failed to replot xy plot "+plotIndex+". Please ensure the plot exists before replotting it.");
+    }
+    xySeriesList.get(plotIndex).replot();
   }
 
 }
@@ -12,6 +12,8 @@ import java.util.StringTokenizer;
 import java.io.*;
 import netplot.KeyWords;
 import netplot.LineProcessor;
+import netplot.NetPlotConnection;
+import netplot.TimeStampParser;
 
 import java.util.*;
 import org.jfree.data.time.Millisecond;
@@ -33,6 +35,18 @@ public class NetplotClient
                                   //each time addPlotValues or addXYPlotValues is called then data is sent 
                                   //to the server to add these plot points.
   Vector<String>    plotValueCache;  
+  int               ackInterval=NetPlotConnection.ACK_LINE; //The number of lines sent for each OK response
+                                                            //or NetPlotConnection.ACK_NONE/ACK_BATCH.
+  int               unackedLineCount;                       //The number of lines sent that the server
+                                                            //has not yet acknowledged.
+  public static final int MAX_UNACKED_BATCH_LINES=10000;   //In batch ack mode wait for the server when this
+                                                            //many lines have not been acknowledged.
+  private static final PlotConfig DEFAULT_PLOT_CONFIG = new PlotConfig(); //The server default settings
+  boolean               binaryMode;           //If true plot values are sent to the server in binary frames
+  DataOutputStream      dos;                  //Used to send binary frames to the server
+  ByteArrayOutputStream binaryCacheBytes;     //Holds the cached binary frames in cached plot mode
+  DataOutputStream      binaryCache;
+  int                   binaryCacheFrameCount;
   
   public NetplotClient()
   {
@@ -141,15 +155,221 @@ public class NetplotClient
   void sendCmd(String cmd) throws NetplotClientException, IOException
   {
     debugPrint("CMD: "+cmd);
-    pw.println(cmd);
-    //Get response from server
-    //We expect and OK response from the server
+    writeLine(cmd);
+    linesSent(1);
+  }
+  
+  /**
+   * Send a line of text to the server, in a text frame if in binary mode.
+   */
+  void writeLine(String line) throws IOException
+  {
+    if( binaryMode )
+    {
+      byte bytes[] = line.getBytes();
+      dos.writeByte(NetPlotConnection.FRAME_TEXT);
+      dos.writeInt(bytes.length);
+      dos.write(bytes);
+      dos.flush();
+    }
+    else
+    {
+      pw.println(line);
+    }
+  }
+  
+  /**
+   * Read a response line from the server.
+   * 
+   * @return The response line.
+   * @throws NetplotClientException If the server returned an error or closed the connection.
+   */
+  String readResponse() throws NetplotClientException, IOException
+  {
     String line = br.readLine();
     debugPrint(line);
+    if( line == null )
+    {
+      throw new NetplotClientException("The netplot server closed the connection.");
+    }
     if( line.indexOf("ERROR: ") == 0)
     {
       throw new NetplotClientException(line);
     }
+    return line;
+  }
+  
+  /**
+   * Called after lines have been sent to the server. Reads the responses 
+   * that the current ack mode requires.
+   * 
+   * @param lineCount The number of lines sent.
+   */
+  void linesSent(int lineCount) throws NetplotClientException, IOException
+  {
+    if( ackInterval == NetPlotConnection.ACK_NONE )
+    {
+      //Only errors are sent by the server, report any that have arrived
+      while( br.ready() )
+      {
+        readResponse();
+      }
+      return;
+    }
+    unackedLineCount+=lineCount;
+    if( ackInterval == NetPlotConnection.ACK_BATCH )
+    {
+      //Read the acknowledgements that have arrived but only wait if to many lines are outstanding
+      while( unackedLineCount > 0 && ( br.ready() || unackedLineCount > NetplotClient.MAX_UNACKED_BATCH_LINES ) )
+      {
+        readBatchAck();
+      }
+    }
+    else
+    {
+      //We expect an OK response from the server for every ackInterval lines
+      while( unackedLineCount >= ackInterval )
+      {
+        readResponse();
+        unackedLineCount-=ackInterval;
+      }
+    }
+  }
+  
+  /**
+   * Read an OK <line count> batch acknowledgement from the server.
+   */
+  private void readBatchAck() throws NetplotClientException, IOException
+  {
+    String line = readResponse();
+    try
+    {
+      unackedLineCount-=Integer.parseInt(line.substring(2).trim());
+    }
+    catch(Exception e)
+    {
+      throw new NetplotClientException("Invalid batch acknowledgement from the server: "+line);
+    }
+  }
+  
+  /**
+   * In batch ack mode wait for all the lines sent so far to be acknowledged.
+   */
+  private void waitForBatchAcks() throws NetplotClientException, IOException
+  {
+    if( ackInterval == NetPlotConnection.ACK_BATCH )
+    {
+      while( unackedLineCount > 0 )
+      {
+        readBatchAck();
+      }
+    }
+  }
+  
+  /**
+   * Switch the connection to the binary protocol. Plot values are then sent 
+   * as binary frames holding the raw double values which is quicker for both 
+   * the client and the server than formatting and parsing text. Commands are
+   * still sent as text (in text frames). Requires netplot server 2.6 or later.
+   */
+  public void enableBinaryMode() throws NetplotClientException, IOException
+  {
+    if( binaryMode )
+    {
+      return;
+    }
+    if( serverVersion < 2.6 )
+    {
+      throw new NetplotClientException("The netplot server ("+serverVersion+") does not support binary mode. Version 2.6 or later is required.");
+    }
+    //Send any values cached as text first
+    if( plotValueCache != null )
+    {
+      update();
+    }
+    waitForBatchAcks();
+    debugPrint("Enabling binary mode");
+    dos = new DataOutputStream( new BufferedOutputStream(socket.getOutputStream()) );
+    dos.writeByte(NetPlotConnection.BINARY_MAGIC);
+    dos.flush();
+    //The server always responds to the switch to binary mode with OK
+    readResponse();
+    binaryMode=true;
+  }
+  
+  /**
+   * Send a binary plot value frame to the server or add it to the cache.
+   */
+  private void sendFrame(byte frameType, int plotIndex, long times[], double xValues[], double yValues[], int count) throws NetplotClientException, IOException
+  {
+    DataOutputStream out = dos;
+    if( cacheEnabled )
+    {
+      if( binaryCache == null )
+      {
+        binaryCacheBytes = new ByteArrayOutputStream();
+        binaryCache = new DataOutputStream(binaryCacheBytes);
+      }
+      out = binaryCache;
+    }
+    out.writeByte(frameType);
+    if( frameType != NetPlotConnection.FRAME_BARS && frameType != NetPlotConnection.FRAME_ROW )
+    {
+      out.writeInt(plotIndex);
+    }
+    out.writeInt(count);
+    for( int i=0 ; i<count ; i++ )
+    {
+      if( times != null )
+      {
+        out.writeLong(times[i]);
+      }
+      if( xValues != null )
+      {
+        out.writeDouble(xValues[i]);
+      }
+      out.writeDouble(yValues[i]);
+    }
+    if( cacheEnabled )
+    {
+      binaryCacheFrameCount++;
+    }
+    else
+    {
+      dos.flush();
+      linesSent(1);
+    }
+  }
+  
+  /**
+   * Set the acknowledgement mode used by the server. By default the server
+   * responds with OK to every line sent and the client waits for each response.
+   * Over a network connection this limits the rate at which plot values may
+   * be sent to one per round trip.
+   * 
+   * @param ackMode KeyWords.ACK_MODE_LINE (OK for every line), 
+   *                KeyWords.ACK_MODE_NONE (the server only reports errors), 
+   *                KeyWords.ACK_MODE_BATCH (the server sends OK <line count> after each block of data it receives)
+   *                or the number of lines the server should receive before sending an OK response.
+   */
+  public void setAckMode(String ackMode) throws NetplotClientException, IOException
+  {
+    int newAckInterval;
+    try
+    {
+      newAckInterval = NetPlotConnection.ParseAckMode(ackMode);
+    }
+    catch(netplot.NetPlotException e)
+    {
+      throw new NetplotClientException(e.getMessage());
+    }
+    waitForBatchAcks();
+    debugPrint("CMD: "+NetPlotConnection.ACK_MODE_CMD+ackMode);
+    writeLine(NetPlotConnection.ACK_MODE_CMD+ackMode);
+    //The server always responds to a change of ack mode with OK
+    readResponse();
+    ackInterval=newAckInterval;
+    unackedLineCount=0;
   }
   
   /**
@@ -211,7 +431,9 @@ public class NetplotClient
     if( plotType.equals("time") ||
         plotType.equals("xy")   ||
         plotType.equals("bar")  ||
-        plotType.equals("dial") ) 
+        plotType.equals("dial") ||
+        plotType.equals(KeyWords.HISTOGRAM) ||
+        plotType.equals(KeyWords.WATERFALL) ) 
     {
       return true;
     }
@@ -261,6 +483,27 @@ public class NetplotClient
       sendSetCmd(KeyWords.ENABLE_ZERO_ON_X_SCALE,""+plotConfig.enableZeroOnXAxis);
       sendSetCmd(KeyWords.ENABLE_ZERO_ON_Y_SCALE,""+plotConfig.enableZeroOnYAxis);
       sendSetCmd(KeyWords.TICK_COUNT,""+plotConfig.tickCount);
+      //The histogram and waterfall settings are only sent if changed as servers before 2.6 don't accept them
+      if( plotConfig.binCount > 0 )
+      {
+        sendSetCmd(KeyWords.BIN_COUNT,""+plotConfig.binCount);
+      }
+      if( plotConfig.binMin != NetplotClient.DEFAULT_PLOT_CONFIG.binMin )
+      {
+        sendSetCmd(KeyWords.BIN_MIN,""+plotConfig.binMin);
+      }
+      if( plotConfig.binMax != NetplotClient.DEFAULT_PLOT_CONFIG.binMax )
+      {
+        sendSetCmd(KeyWords.BIN_MAX,""+plotConfig.binMax);
+      }
+      if( plotConfig.enableLogBins != NetplotClient.DEFAULT_PLOT_CONFIG.enableLogBins )
+      {
+        sendSetCmd(KeyWords.ENABLE_LOG_BINS,""+plotConfig.enableLogBins);
+      }
+      if( plotConfig.rowCount != NetplotClient.DEFAULT_PLOT_CONFIG.rowCount )
+      {
+        sendSetCmd(KeyWords.ROW_COUNT,""+plotConfig.rowCount);
+      }
     }
     sendCmd(KeyWords.ADD_PLOT);
   }
@@ -280,6 +523,12 @@ public class NetplotClient
     {
       return;
     }
+    if( binaryMode )
+    {
+      debugPrint("Adding "+values.length+" plot values");
+      sendFrame(NetPlotConnection.FRAME_VALUES, 0, null, null, values, values.length);
+      return;
+    }
     StringBuffer strBuf = new StringBuffer(""+values[0]);
     boolean firstValue=true;
     for( double value : values )
@@ -300,6 +549,62 @@ public class NetplotClient
     }
   }
   
+  /**
+   * Set all the bars of a bar chart in one frame. The chart is redrawn once
+   * for the frame rather than once for each bar. Requires netplot server 2.6 or later.
+   * 
+   * @param bars The height of each bar, the first bar first.
+   */
+  public void setBars(double bars[]) throws NetplotClientException, IOException
+  {
+    debugPrint("Setting "+bars.length+" bars");
+    if( binaryMode ) {
+      sendFrame(NetPlotConnection.FRAME_BARS, 0, null, null, bars, bars.length);
+      return;
+    }
+    StringBuffer strBuf = new StringBuffer(LineProcessor.SET_BARS);
+    for( int i=0 ; i<bars.length ; i++ ) {
+      if( i > 0 ) {
+        strBuf.append(',');
+      }
+      strBuf.append(bars[i]);
+    }
+    if( cacheEnabled ) {
+      plotValueCache.add(strBuf.toString());
+    }
+    else {
+      sendCmd(strBuf.toString());
+    }
+  }
+ 
+  /**
+   * Add a row of values (E.G the bins of a spectrum) to the top of a waterfall
+   * chart. Requires netplot server 2.6 or later.
+   * 
+   * @param values The values of the row, the first (left) value first.
+   */
+  public void addRow(double values[]) throws NetplotClientException, IOException
+  {
+    debugPrint("Adding a row of "+values.length+" values");
+    if( binaryMode ) {
+      sendFrame(NetPlotConnection.FRAME_ROW, 0, null, null, values, values.length);
+      return;
+    }
+    StringBuffer strBuf = new StringBuffer();
+    for( int i=0 ; i<values.length ; i++ ) {
+      if( i > 0 ) {
+        strBuf.append(',');
+      }
+      strBuf.append(values[i]);
+    }
+    if( cacheEnabled ) {
+      plotValueCache.add(strBuf.toString());
+    }
+    else {
+      sendCmd(strBuf.toString());
+    }
+  }
+ 
   /**
    * Add values to an XY plot
    * @param plotIndex  The index of the plot (0 = first plot added, 1=second etc)
@@ -309,7 +614,12 @@ public class NetplotClient
   public void addXYPlotValues(int plotIndex, double xValue, double yValue) throws NetplotClientException, IOException
   {
     debugPrint("Adding XY plot "+plotIndex+" values: "+xValue+","+yValue);
-    if( cacheEnabled ) {
+    if( binaryMode ) {
+      double xValues[] = { xValue };
+      double yValues[] = { yValue };
+      sendFrame(NetPlotConnection.FRAME_XY, plotIndex, null, xValues, yValues, 1);
+    }
+    else if( cacheEnabled ) {
       plotValueCache.add(plotIndex+":"+xValue+":"+yValue);
     }
     else {
@@ -326,12 +636,37 @@ public class NetplotClient
   public void addTimeSeriesPlotValue(int plotIndex, Millisecond ms, double yValue) throws NetplotClientException, IOException
   {
     debugPrint("Adding TimeSeries plot "+plotIndex+" Millisecond "+ms+" value "+yValue);
+    if( binaryMode || serverVersion >= 2.6 )
+    {
+      addTimeSeriesPlotValue(plotIndex, ms.getFirstMillisecond(), yValue);
+      return;
+    }
     Calendar calendar = Calendar.getInstance();
     calendar.setTime( ms.getStart() );
     String dateString = this.getDateString(calendar, ms.getMillisecond() );
     sendCmd(plotIndex+":"+dateString+":"+yValue);
   }
   
+  /**
+   * Add a value to a time series plot. Requires netplot server 2.6 or later.
+   * @param plotIndex   The index of the plot (0 = first plot added, 1=second etc)
+   * @param epochMillis The time of the value in milliseconds since 1 Jan 1970 UTC
+   * @param yValue      The value on the Y axis
+   */
+  public void addTimeSeriesPlotValue(int plotIndex, long epochMillis, double yValue) throws NetplotClientException, IOException
+  {
+    if( binaryMode )
+    {
+      long times[] = { epochMillis };
+      double yValues[] = { yValue };
+      sendFrame(NetPlotConnection.FRAME_TIME, plotIndex, times, null, yValues, 1);
+    }
+    else
+    {
+      sendCmd(plotIndex+":"+TimeStampParser.EPOCH_PREFIX+epochMillis+":"+yValue);
+    }
+  }
+  
   /**
    * Get date string.
    * @param date The Date object to be converted to a string.
@@ -420,6 +755,15 @@ public class NetplotClient
    * Send all plotValueCache plot points. Only call this when cacheEnabled is True
    */
   public void update() throws NetplotClientException, IOException {
+    if( binaryCacheFrameCount > 0 ) {
+      int frameCount = binaryCacheFrameCount;
+      debugPrint("Sending "+frameCount+" cached frames");
+      binaryCacheBytes.writeTo(dos);
+      dos.flush();
+      binaryCacheBytes.reset();
+      binaryCacheFrameCount=0;
+      linesSent(frameCount);
+    }
     int cmdCount = plotValueCache.size();
     
     //If there is nothing to send
@@ -437,21 +781,9 @@ public class NetplotClient
     plotValueCache.removeAllElements();
       
     debugPrint("CMD: "+cmd);
-    pw.println(cmd);
-    
-    //Wait for responses
-    int rxCmdCount=0;
-    while( rxCmdCount < cmdCount ) {
-      //Get response from server
-      //We expect and OK response from the server
-      String line = br.readLine();
-      debugPrint(line);
-      if( line.indexOf("ERROR: ") == 0)
-      {
-        throw new NetplotClientException(line);
-      }
-      rxCmdCount++;
-    }
+    pw.print(cmd);
+    pw.flush();
+    linesSent(cmdCount);
   }
       
 
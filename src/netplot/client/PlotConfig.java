@@ -25,4 +25,11 @@ public class PlotConfig
   public boolean    enableZeroOnXAxis=true;
   public boolean    enableZeroOnYAxis=true;
   public int        tickCount=0;
+  //Histogram bins, a binCount of 0 uses the server default for the type of bins
+  public int        binCount=0;
+  public double     binMin=0;
+  public double     binMax=100;
+  public boolean    enableLogBins=false;
+  //The number of rows shown on a waterfall chart
+  public int        rowCount=512;
 }